@@ -0,0 +1,197 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.naming.Binding;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.NameClassPair;
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+
+/**
+ * A context of the in-memory naming service provider, with the operations it supports beyond
+ * {@link Context}. The contexts of the provider, including the subcontexts returned by lookups,
+ * implement this interface, so applications reach these operations with a cast.
+ */
+public interface ExtendedContext extends Context {
+
+    /**
+     * Binds a name to an object for a limited time. Once the time to live has run out, lookups
+     * no longer find the binding and it is removed, as if the name had been unbound. Contexts
+     * never expire, so a time to live given for a context is ignored.
+     * <p>
+     * A time to live may also be given in milliseconds by the
+     * org.wso2.carbon.jndi.bindingTimeToLive environment property, for every object bound through
+     * a context, or by an org.wso2.carbon.jndi.timeToLive address of a bound Reference.
+     *
+     * @param name       the name to bind; may not be empty
+     * @param obj        the object to bind; possibly null
+     * @param timeToLive how long the binding lasts
+     * @param unit       the unit of timeToLive
+     * @throws NameAlreadyBoundException if name is already bound
+     * @throws NamingException           if timeToLive is not positive, or a jndi exception is
+     *                                   encountered
+     */
+    void bind(Name name, Object obj, long timeToLive, TimeUnit unit) throws NamingException;
+
+    /**
+     * Binds a name to an object for a limited time.
+     *
+     * @param name       the name to bind; may not be empty
+     * @param obj        the object to bind; possibly null
+     * @param timeToLive how long the binding lasts
+     * @param unit       the unit of timeToLive
+     * @throws NameAlreadyBoundException if name is already bound
+     * @throws NamingException           if timeToLive is not positive, or a jndi exception is
+     *                                   encountered
+     * @see #bind(Name, Object, long, TimeUnit)
+     */
+    void bind(String name, Object obj, long timeToLive, TimeUnit unit) throws NamingException;
+
+    /**
+     * Binds a name to an object for a limited time, overwriting any existing binding.
+     *
+     * @param name       the name to bind; may not be empty
+     * @param obj        the object to bind; possibly null
+     * @param timeToLive how long the binding lasts
+     * @param unit       the unit of timeToLive
+     * @throws NamingException if timeToLive is not positive, or a jndi exception is encountered
+     * @see #bind(Name, Object, long, TimeUnit)
+     */
+    void rebind(Name name, Object obj, long timeToLive, TimeUnit unit) throws NamingException;
+
+    /**
+     * Binds a name to an object for a limited time, overwriting any existing binding.
+     *
+     * @param name       the name to bind; may not be empty
+     * @param obj        the object to bind; possibly null
+     * @param timeToLive how long the binding lasts
+     * @param unit       the unit of timeToLive
+     * @throws NamingException if timeToLive is not positive, or a jndi exception is encountered
+     * @see #bind(Name, Object, long, TimeUnit)
+     */
+    void rebind(String name, Object obj, long timeToLive, TimeUnit unit) throws NamingException;
+
+    /**
+     * Enumerates the first page of the names bound in the named context, along with the class
+     * names of objects bound to them. The enumeration ends after pageSize bindings, and
+     * {@link PagedNamingEnumeration#nextPage()} continues the same iteration where it ended.
+     * {@link #list(String)} is never paged.
+     *
+     * @param name     the name of the context to list
+     * @param pageSize the maximum number of bindings per page
+     * @return an enumeration of the first page
+     * @throws OperationNotSupportedException if the named context is not a context of this
+     *                                        namespace
+     * @throws NamingException                if a jndi exception is encountered
+     */
+    PagedNamingEnumeration<NameClassPair> listPage(String name, int pageSize) throws NamingException;
+
+    /**
+     * Enumerates the first page of the names bound in the named context, along with the objects
+     * bound to them. The enumeration ends after pageSize bindings, and
+     * {@link PagedNamingEnumeration#nextPage()} continues the same iteration where it ended.
+     * {@link #listBindings(String)} is never paged.
+     *
+     * @param name     the name of the context to list
+     * @param pageSize the maximum number of bindings per page
+     * @return an enumeration of the first page
+     * @throws OperationNotSupportedException if the named context is not a context of this
+     *                                        namespace
+     * @throws NamingException                if a jndi exception is encountered
+     */
+    PagedNamingEnumeration<Binding> listBindingsPage(String name, int pageSize) throws NamingException;
+
+    /**
+     * Returns a stream of the bindings of this context and, recursively, of its subcontexts, each
+     * named by its full name relative to this context. Full names join the components with '/'
+     * and escape any '/' or '\' within a component with '\', so they can be looked up in this
+     * context.
+     * <p>
+     * Bindings are read as the stream advances, and the stream is weakly consistent. A subcontext
+     * bound under several names is walked only once. References, links and deferred values are
+     * resolved when {@link Binding#getObject()} is first called, which throws an unchecked
+     * exception wrapping the NamingException if resolving fails.
+     *
+     * @param maxDepth the depth of the deepest bindings to return, 1 being the bindings of this
+     *                 context; Integer.MAX_VALUE for no limit
+     * @param prefix   only the binding with this full name and the bindings below it are returned,
+     *                 matching whole components; may be empty
+     * @param parallel if true, separate subtrees are walked in parallel
+     * @return a stream over the subtree of this context
+     * @throws IllegalArgumentException if maxDepth is less than 1
+     */
+    Stream<Binding> subtree(int maxDepth, String prefix, boolean parallel);
+
+    /**
+     * Returns the bindings below this context whose full name relative to this context starts
+     * with the given prefix, in the order of their names. Searches read an index of the whole
+     * namespace, enabled by the org.wso2.carbon.jndi.searchIndex environment property when the
+     * namespace is created. Their streams are weakly consistent, and resolve references, links
+     * and deferred values as {@link #subtree(int, String, boolean)} does.
+     *
+     * @param prefix the prefix of the full names; may be empty
+     * @return the matching bindings, named by their full names relative to this context; empty if
+     * this context is not bound in its namespace
+     * @throws OperationNotSupportedException if the search index is not enabled
+     * @throws NamingException                if a jndi exception is encountered
+     */
+    Stream<Binding> searchPrefix(String prefix) throws NamingException;
+
+    /**
+     * Returns the bindings below this context whose full name relative to this context is within
+     * the given range, in the order of their names.
+     *
+     * @param from the lowest full name, inclusive
+     * @param to   the highest full name, exclusive
+     * @return the matching bindings, named by their full names relative to this context; empty if
+     * this context is not bound in its namespace
+     * @throws OperationNotSupportedException if the search index is not enabled
+     * @throws NamingException                if a jndi exception is encountered
+     * @see #searchPrefix(String)
+     */
+    Stream<Binding> searchRange(String from, String to) throws NamingException;
+
+    /**
+     * Returns the bindings below this context whose full name relative to this context matches a
+     * glob pattern, in the order of their names.
+     *
+     * @param glob the pattern, in which '*' matches within a component, '**' across components
+     *             and '?' a single character
+     * @return the matching bindings, named by their full names relative to this context; empty if
+     * this context is not bound in its namespace
+     * @throws OperationNotSupportedException if the search index is not enabled
+     * @throws NamingException                if a jndi exception is encountered
+     * @see #searchPrefix(String)
+     */
+    Stream<Binding> searchGlob(String glob) throws NamingException;
+
+    /**
+     * Returns a new, empty batch of updates whose names are relative to this context. The updates
+     * of a batch are applied together, and lookups never observe some of them without the others.
+     *
+     * @return a new batch of updates
+     */
+    NamingBatch batch();
+}
@@ -0,0 +1,112 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi;
+
+import javax.naming.Name;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+
+/**
+ * A batch of binds, rebinds and unbinds, relative to an {@link ExtendedContext}, which are applied
+ * together by {@link #commit()}.
+ * <p>
+ * Operations may name bindings in any subcontext of the namespace of the context. On commit they
+ * are validated in the order they were added, each seeing the effect of the previous ones, and
+ * either all of them are applied or none is. Lookups never observe a partially applied batch.
+ * Enumerations, subtree walks and searches are weakly consistent and may see part of a batch which
+ * overlaps them.
+ * <p>
+ * A batch is not thread safe and may be reused once it has been committed.
+ */
+public interface NamingBatch {
+
+    /**
+     * Adds a bind of a name which must not be bound when the batch is committed.
+     *
+     * @param name the name to bind; may not be empty
+     * @param obj  the object to bind; possibly null
+     * @return this batch
+     */
+    NamingBatch bind(Name name, Object obj);
+
+    /**
+     * Adds a bind of a name which must not be bound when the batch is committed.
+     *
+     * @param name the name to bind; may not be empty
+     * @param obj  the object to bind; possibly null
+     * @return this batch
+     * @throws NamingException if the name is not a valid composite name
+     */
+    NamingBatch bind(String name, Object obj) throws NamingException;
+
+    /**
+     * Adds a bind of a name, overwriting any existing binding.
+     *
+     * @param name the name to bind; may not be empty
+     * @param obj  the object to bind; possibly null
+     * @return this batch
+     */
+    NamingBatch rebind(Name name, Object obj);
+
+    /**
+     * Adds a bind of a name, overwriting any existing binding.
+     *
+     * @param name the name to bind; may not be empty
+     * @param obj  the object to bind; possibly null
+     * @return this batch
+     * @throws NamingException if the name is not a valid composite name
+     */
+    NamingBatch rebind(String name, Object obj) throws NamingException;
+
+    /**
+     * Adds an unbind of a name which must be bound when the batch is committed.
+     *
+     * @param name the name to unbind; may not be empty
+     * @return this batch
+     */
+    NamingBatch unbind(Name name);
+
+    /**
+     * Adds an unbind of a name which must be bound when the batch is committed.
+     *
+     * @param name the name to unbind; may not be empty
+     * @return this batch
+     * @throws NamingException if the name is not a valid composite name
+     */
+    NamingBatch unbind(String name) throws NamingException;
+
+    /**
+     * @return the number of operations in this batch
+     */
+    int size();
+
+    /**
+     * Validates the operations of this batch and applies all of them at once. If any operation
+     * fails, nothing is applied. The batch is empty afterwards in both cases.
+     *
+     * @throws NameAlreadyBoundException      if a bind names a bound name
+     * @throws NameNotFoundException          if an unbind names an unbound name, or an
+     *                                        intermediate context does not exist
+     * @throws OperationNotSupportedException if a name leads out of the namespace of the context
+     * @throws NamingException                if a jndi exception is encountered
+     */
+    void commit() throws NamingException;
+}
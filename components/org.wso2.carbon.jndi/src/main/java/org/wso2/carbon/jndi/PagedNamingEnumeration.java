@@ -0,0 +1,44 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi;
+
+import javax.naming.NamingEnumeration;
+
+/**
+ * An enumeration of the bindings of a context which ends after a page of bindings. The next page
+ * continues the same iteration where the previous one ended, so a context can be enumerated one
+ * page at a time without copying its bindings.
+ *
+ * @param <T> the type of the elements of the enumeration
+ */
+public interface PagedNamingEnumeration<T> extends NamingEnumeration<T> {
+
+    /**
+     * @return true if bindings are left after the end of this page
+     */
+    boolean hasNextPage();
+
+    /**
+     * Returns an enumeration over the next page of bindings, starting after the last binding
+     * returned by this enumeration.
+     *
+     * @return the enumeration of the next page
+     */
+    PagedNamingEnumeration<T> nextPage();
+}
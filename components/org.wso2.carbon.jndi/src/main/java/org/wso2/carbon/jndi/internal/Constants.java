@@ -30,4 +30,28 @@ public final class Constants {
     public static final String SERVICE_ID = "service.id";
     public static final String OSGI_SERVICE_JNDI_BC = "osgi.service.jndi.bundleContext";
 
+    // Environment properties understood by the in-memory context implementation
+    public static final String SNAPSHOT_BINDINGS = "org.wso2.carbon.jndi.snapshotBindings";
+    public static final String ATOM_BINDINGS = "org.wso2.carbon.jndi.atomBindings";
+    public static final String PATH_INDEX = "org.wso2.carbon.jndi.pathIndex";
+    public static final String CACHE_REFERENCES = "org.wso2.carbon.jndi.cacheReferences";
+    public static final String LAZY_SUPPLIERS = "org.wso2.carbon.jndi.lazySuppliers";
+    public static final String STACKLESS_NAME_NOT_FOUND = "org.wso2.carbon.jndi.stacklessNameNotFound";
+    public static final String LIST_BINDINGS_RESOLUTION = "org.wso2.carbon.jndi.listBindingsResolution";
+    public static final String SEARCH_INDEX = "org.wso2.carbon.jndi.searchIndex";
+    // Snapshot a namespace is restored from when it is opened and written to when the bundle stops
+    public static final String SNAPSHOT_FILE = "org.wso2.carbon.jndi.snapshotFile";
+    public static final String JOURNAL_FILE = "org.wso2.carbon.jndi.journalFile";
+    public static final String JOURNAL_SYNC = "org.wso2.carbon.jndi.journalSync";
+    public static final String JOURNAL_SYNC_INTERVAL = "org.wso2.carbon.jndi.journalSyncInterval";
+    public static final String EVENT_QUEUE_SIZE = "org.wso2.carbon.jndi.eventQueueSize";
+    // Time to live in milliseconds of the objects bound through a context, after which they are unbound
+    public static final String BINDING_TIME_TO_LIVE = "org.wso2.carbon.jndi.bindingTimeToLive";
+
+    // Address type which, with the content "true", marks a bound Reference as resolved only once
+    public static final String CACHE_REFERENCE_ADDRESS = "org.wso2.carbon.jndi.cacheReference";
+
+    // Address type whose content is the time to live in milliseconds of a bound Reference
+    public static final String TIME_TO_LIVE_ADDRESS = "org.wso2.carbon.jndi.timeToLive";
+
 }
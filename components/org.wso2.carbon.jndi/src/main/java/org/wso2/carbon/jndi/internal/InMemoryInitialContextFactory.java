@@ -17,7 +17,7 @@
 */
 package org.wso2.carbon.jndi.internal;
 
-import org.wso2.carbon.jndi.internal.impl.NamingContext;
+import org.wso2.carbon.jndi.internal.impl.NamespaceSnapshot;
 
 import java.util.Hashtable;
 
@@ -39,7 +39,7 @@ public class InMemoryInitialContextFactory implements InitialContextFactory {
     public synchronized Context getInitialContext(Hashtable<?, ?> environment) throws NamingException {
 
         if (initialContext == null) {
-            initialContext = new NamingContext((Hashtable<String, Object>) environment, MAIN);
+            initialContext = NamespaceSnapshot.open((Hashtable<String, Object>) environment, MAIN);
         }
         return initialContext;
     }
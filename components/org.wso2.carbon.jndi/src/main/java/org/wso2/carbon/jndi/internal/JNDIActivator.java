@@ -23,6 +23,8 @@ import org.osgi.service.jndi.JNDIConstants;
 import org.osgi.service.jndi.JNDIContextManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wso2.carbon.jndi.internal.impl.NamespaceSnapshot;
+import org.wso2.carbon.jndi.internal.impl.NamingContextBindingsEnumeration;
 import org.wso2.carbon.jndi.internal.java.JavaURLContextFactory;
 import org.wso2.carbon.jndi.internal.osgi.JNDIContextManagerServiceFactory;
 import org.wso2.carbon.jndi.internal.osgi.OSGiURLContextServiceFactory;
@@ -78,6 +80,7 @@ public class JNDIActivator implements BundleActivator {
 
     @Override
     public void stop(BundleContext bundleContext) throws Exception {
-
+        NamespaceSnapshot.writeOpened();
+        NamingContextBindingsEnumeration.shutdownResolver();
     }
 }
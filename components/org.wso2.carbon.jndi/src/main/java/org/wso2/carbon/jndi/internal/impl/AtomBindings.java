@@ -0,0 +1,322 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.wso2.carbon.jndi.internal.util.ImmutableCompositeName;
+import org.wso2.carbon.jndi.internal.util.NameAtoms;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.naming.Name;
+
+/**
+ * Bindings store keyed by the {@link NameAtoms} atoms of the names, in an open-addressing table
+ * with linear probing. A binding takes two references in the table, instead of a node of a hash
+ * map, and a lookup with a cached {@link ImmutableCompositeName} probes with the atom it remembers
+ * for the component instead of hashing the string. The keys of the table keep their atoms
+ * interned.
+ * <p>
+ * Lookups do not lock. A slot keeps its key once it is taken, and a removed binding leaves its
+ * key behind with no value, so a probe never misses a key which was in the table when it started.
+ * Keys and values are read and written with volatile semantics, so a probe sees every key which
+ * was published before it started.
+ * Updates are serialized, and a table whose slots are mostly taken is replaced by a new one
+ * without the removed keys.
+ */
+class AtomBindings extends AbstractMap<String, NamingEntry> implements ConcurrentMap<String, NamingEntry> {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private volatile Table table = new Table(MIN_CAPACITY);
+
+    /**
+     * Number of slots of the table with a key, guarded by the store lock.
+     */
+    private int used;
+
+    /**
+     * Number of bindings, guarded by the store lock and published to lookups through size.
+     */
+    private int count;
+
+    private volatile int size;
+
+    private final Set<Map.Entry<String, NamingEntry>> entrySet = new EntrySet();
+
+    /**
+     * Returns the binding of a component of a name, using the atom remembered by cached names.
+     *
+     * @param name     the name
+     * @param position the position of the component
+     * @return the binding, or null if the component is not bound
+     */
+    NamingEntry get(Name name, int position) {
+        NameAtoms.Atom atom = name instanceof ImmutableCompositeName
+                ? ((ImmutableCompositeName) name).atom(position)
+                : NameAtoms.find(name.get(position));
+        return atom != null ? table.get(atom) : null;
+    }
+
+    @Override
+    public NamingEntry get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        NameAtoms.Atom atom = NameAtoms.find((String) key);
+        return atom != null ? table.get(atom) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public synchronized NamingEntry put(String key, NamingEntry value) {
+        return update(NameAtoms.intern(key), value, false);
+    }
+
+    @Override
+    public synchronized NamingEntry putIfAbsent(String key, NamingEntry value) {
+        return update(NameAtoms.intern(key), value, true);
+    }
+
+    @Override
+    public synchronized NamingEntry remove(Object key) {
+        NameAtoms.Atom atom = key instanceof String ? NameAtoms.find((String) key) : null;
+        return atom != null ? update(atom, null, false) : null;
+    }
+
+    @Override
+    public synchronized boolean remove(Object key, Object value) {
+        NameAtoms.Atom atom = key instanceof String ? NameAtoms.find((String) key) : null;
+        if (atom == null || value == null || !value.equals(table.get(atom))) {
+            return false;
+        }
+        update(atom, null, false);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean replace(String key, NamingEntry oldValue, NamingEntry newValue) {
+        NameAtoms.Atom atom = NameAtoms.find(key);
+        if (atom == null || oldValue == null || !oldValue.equals(table.get(atom))) {
+            return false;
+        }
+        update(atom, newValue, false);
+        return true;
+    }
+
+    @Override
+    public synchronized NamingEntry replace(String key, NamingEntry value) {
+        NameAtoms.Atom atom = NameAtoms.find(key);
+        if (atom == null || table.get(atom) == null) {
+            return null;
+        }
+        return update(atom, value, false);
+    }
+
+    @Override
+    public synchronized void clear() {
+        table = new Table(MIN_CAPACITY);
+        used = 0;
+        count = 0;
+        size = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, NamingEntry>> entrySet() {
+        return entrySet;
+    }
+
+    /**
+     * Sets or removes the binding of an atom. Must be called with the store lock held.
+     *
+     * @param atom     the atom of the name
+     * @param value    the new binding, or null to remove it
+     * @param ifAbsent whether an existing binding is kept
+     * @return the previous binding, or null
+     */
+    private NamingEntry update(NameAtoms.Atom atom, NamingEntry value, boolean ifAbsent) {
+        Table current = table;
+        int slot = current.slot(atom);
+        if (current.keys.get(slot) == atom) {
+            NamingEntry previous = current.values.get(slot);
+            if (ifAbsent && previous != null) {
+                return previous;
+            }
+            current.values.set(slot, value);
+            count += (previous == null ? 1 : 0) - (value == null ? 1 : 0);
+            size = count;
+            return previous;
+        }
+        if (value == null) {
+            return null;
+        }
+        if ((used + 1) * 4 > current.keys.length() * 3) {
+            current = rehash(current);
+            slot = current.slot(atom);
+        }
+        // A lookup which finds the key before the value is written sees no binding
+        current.keys.set(slot, atom);
+        current.values.set(slot, value);
+        used++;
+        count++;
+        size = count;
+        return null;
+    }
+
+    /**
+     * Replaces the table with one holding only the bound keys, with room for as many again.
+     */
+    private Table rehash(Table current) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < (count + 1) * 2) {
+            capacity <<= 1;
+        }
+        Table resized = new Table(capacity);
+        int count = 0;
+        for (int i = 0; i < current.keys.length(); i++) {
+            NamingEntry value = current.values.get(i);
+            if (value != null) {
+                NameAtoms.Atom key = current.keys.get(i);
+                int slot = resized.slot(key);
+                // The resized table is published as a whole once it is filled
+                resized.keys.lazySet(slot, key);
+                resized.values.lazySet(slot, value);
+                count++;
+            }
+        }
+        used = count;
+        table = resized;
+        return resized;
+    }
+
+    /**
+     * A table of keys and values. A null key marks a free slot.
+     */
+    private static final class Table {
+
+        final AtomicReferenceArray<NameAtoms.Atom> keys;
+        final AtomicReferenceArray<NamingEntry> values;
+        final int shift;
+
+        Table(int capacity) {
+            keys = new AtomicReferenceArray<>(capacity);
+            values = new AtomicReferenceArray<>(capacity);
+            shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        }
+
+        /**
+         * @return the slot holding the key, or the free slot where it would be inserted
+         */
+        int slot(NameAtoms.Atom atom) {
+            int mask = keys.length() - 1;
+            int slot = atom.hash() >>> shift;
+            while (true) {
+                NameAtoms.Atom key = keys.get(slot);
+                if (key == atom || key == null) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        NamingEntry get(NameAtoms.Atom atom) {
+            int slot = slot(atom);
+            return keys.get(slot) == atom ? values.get(slot) : null;
+        }
+    }
+
+    /**
+     * Weakly consistent view of the bindings, which iterates over the table current when the
+     * iterator was created.
+     */
+    private final class EntrySet extends AbstractSet<Map.Entry<String, NamingEntry>> {
+
+        @Override
+        public Iterator<Map.Entry<String, NamingEntry>> iterator() {
+            Table snapshot = table;
+            return new Iterator<Map.Entry<String, NamingEntry>>() {
+
+                private int slot;
+                private Map.Entry<String, NamingEntry> next = advance();
+                private Map.Entry<String, NamingEntry> last;
+
+                private Map.Entry<String, NamingEntry> advance() {
+                    while (slot < snapshot.keys.length()) {
+                        NameAtoms.Atom key = snapshot.keys.get(slot);
+                        NamingEntry value = key != null ? snapshot.values.get(slot) : null;
+                        slot++;
+                        if (value != null) {
+                            return new SimpleImmutableEntry<>(key.component(), value);
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Map.Entry<String, NamingEntry> next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next;
+                    next = advance();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException();
+                    }
+                    AtomBindings.this.remove(last.getKey(), last.getValue());
+                    last = null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bindings store for contexts which hold few bindings. Up to {@link #THRESHOLD} entries are kept
+ * in one packed array, indexed by the hash of their names with linear probing, and the store moves
+ * them to a {@link ConcurrentHashMap} when more are bound. It never moves them back.
+ * <p>
+ * The array is copied on every update and published whole, so lookups and iterators read a
+ * consistent array without locking. Entries are keyed by their own name, so the array holds no
+ * keys: a binding must be stored under the name of its entry.
+ */
+class CompactBindings extends AbstractMap<String, NamingEntry> implements ConcurrentMap<String, NamingEntry> {
+
+    /**
+     * Maximum number of entries kept in the packed array.
+     */
+    static final int THRESHOLD = 8;
+
+    private static final NamingEntry[] EMPTY = new NamingEntry[0];
+
+    /**
+     * The packed array, with at least twice as many slots as entries, or the map the entries were
+     * moved to.
+     */
+    private volatile Object store = EMPTY;
+
+    private final Set<Map.Entry<String, NamingEntry>> entrySet = new EntrySet();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public NamingEntry get(Object key) {
+        Object current = store;
+        if (current instanceof NamingEntry[]) {
+            NamingEntry[] slots = (NamingEntry[]) current;
+            int slot = slot(slots, key);
+            return slot >= 0 ? slots[slot] : null;
+        }
+        return ((ConcurrentMap<String, NamingEntry>) current).get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int size() {
+        Object current = store;
+        if (current instanceof NamingEntry[]) {
+            int size = 0;
+            for (NamingEntry entry : (NamingEntry[]) current) {
+                if (entry != null) {
+                    size++;
+                }
+            }
+            return size;
+        }
+        return ((ConcurrentMap<String, NamingEntry>) current).size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public NamingEntry put(String key, NamingEntry value) {
+        ConcurrentMap<String, NamingEntry> map = map();
+        if (map != null) {
+            return map.put(key, value);
+        }
+        synchronized (this) {
+            return update(key, null, value, false);
+        }
+    }
+
+    @Override
+    public NamingEntry putIfAbsent(String key, NamingEntry value) {
+        ConcurrentMap<String, NamingEntry> map = map();
+        if (map != null) {
+            return map.putIfAbsent(key, value);
+        }
+        synchronized (this) {
+            return update(key, null, value, true);
+        }
+    }
+
+    @Override
+    public NamingEntry remove(Object key) {
+        ConcurrentMap<String, NamingEntry> map = map();
+        if (map != null) {
+            return map.remove(key);
+        }
+        synchronized (this) {
+            return update(key, null, null, false);
+        }
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        ConcurrentMap<String, NamingEntry> map = map();
+        if (map != null) {
+            return map.remove(key, value);
+        }
+        if (value == null) {
+            return false;
+        }
+        synchronized (this) {
+            return update(key, value, null, false) != null;
+        }
+    }
+
+    @Override
+    public boolean replace(String key, NamingEntry oldValue, NamingEntry newValue) {
+        ConcurrentMap<String, NamingEntry> map = map();
+        if (map != null) {
+            return map.replace(key, oldValue, newValue);
+        }
+        if (oldValue == null) {
+            return false;
+        }
+        synchronized (this) {
+            return update(key, oldValue, newValue, false) != null;
+        }
+    }
+
+    @Override
+    public NamingEntry replace(String key, NamingEntry value) {
+        ConcurrentMap<String, NamingEntry> map = map();
+        if (map != null) {
+            return map.replace(key, value);
+        }
+        synchronized (this) {
+            return get(key) != null ? update(key, null, value, false) : null;
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        store = EMPTY;
+    }
+
+    @Override
+    public Set<Map.Entry<String, NamingEntry>> entrySet() {
+        return entrySet;
+    }
+
+    /**
+     * @return the map the entries were moved to, or null if they are still in the packed array
+     */
+    @SuppressWarnings("unchecked")
+    private ConcurrentMap<String, NamingEntry> map() {
+        Object current = store;
+        return current instanceof NamingEntry[] ? null : (ConcurrentMap<String, NamingEntry>) current;
+    }
+
+    /**
+     * Sets or removes the binding of a name in a copy of the packed array, and publishes the copy.
+     * Must be called with the store lock held.
+     *
+     * @param key      the name
+     * @param expected the binding which must be replaced, or null for any
+     * @param value    the new binding, or null to remove it
+     * @param ifAbsent whether an existing binding is kept
+     * @return the previous binding, or null
+     */
+    @SuppressWarnings("unchecked")
+    private NamingEntry update(Object key, Object expected, NamingEntry value, boolean ifAbsent) {
+        Object current = store;
+        if (!(current instanceof NamingEntry[])) {
+            // Moved while waiting for the lock
+            ConcurrentMap<String, NamingEntry> map = (ConcurrentMap<String, NamingEntry>) current;
+            if (expected != null) {
+                boolean updated = value != null ? map.replace((String) key, (NamingEntry) expected, value)
+                        : map.remove(key, expected);
+                return updated ? (NamingEntry) expected : null;
+            }
+            if (value == null) {
+                return map.remove(key);
+            }
+            return ifAbsent ? map.putIfAbsent((String) key, value) : map.put((String) key, value);
+        }
+        if (value != null && !key.equals(value.name)) {
+            throw new IllegalArgumentException(key.toString());
+        }
+        NamingEntry[] slots = (NamingEntry[]) current;
+        int slot = slot(slots, key);
+        NamingEntry previous = slot >= 0 ? slots[slot] : null;
+        if ((expected != null && previous != expected) || (ifAbsent && previous != null)
+                || (previous == null && value == null)) {
+            return ifAbsent ? previous : null;
+        }
+
+        int count = value == null ? -1 : previous == null ? 1 : 0;
+        for (NamingEntry entry : slots) {
+            if (entry != null) {
+                count++;
+            }
+        }
+        if (count > THRESHOLD) {
+            ConcurrentMap<String, NamingEntry> map = new ConcurrentHashMap<>();
+            for (NamingEntry entry : slots) {
+                if (entry != null) {
+                    map.put(entry.name, entry);
+                }
+            }
+            map.put(value.name, value);
+            store = map;
+            return previous;
+        }
+
+        NamingEntry[] copy = new NamingEntry[capacity(count)];
+        for (NamingEntry entry : slots) {
+            if (entry != null && entry != previous) {
+                insert(copy, entry);
+            }
+        }
+        if (value != null) {
+            insert(copy, value);
+        }
+        store = copy;
+        return previous;
+    }
+
+    /**
+     * @return the number of slots for the given number of entries, a power of two at least twice
+     * the number of entries
+     */
+    private static int capacity(int count) {
+        if (count == 0) {
+            return 0;
+        }
+        int capacity = 4;
+        while (capacity < count * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static void insert(NamingEntry[] slots, NamingEntry entry) {
+        int mask = slots.length - 1;
+        int slot = hash(entry.name) & mask;
+        while (slots[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = entry;
+    }
+
+    /**
+     * @return the slot holding the entry of the name, or -1 if it is not bound
+     */
+    private static int slot(NamingEntry[] slots, Object key) {
+        if (slots.length == 0 || key == null) {
+            return -1;
+        }
+        int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            NamingEntry entry = slots[slot];
+            if (entry == null) {
+                return -1;
+            }
+            if (entry.name == key || entry.name.equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * View of the bindings. Iterators read the packed array or the map current when they were
+     * created.
+     */
+    private final class EntrySet extends AbstractSet<Map.Entry<String, NamingEntry>> {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Iterator<Map.Entry<String, NamingEntry>> iterator() {
+            Object current = store;
+            if (!(current instanceof NamingEntry[])) {
+                return ((ConcurrentMap<String, NamingEntry>) current).entrySet().iterator();
+            }
+            NamingEntry[] slots = (NamingEntry[]) current;
+            return new Iterator<Map.Entry<String, NamingEntry>>() {
+
+                private int slot = advance(0);
+                private NamingEntry last;
+
+                private int advance(int from) {
+                    int next = from;
+                    while (next < slots.length && slots[next] == null) {
+                        next++;
+                    }
+                    return next;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return slot < slots.length;
+                }
+
+                @Override
+                public Map.Entry<String, NamingEntry> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    last = slots[slot];
+                    slot = advance(slot + 1);
+                    return new SimpleImmutableEntry<>(last.name, last);
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException();
+                    }
+                    CompactBindings.this.remove(last.name, last);
+                    last = null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return CompactBindings.this.size();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.wso2.carbon.jndi.internal.util.ImmutableCompositeName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Where a {@link NamingContext} is bound within its namespace: the location of the context it is
+ * bound in and the name it is bound under. A context and its views share one location.
+ * <p>
+ * A context gets a location when it is first bound as a subcontext of a context in the same
+ * namespace, and loses it when that binding is removed. Binding it under further names does not
+ * move it, renaming the binding it is located at does. Since only the parent and the name are kept,
+ * moving a context moves its whole subtree without touching it.
+ * <p>
+ * The parent and the name are published together as one immutable place and changed by
+ * compare-and-set, so maintaining locations takes no lock on the bind path.
+ */
+public final class ContextLocation {
+
+    private final boolean root;
+    private final PathIndex pathIndex;
+
+    /**
+     * The parent and the name this location is attached under, or null if it is not attached.
+     */
+    private final AtomicReference<Place> place = new AtomicReference<>();
+
+    /**
+     * @param root      true for the root context of a namespace, which is always located
+     * @param pathIndex the path index of the context, or null
+     */
+    ContextLocation(boolean root, PathIndex pathIndex) {
+        this.root = root;
+        this.pathIndex = pathIndex;
+    }
+
+    /**
+     * @return the path index of the context at this location, or null if it has none
+     */
+    PathIndex pathIndex() {
+        return pathIndex;
+    }
+
+    /**
+     * Attaches this location under the given parent, unless it already has one or the parent is
+     * within the subtree of this location.
+     *
+     * @param parent the location of the context the context of this location is bound in
+     * @param atom   the name it is bound under
+     * @return true if the location was attached
+     */
+    boolean attach(ContextLocation parent, String atom) {
+        if (root || place.get() != null) {
+            return false;
+        }
+        if (contains(parent)) {
+            return false;
+        }
+        return place.compareAndSet(null, new Place(parent, atom));
+    }
+
+    /**
+     * Moves this location from under one parent and name to under another, for the rename of the
+     * binding it is located at. The new parent must not be within the subtree of this location.
+     *
+     * @param from     the location of the context the binding was renamed from
+     * @param fromAtom the old name of the binding
+     * @param to       the location of the context the binding was renamed to
+     * @param toAtom   the new name of the binding
+     * @return true if the location was moved
+     */
+    boolean move(ContextLocation from, String fromAtom, ContextLocation to, String toAtom) {
+        Place current = place.get();
+        return current != null && current.is(from, fromAtom) && place.compareAndSet(current, new Place(to, toAtom));
+    }
+
+    /**
+     * @param location a location
+     * @return true if the location is this location or within its subtree
+     */
+    boolean contains(ContextLocation location) {
+        for (ContextLocation ancestor = location; ancestor != null; ancestor = ancestor.parent()) {
+            if (ancestor == this) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Detaches this location if it is attached under the given parent and name.
+     *
+     * @param parent the location of the context a binding was removed from
+     * @param atom   the name of the removed binding
+     * @return true if the location was detached
+     */
+    boolean detach(ContextLocation parent, String atom) {
+        Place current = place.get();
+        return current != null && current.is(parent, atom) && place.compareAndSet(current, null);
+    }
+
+    /**
+     * @param parent a location
+     * @param atom   a name
+     * @return true if this location is attached under the given parent and name
+     */
+    boolean isAt(ContextLocation parent, String atom) {
+        Place current = place.get();
+        return current != null && current.is(parent, atom);
+    }
+
+    /**
+     * @return the location this location is attached under, or null if it is not attached
+     */
+    ContextLocation parent() {
+        Place current = place.get();
+        return current == null ? null : current.parent;
+    }
+
+    /**
+     * @return the name this location is attached under, or null if it is not attached
+     */
+    String atom() {
+        Place current = place.get();
+        return current == null ? null : current.atom;
+    }
+
+    /**
+     * Returns the components of the full name of this location relative to the root of the
+     * namespace.
+     *
+     * @return the components, none for the root, or null if the location is not attached to the
+     * root of the namespace
+     */
+    public List<String> atoms() {
+        List<String> atoms = new ArrayList<>();
+        ContextLocation location = this;
+        while (!location.root) {
+            Place current = location.place.get();
+            if (current == null) {
+                return null;
+            }
+            atoms.add(current.atom);
+            location = current.parent;
+        }
+        Collections.reverse(atoms);
+        return atoms;
+    }
+
+    /**
+     * Returns the full name of this location relative to the root of the namespace. Components
+     * are joined by '/' and any '/' or '\' within a component is escaped with '\'.
+     *
+     * @return the full name, empty for the root, or null if the location is not attached to the
+     * root of the namespace
+     */
+    public String path() {
+        List<String> atoms = atoms();
+        if (atoms == null) {
+            return null;
+        }
+        StringBuilder path = new StringBuilder();
+        for (String atom : atoms) {
+            if (path.length() > 0) {
+                path.append('/');
+            }
+            ImmutableCompositeName.appendComponent(path, atom);
+        }
+        return path.toString();
+    }
+
+    /**
+     * Returns the full name of a binding of the context at this location.
+     *
+     * @param atom the name of the binding
+     * @return the full name of the binding, or null if this location is not attached to the root
+     */
+    public String path(String atom) {
+        String path = path();
+        if (path == null) {
+            return null;
+        }
+        return join(path, atom);
+    }
+
+    /**
+     * Appends an escaped name component to a full name.
+     *
+     * @param path a full name, possibly empty
+     * @param atom the component
+     * @return the full name of the component
+     */
+    static String join(String path, String atom) {
+        StringBuilder fullName = new StringBuilder(path.length() + atom.length() + 1);
+        if (!path.isEmpty()) {
+            fullName.append(path).append('/');
+        }
+        return ImmutableCompositeName.appendComponent(fullName, atom).toString();
+    }
+
+    /**
+     * A parent and the name a location is attached under.
+     */
+    private static final class Place {
+
+        private final ContextLocation parent;
+        private final String atom;
+
+        private Place(ContextLocation parent, String atom) {
+            this.parent = parent;
+            this.atom = atom;
+        }
+
+        private boolean is(ContextLocation parent, String atom) {
+            return this.parent == parent && this.atom.equals(atom);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes the bindings whose time to live has run out, for all the namespaces of the JVM.
+ * <p>
+ * Expiring entries are linked into a hierarchical timing wheel of {@link #LEVELS} levels of
+ * {@link #SLOTS} slots. A slot of the first level spans one tick, and a slot of each next level
+ * spans all the slots of the level below. An entry is linked into the slot of the first level which
+ * spans its deadline, so scheduling and cancelling it take constant time and no task is created per
+ * entry. Every time the first level wraps around, the current slot of each level which wrapped is
+ * emptied into the levels below, so an entry moves down at most once per level before it expires.
+ * <p>
+ * A single daemon thread advances the wheel while entries are scheduled, waking only for the ticks
+ * whose slots hold entries and for the moves between levels, and unbinds the expired entries.
+ * Lookups do not depend on it: an entry whose deadline has passed is treated as unbound even while
+ * it is still in its context.
+ */
+final class ExpiryWheel {
+
+    /**
+     * The wheel of all the namespaces.
+     */
+    static final ExpiryWheel SHARED = new ExpiryWheel();
+
+    /**
+     * Length of a tick, in nanoseconds.
+     */
+    static final long TICK = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    /**
+     * The time ticks are counted from.
+     */
+    private final long origin = System.nanoTime();
+
+    /**
+     * The first entry of each slot of each level, linked to the others through their wheel links.
+     */
+    private final NamingEntry.Expiring[] slots = new NamingEntry.Expiring[LEVELS * SLOTS];
+
+    /**
+     * The next tick to process.
+     */
+    private long next;
+
+    /**
+     * The tick the thread sleeps until.
+     */
+    private long wake;
+
+    /**
+     * Number of scheduled entries.
+     */
+    private int count;
+
+    private Thread thread;
+
+    private ExpiryWheel() {
+    }
+
+    /**
+     * Schedules the removal of an entry which has been bound.
+     *
+     * @param entry the entry
+     */
+    synchronized void schedule(NamingEntry.Expiring entry) {
+        if (entry.slot >= 0) {
+            return;
+        }
+        if (count == 0) {
+            // Nothing is scheduled, so the ticks since the wheel last ran need not be processed
+            next = Math.max(next, tick(System.nanoTime()));
+        }
+        entry.tick = Math.max(tick(entry.deadline + TICK - 1), 0);
+        link(entry);
+        count++;
+        if (thread == null) {
+            wake = entry.tick;
+            thread = new Thread(this::run, "carbon-jndi-expiry");
+            thread.setDaemon(true);
+            thread.start();
+        } else if (entry.tick < wake) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Cancels the removal of an entry which has been replaced or unbound. Does nothing if the entry
+     * was not scheduled, or has already been taken off the wheel to be removed.
+     *
+     * @param entry the entry
+     */
+    synchronized void cancel(NamingEntry.Expiring entry) {
+        if (entry.slot >= 0) {
+            unlink(entry);
+            count--;
+        }
+    }
+
+    /**
+     * @return the number of scheduled entries
+     */
+    synchronized int size() {
+        return count;
+    }
+
+    private void run() {
+        while (true) {
+            List<NamingEntry.Expiring> expired;
+            synchronized (this) {
+                expired = advance(tick(System.nanoTime()));
+                if (expired.isEmpty()) {
+                    if (count == 0) {
+                        thread = null;
+                        return;
+                    }
+                    wake = nextWake();
+                    try {
+                        long delay = origin + wake * TICK - System.nanoTime();
+                        if (delay > 0) {
+                            TimeUnit.NANOSECONDS.timedWait(this, delay);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        thread = null;
+                        return;
+                    }
+                    continue;
+                }
+            }
+            for (NamingEntry.Expiring entry : expired) {
+                entry.context.expire(entry);
+            }
+        }
+    }
+
+    /**
+     * Processes the ticks up to the given one and takes the entries which expired off the wheel.
+     */
+    private List<NamingEntry.Expiring> advance(long now) {
+        List<NamingEntry.Expiring> expired = new ArrayList<>();
+        while (next <= now) {
+            int index = (int) next & MASK;
+            if (index == 0) {
+                // Move the entries of the slots which are now current down to the lower levels
+                for (int level = 1; level < LEVELS; level++) {
+                    int slot = (int) (next >>> (SLOT_BITS * level)) & MASK;
+                    NamingEntry.Expiring entry = slots[level * SLOTS + slot];
+                    while (entry != null) {
+                        NamingEntry.Expiring following = entry.next;
+                        unlink(entry);
+                        link(entry);
+                        entry = following;
+                    }
+                    if (slot != 0) {
+                        break;
+                    }
+                }
+            }
+            NamingEntry.Expiring entry = slots[index];
+            while (entry != null) {
+                NamingEntry.Expiring following = entry.next;
+                unlink(entry);
+                count--;
+                expired.add(entry);
+                entry = following;
+            }
+            next++;
+        }
+        return expired;
+    }
+
+    /**
+     * @return the next tick whose slot holds entries, or the next tick which moves entries between
+     * levels if it comes first
+     */
+    private long nextWake() {
+        if ((next & MASK) == 0) {
+            return next;
+        }
+        long boundary = (next | MASK) + 1;
+        for (long tick = next; tick < boundary; tick++) {
+            if (slots[(int) tick & MASK] != null) {
+                return tick;
+            }
+        }
+        return boundary;
+    }
+
+    private long tick(long time) {
+        return (time - origin) / TICK;
+    }
+
+    /**
+     * Links an entry into the slot which spans its tick, relative to the next tick to process.
+     */
+    private void link(NamingEntry.Expiring entry) {
+        long delay = entry.tick - next;
+        int slot;
+        if (delay < SLOTS) {
+            slot = (int) Math.max(entry.tick, next) & MASK;
+        } else {
+            int level = 1;
+            long tick = entry.tick;
+            while (level < LEVELS - 1 && delay >= 1L << (SLOT_BITS * (level + 1))) {
+                level++;
+            }
+            if (delay >= 1L << (SLOT_BITS * LEVELS)) {
+                // Beyond the span of the wheel: parked in the last slot it spans, and linked
+                // again when that slot is reached
+                tick = next + (1L << (SLOT_BITS * LEVELS)) - 1;
+            }
+            slot = level * SLOTS + ((int) (tick >>> (SLOT_BITS * level)) & MASK);
+        }
+        NamingEntry.Expiring head = slots[slot];
+        entry.slot = slot;
+        entry.prev = null;
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        }
+        slots[slot] = entry;
+    }
+
+    private void unlink(NamingEntry.Expiring entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            slots[entry.slot] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.slot = -1;
+        entry.next = null;
+        entry.prev = null;
+    }
+}
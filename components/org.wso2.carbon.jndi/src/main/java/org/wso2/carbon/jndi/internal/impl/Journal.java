@@ -0,0 +1,622 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.jndi.internal.Constants;
+import org.wso2.carbon.jndi.internal.util.StringManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import javax.naming.CompositeName;
+import javax.naming.Name;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.NamingException;
+
+/**
+ * Append-only journal of the changes made to the bindings of a {@link Namespace}, which is
+ * replayed on startup on top of the last {@link NamespaceSnapshot} so that changes made at runtime
+ * survive a crash.
+ * <p>
+ * Every change is recorded by the full name of the binding relative to the root of the namespace:
+ * binds and rebinds with the state of the bound object, unbinds, subcontexts created under a name
+ * and contexts bound under a second name. A rename is recorded as the move of the old name to the
+ * new one, and the changes of a {@link NamingBatchImpl} as a single record.
+ * Bindings whose state cannot be written, as in a snapshot, are not recorded.
+ * <p>
+ * Records are appended to a buffer while the change is applied, and an updating thread then waits
+ * until its record has been written. Whichever thread gets to write first writes the records of
+ * all the waiting threads in one write and, depending on the sync policy, one fsync, so concurrent
+ * updates share the cost of a sync. The sync policy is one of:
+ * <ul>
+ * <li>{@link #SYNC_ALWAYS}: updates return once their record is synced to disk.</li>
+ * <li>{@link #SYNC_INTERVAL}: updates return once their record is written to the operating system,
+ * and the journal is synced when a write finds the last sync older than the interval.</li>
+ * <li>{@link #SYNC_NEVER}: updates return once their record is written to the operating system,
+ * which survives a crash of the process but not of the machine.</li>
+ * </ul>
+ * Each record is framed with its length and checksum. Replay streams the records from the start of
+ * the journal and stops at the first incomplete or corrupt one, which is cut off.
+ * <p>
+ * Changes are applied, and visible to lookups, before their records are written, so a failed write
+ * or sync does not fail the update which waited for it. It is logged and reported by
+ * {@link #failure()}. The journal is cut back to the end of the last successful write, and the
+ * records are kept to be written again by the next sync. If the journal cannot be cut back, it no
+ * longer records anything and {@link #failure()} keeps reporting why.
+ */
+public class Journal {
+
+    public static final int SYNC_ALWAYS = 0;
+    public static final int SYNC_INTERVAL = 1;
+    public static final int SYNC_NEVER = 2;
+
+    private static final Logger logger = LoggerFactory.getLogger(Journal.class);
+
+    private static final StringManager SM = StringManager.getManager(Constants.PACKAGE);
+
+    private static final long DEFAULT_SYNC_INTERVAL = 1000;
+
+    private static final byte OP_BIND = 1;
+    private static final byte OP_UNBIND = 2;
+    private static final byte OP_CREATE = 3;
+    private static final byte OP_ALIAS = 4;
+    private static final byte OP_BATCH = 5;
+    private static final byte OP_RENAME = 6;
+
+    /**
+     * Length and checksum of a record.
+     */
+    private static final int FRAME_HEADER = 8;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int syncPolicy;
+    private final long syncInterval;
+
+    /**
+     * Framed records which have not been written yet. Guarded by this journal.
+     */
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /**
+     * Number of records appended so far. Guarded by this journal.
+     */
+    private long appended;
+
+    /**
+     * Records of the batch being applied, or null. Guarded by this journal.
+     */
+    private List<byte[]> batch;
+
+    /**
+     * Held by the thread writing the pending records.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Number of records written so far. Only changed while holding the write lock.
+     */
+    private volatile long written;
+
+    /**
+     * When the journal was last synced. Guarded by the write lock.
+     */
+    private long lastSync = System.nanoTime();
+
+    /**
+     * Length of the journal up to the end of the last successful write. Guarded by the write lock.
+     */
+    private long end;
+
+    /**
+     * Why the journal could not be cut back after a failed write, or null. Once set, records are
+     * discarded and every sync fails.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Why the last write failed, or null if it succeeded.
+     */
+    private volatile IOException writeFailure;
+
+    private Journal(Path file, FileChannel channel, int syncPolicy, long syncInterval) {
+        this.file = file;
+        this.channel = channel;
+        this.syncPolicy = syncPolicy;
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * Opens a journal file, creating it if it does not exist.
+     *
+     * @param file         the journal file
+     * @param syncPolicy   one of {@link #SYNC_ALWAYS}, {@link #SYNC_INTERVAL} and {@link #SYNC_NEVER}
+     * @param syncInterval the minimum time between syncs for {@link #SYNC_INTERVAL}, in milliseconds
+     * @return the journal, which must be replayed before it records anything
+     * @throws NamingException if the file cannot be opened
+     */
+    public static Journal open(Path file, int syncPolicy, long syncInterval) throws NamingException {
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            return new Journal(file, channel, syncPolicy, TimeUnit.MILLISECONDS.toNanos(syncInterval));
+        } catch (IOException e) {
+            throw namingException("journal.readFailed", file, e);
+        }
+    }
+
+    /**
+     * Returns the sync policy requested by the {@link Constants#JOURNAL_SYNC} environment property:
+     * "always" (the default), "interval" or "never".
+     *
+     * @param value the value of the property, possibly null
+     * @return the sync policy
+     * @throws NamingException if the value is not a sync policy
+     */
+    public static int syncPolicy(Object value) throws NamingException {
+        if (value == null || "always".equalsIgnoreCase(value.toString().trim())) {
+            return SYNC_ALWAYS;
+        } else if ("interval".equalsIgnoreCase(value.toString().trim())) {
+            return SYNC_INTERVAL;
+        } else if ("never".equalsIgnoreCase(value.toString().trim())) {
+            return SYNC_NEVER;
+        }
+        throw new NamingException(SM.getString("journal.invalidSync", value));
+    }
+
+    /**
+     * Returns the sync interval requested by the {@link Constants#JOURNAL_SYNC_INTERVAL} environment
+     * property, one second by default.
+     *
+     * @param value the value of the property, possibly null
+     * @return the sync interval in milliseconds
+     * @throws NamingException if the value is not a number
+     */
+    public static long syncInterval(Object value) throws NamingException {
+        if (value == null) {
+            return DEFAULT_SYNC_INTERVAL;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.toString().trim()));
+        } catch (NumberFormatException e) {
+            NamingException namingException =
+                    new NamingException(SM.getString("journal.invalidSyncInterval", value));
+            namingException.initCause(e);
+            throw namingException;
+        }
+    }
+
+    /**
+     * Applies the records of the journal to the root context of a namespace, in order. A record
+     * which cannot be applied is logged and skipped. An incomplete or corrupt record, as left by a
+     * crash during a write, ends the replay and is cut off with everything after it.
+     *
+     * @param root the root context of the namespace
+     * @return the number of records applied
+     * @throws NamingException if the journal cannot be read
+     */
+    public int replay(NamingContext root) throws NamingException {
+        try {
+            long size = channel.size();
+            long position = 0;
+            int count = 0;
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+            while (position + FRAME_HEADER <= size) {
+                header.clear();
+                read(header, position);
+                int length = header.getInt(0);
+                if (length <= 0 || position + FRAME_HEADER + length > size) {
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.allocate(length);
+                read(record, position + FRAME_HEADER);
+                CRC32 checksum = new CRC32();
+                checksum.update(record.array(), 0, length);
+                if ((int) checksum.getValue() != header.getInt(4)) {
+                    break;
+                }
+                record.flip();
+                apply(root, record);
+                position += FRAME_HEADER + length;
+                count++;
+            }
+            if (position < size) {
+                logger.warn("Journal " + file + " ends with an incomplete record at " + position + ", which is discarded");
+                channel.truncate(position);
+                channel.force(true);
+            }
+            channel.position(position);
+            end = position;
+            return count;
+        } catch (IOException e) {
+            throw namingException("journal.readFailed", file, e);
+        }
+    }
+
+    /**
+     * Records a change to a binding of a context. Must be called while the change is applied, in the
+     * order changes are applied, and after the location of a new subcontext has been set.
+     *
+     * @param context the context whose binding changed
+     * @param atom    the name of the binding in the context
+     * @param entry   the entry bound after the change, or null
+     */
+    void record(NamingContext context, String atom, NamingEntry entry) {
+        List<String> path = context.location.atoms();
+        if (path == null) {
+            // The context is not bound in the namespace
+            return;
+        }
+        path.add(atom);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            if (entry == null || !NamespaceSnapshot.isPersistent(entry)) {
+                out.writeByte(OP_UNBIND);
+                writeName(out, path);
+            } else if (entry.type == NamingEntry.CONTEXT) {
+                if (!(entry.value instanceof NamingContext)
+                        || ((NamingContext) entry.value).namespace != context.namespace) {
+                    skipped(path);
+                    return;
+                }
+                ContextLocation location = ((NamingContext) entry.value).location;
+                if (location.isAt(context.location, atom)) {
+                    out.writeByte(OP_CREATE);
+                    writeName(out, path);
+                } else {
+                    List<String> source = location.atoms();
+                    if (source == null) {
+                        skipped(path);
+                        return;
+                    }
+                    out.writeByte(OP_ALIAS);
+                    writeName(out, path);
+                    writeName(out, source);
+                }
+            } else {
+                out.writeByte(OP_BIND);
+                writeName(out, path);
+                if (!NamespaceSnapshot.writeValue(out, entry)) {
+                    skipped(path);
+                    return;
+                }
+            }
+        } catch (IOException | NamingException e) {
+            logger.warn("Change of " + path + " could not be recorded in journal " + file, e);
+            return;
+        }
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Records the rename of a binding, which may have moved it to another context. Must be called
+     * while the rename is applied, after the location of a renamed subcontext has been moved. A binding
+     * which is not recorded by name, or whose old or new name is not located in the namespace, is
+     * recorded as the bind of the new name and the unbind of the old one.
+     *
+     * @param source  the context the binding was renamed from
+     * @param oldAtom the old name of the binding in the source
+     * @param target  the context the binding was renamed to
+     * @param newAtom the new name of the binding in the target
+     * @param entry   the entry bound under the new name
+     */
+    void recordRename(NamingContext source, String oldAtom, NamingContext target, String newAtom, NamingEntry entry) {
+        List<String> from = source.location.atoms();
+        List<String> to = target.location.atoms();
+        boolean foreign = entry.type == NamingEntry.CONTEXT && (!(entry.value instanceof NamingContext)
+                || ((NamingContext) entry.value).namespace != target.namespace);
+        if (from == null || to == null || foreign || !NamespaceSnapshot.isPersistent(entry)) {
+            record(target, newAtom, entry);
+            record(source, oldAtom, null);
+            return;
+        }
+        from.add(oldAtom);
+        to.add(newAtom);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(OP_RENAME);
+            writeName(out, to);
+            writeName(out, from);
+        } catch (IOException e) {
+            logger.warn("Rename of " + from + " could not be recorded in journal " + file, e);
+            return;
+        }
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Starts collecting the records of a batch, which {@link #endBatch()} appends as one record.
+     */
+    synchronized void beginBatch() {
+        batch = new ArrayList<>();
+    }
+
+    /**
+     * Appends the records collected since {@link #beginBatch()} as one record.
+     */
+    synchronized void endBatch() {
+        List<byte[]> records = batch;
+        batch = null;
+        if (records == null || records.isEmpty()) {
+            return;
+        }
+        if (records.size() == 1) {
+            frame(records.get(0));
+            return;
+        }
+        int length = 1 + 4;
+        for (byte[] record : records) {
+            length += 4 + record.length;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        payload.put(OP_BATCH).putInt(records.size());
+        for (byte[] record : records) {
+            payload.putInt(record.length).put(record);
+        }
+        frame(payload.array());
+    }
+
+    /**
+     * Waits until every record appended so far has been written, and synced if the sync policy
+     * requires it. If no other thread is writing, writes the records of all the waiting threads.
+     * A failed write is logged and reported by {@link #failure()}, and its records are written
+     * again by the next sync.
+     */
+    public void sync() {
+        long target;
+        synchronized (this) {
+            target = appended;
+        }
+        if (written >= target) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            if (written >= target) {
+                // Written by the thread which held the lock
+                return;
+            }
+            if (failure != null) {
+                // The records are discarded, as logged when the journal could not be cut back
+                return;
+            }
+            byte[] records;
+            long upTo;
+            synchronized (this) {
+                records = pending.toByteArray();
+                pending.reset();
+                upTo = appended;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(records);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                long now = System.nanoTime();
+                if (syncPolicy == SYNC_ALWAYS || (syncPolicy == SYNC_INTERVAL && now - lastSync >= syncInterval)) {
+                    channel.force(false);
+                    lastSync = now;
+                }
+            } catch (IOException e) {
+                logger.warn("Journal " + file + " could not be written, its records are written again by the next sync",
+                        e);
+                writeFailure = e;
+                rollBack(records);
+                return;
+            }
+            end += records.length;
+            written = upTo;
+            writeFailure = null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns why the changes applied so far may not be in the journal: the failure of the last
+     * write, or why the journal no longer records anything.
+     *
+     * @return the failure, or null if the last write succeeded
+     */
+    public IOException failure() {
+        IOException permanent = failure;
+        return permanent != null ? permanent : writeFailure;
+    }
+
+    /**
+     * Cuts the journal back to the end of the last successful write after a failed write, and puts
+     * the records which were being written back in front of the pending ones. Must be called while
+     * holding the write lock.
+     *
+     * @param records the records which were being written
+     */
+    private void rollBack(byte[] records) {
+        synchronized (this) {
+            byte[] later = pending.toByteArray();
+            pending.reset();
+            pending.write(records, 0, records.length);
+            pending.write(later, 0, later.length);
+        }
+        try {
+            channel.truncate(end);
+            channel.position(end);
+        } catch (IOException e) {
+            logger.error("Journal " + file + " could not be cut back to " + end + " after a failed write, "
+                    + "and no longer records changes", e);
+            failure = e;
+            synchronized (this) {
+                pending.reset();
+            }
+        }
+    }
+
+    /**
+     * Discards every record, once a snapshot of the root context holds their changes. Must be
+     * called while no change is applied.
+     *
+     * @throws NamingException if the journal cannot be truncated
+     */
+    void reset() throws NamingException {
+        writeLock.lock();
+        try {
+            synchronized (this) {
+                pending.reset();
+                written = appended;
+            }
+            channel.truncate(0);
+            channel.position(0);
+            end = 0;
+            channel.force(true);
+        } catch (IOException e) {
+            throw namingException("journal.writeFailed", file, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private synchronized void append(byte[] record) {
+        if (batch != null) {
+            batch.add(record);
+        } else {
+            frame(record);
+        }
+    }
+
+    /**
+     * Adds a record to the pending records. Must be called while holding this journal.
+     */
+    private void frame(byte[] record) {
+        appended++;
+        if (failure != null) {
+            return;
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(record, 0, record.length);
+        byte[] header = ByteBuffer.allocate(FRAME_HEADER)
+                .putInt(record.length)
+                .putInt((int) checksum.getValue())
+                .array();
+        pending.write(header, 0, header.length);
+        pending.write(record, 0, record.length);
+    }
+
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException(SM.getString("journal.readFailed", file));
+            }
+        }
+    }
+
+    private void apply(NamingContext root, ByteBuffer record) throws IOException {
+        byte operation = record.get();
+        Name name = null;
+        try {
+            if (operation == OP_BATCH) {
+                int count = record.getInt();
+                for (int i = 0; i < count; i++) {
+                    int length = record.getInt();
+                    ByteBuffer nested = record.slice();
+                    nested.limit(length);
+                    record.position(record.position() + length);
+                    apply(root, nested);
+                }
+                return;
+            }
+            name = readName(record);
+            switch (operation) {
+                case OP_BIND:
+                    Object value = NamespaceSnapshot.readValue(record, record.get());
+                    if (value instanceof SerializedValue) {
+                        value = ((SerializedValue) value).deserialize();
+                    }
+                    root.rebind(name, value);
+                    break;
+                case OP_UNBIND:
+                    root.unbind(name);
+                    break;
+                case OP_CREATE:
+                    try {
+                        root.createSubcontext(name);
+                    } catch (NameAlreadyBoundException e) {
+                        root.unbind(name);
+                        root.createSubcontext(name);
+                    }
+                    break;
+                case OP_ALIAS:
+                    root.rebind(name, root.lookup(readName(record)));
+                    break;
+                case OP_RENAME:
+                    Name source = readName(record);
+                    try {
+                        root.rename(source, name);
+                    } catch (NameAlreadyBoundException e) {
+                        root.unbind(name);
+                        root.rename(source, name);
+                    }
+                    break;
+                default:
+                    throw new IOException(SM.getString("journal.readFailed", file));
+            }
+        } catch (NamingException e) {
+            logger.warn("Journal record for " + name + " could not be replayed", e);
+        }
+    }
+
+    private void skipped(List<String> path) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Change of " + path + " is not recorded in journal " + file);
+        }
+    }
+
+    private static NamingException namingException(String key, Path file, Exception cause) {
+        NamingException namingException = new NamingException(SM.getString(key, file));
+        namingException.initCause(cause);
+        return namingException;
+    }
+
+    private static void writeName(DataOutputStream out, List<String> atoms) throws IOException {
+        out.writeInt(atoms.size());
+        for (String atom : atoms) {
+            NamespaceSnapshot.writeString(out, atom);
+        }
+    }
+
+    private static Name readName(ByteBuffer in) throws NamingException {
+        Name name = new CompositeName();
+        for (int i = in.getInt(); i > 0; i--) {
+            name.add(NamespaceSnapshot.readString(in));
+        }
+        return name;
+    }
+}
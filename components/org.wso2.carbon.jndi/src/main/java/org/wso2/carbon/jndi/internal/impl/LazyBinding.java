@@ -0,0 +1,74 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.wso2.carbon.jndi.internal.util.LambdaExceptionUtils.SupplierWithExceptions;
+import org.wso2.carbon.jndi.internal.util.UncheckedNamingException;
+
+import javax.naming.Binding;
+import javax.naming.NamingException;
+
+/**
+ * A binding whose object is resolved when it is first asked for. If resolving fails,
+ * {@link #getObject()} throws an {@link UncheckedNamingException} and resolves again when it is
+ * called again.
+ */
+final class LazyBinding extends Binding {
+
+    private static final long serialVersionUID = 4253461592838463371L;
+
+    private transient SupplierWithExceptions<Object, NamingException> resolver;
+    private transient boolean resolved;
+
+    /**
+     * @param name     the name of the binding
+     * @param resolver resolves the object of the binding
+     */
+    LazyBinding(String name, SupplierWithExceptions<Object, NamingException> resolver) {
+        super(name, null, null, true);
+        this.resolver = resolver;
+    }
+
+    @Override
+    public synchronized Object getObject() {
+        if (!resolved) {
+            try {
+                super.setObject(resolver.get());
+            } catch (NamingException e) {
+                throw new UncheckedNamingException(e);
+            }
+            resolved = true;
+            resolver = null;
+        }
+        return super.getObject();
+    }
+
+    @Override
+    public synchronized void setObject(Object obj) {
+        super.setObject(obj);
+        resolved = true;
+        resolver = null;
+    }
+
+    @Override
+    public String getClassName() {
+        Object value = getObject();
+        return value != null ? value.getClass().getName() : null;
+    }
+}
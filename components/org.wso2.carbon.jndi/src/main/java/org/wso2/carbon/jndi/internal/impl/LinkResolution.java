@@ -0,0 +1,190 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.naming.Name;
+
+/**
+ * Tracks the resolution of a chain of links by the current thread.
+ * <p>
+ * While a link is being resolved, every {@link NamingContext} lookup made by the thread records the
+ * entries it walks through, and the first entry which is not a link becomes the target of the chain.
+ * The outermost link of the chain caches that target together with the recorded entries, so that
+ * later lookups of the link go to the final target in one step for as long as each of those entries
+ * is still bound. Changes to other bindings leave the target cached.
+ * <p>
+ * A link which is reached again while it is still being resolved is part of a cycle.
+ */
+final class LinkResolution {
+
+    private static final ThreadLocal<LinkResolution> CURRENT = new ThreadLocal<>();
+
+    private final List<NamingEntry> links = new ArrayList<>();
+    private final List<NamingContext> contexts = new ArrayList<>();
+    private final List<NamingEntry> entries = new ArrayList<>();
+
+    private NamingContext targetContext;
+    private NamingEntry targetEntry;
+    private Name targetName;
+
+    private LinkResolution() {
+    }
+
+    /**
+     * @return the link resolution of the current thread, or null if it is not resolving a link
+     */
+    static LinkResolution current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Starts the resolution of a chain of links by the current thread.
+     *
+     * @return the new link resolution, which must be ended by the caller
+     */
+    static LinkResolution begin() {
+        LinkResolution resolution = new LinkResolution();
+        CURRENT.set(resolution);
+        return resolution;
+    }
+
+    /**
+     * Ends the resolution started by {@link #begin()}.
+     */
+    void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Records that a link is being resolved.
+     *
+     * @param link the entry of the link
+     * @return false if the link is already being resolved, in which case it is part of a cycle
+     */
+    boolean enter(NamingEntry link) {
+        for (NamingEntry entry : links) {
+            if (entry == link) {
+                return false;
+            }
+        }
+        links.add(link);
+        return true;
+    }
+
+    /**
+     * Records that the resolution of a link has completed.
+     *
+     * @param link the entry of the link
+     */
+    void exit(NamingEntry link) {
+        links.remove(link);
+    }
+
+    /**
+     * Records that the result depends on an entry staying bound in a context.
+     *
+     * @param context the context the entry was read from
+     * @param entry   the entry
+     */
+    void depend(NamingContext context, NamingEntry entry) {
+        for (NamingEntry recorded : entries) {
+            if (recorded == entry) {
+                return;
+            }
+        }
+        contexts.add(context);
+        entries.add(entry);
+    }
+
+    /**
+     * Records that the result depends on everything a previously cached target depends on.
+     *
+     * @param target the cached target
+     */
+    void depend(Target target) {
+        for (int i = 0; i < target.entries.length; i++) {
+            depend(target.contexts[i], target.entries[i]);
+        }
+    }
+
+    /**
+     * Offers an entry which is not a link as the target of the chain. Only the first one is kept,
+     * since entries reached afterwards are looked up while resolving the target itself.
+     *
+     * @param context the context the entry is bound in
+     * @param entry   the entry
+     * @param name    the name the entry was looked up with, its last component naming the entry
+     */
+    void target(NamingContext context, NamingEntry entry, Name name) {
+        if (targetEntry == null) {
+            targetContext = context;
+            targetEntry = entry;
+            targetName = name.getSuffix(name.size() - 1);
+        }
+    }
+
+    /**
+     * @return the target of the chain, or null if the chain ended in a context which is not a
+     * NamingContext and can therefore not be cached
+     */
+    Target toTarget() {
+        if (targetEntry == null) {
+            return null;
+        }
+        return new Target(targetContext, targetEntry, targetName,
+                contexts.toArray(new NamingContext[contexts.size()]),
+                entries.toArray(new NamingEntry[entries.size()]));
+    }
+
+    /**
+     * The final target of a chain of links and the entries the chain went through.
+     */
+    static final class Target {
+
+        final NamingContext context;
+        final NamingEntry entry;
+        final Name name;
+        private final NamingContext[] contexts;
+        private final NamingEntry[] entries;
+
+        private Target(NamingContext context, NamingEntry entry, Name name, NamingContext[] contexts,
+                       NamingEntry[] entries) {
+            this.context = context;
+            this.entry = entry;
+            this.name = name;
+            this.contexts = contexts;
+            this.entries = entries;
+        }
+
+        /**
+         * @return true if every entry the chain went through is still bound
+         */
+        boolean isValid() {
+            for (int i = 0; i < entries.length; i++) {
+                if (!contexts[i].isBound(entries[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bindings store of a context restored from a {@link NamespaceSnapshot}, which decodes the
+ * bindings of the context from the snapshot the first time they are accessed and then delegates
+ * to a regular bindings store holding them.
+ */
+class MappedBindings extends AbstractMap<String, NamingEntry> implements ConcurrentMap<String, NamingEntry> {
+
+    private final NamespaceSnapshot.Reader reader;
+    private final int offset;
+
+    /**
+     * The context owning this store, set once the context has been created.
+     */
+    private volatile NamingContext context;
+
+    private volatile ConcurrentMap<String, NamingEntry> bindings;
+
+    /**
+     * @param reader the reader of the snapshot
+     * @param offset the position of the bindings of the context in the snapshot
+     */
+    MappedBindings(NamespaceSnapshot.Reader reader, int offset) {
+        this.reader = reader;
+        this.offset = offset;
+    }
+
+    void setContext(NamingContext context) {
+        this.context = context;
+    }
+
+    /**
+     * @return true once the bindings have been decoded from the snapshot
+     */
+    boolean isDecoded() {
+        return bindings != null;
+    }
+
+    private ConcurrentMap<String, NamingEntry> bindings() {
+        ConcurrentMap<String, NamingEntry> result = bindings;
+        if (result == null) {
+            synchronized (this) {
+                result = bindings;
+                if (result == null) {
+                    result = NamingContext.newBindings(context.env);
+                    reader.readSubContextBindings(context, offset, result);
+                    bindings = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public NamingEntry get(Object key) {
+        return bindings().get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return bindings().containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return bindings().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return bindings().isEmpty();
+    }
+
+    @Override
+    public NamingEntry put(String key, NamingEntry value) {
+        return bindings().put(key, value);
+    }
+
+    @Override
+    public NamingEntry putIfAbsent(String key, NamingEntry value) {
+        return bindings().putIfAbsent(key, value);
+    }
+
+    @Override
+    public NamingEntry remove(Object key) {
+        return bindings().remove(key);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return bindings().remove(key, value);
+    }
+
+    @Override
+    public boolean replace(String key, NamingEntry oldValue, NamingEntry newValue) {
+        return bindings().replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public NamingEntry replace(String key, NamingEntry value) {
+        return bindings().replace(key, value);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return bindings().keySet();
+    }
+
+    @Override
+    public Collection<NamingEntry> values() {
+        return bindings().values();
+    }
+
+    @Override
+    public Set<Entry<String, NamingEntry>> entrySet() {
+        return bindings().entrySet();
+    }
+}
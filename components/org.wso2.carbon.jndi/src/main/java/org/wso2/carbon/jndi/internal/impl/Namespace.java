@@ -0,0 +1,257 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.naming.NamingException;
+
+/**
+ * State shared by a root {@link NamingContext}, the subcontexts created under it and the views
+ * returned by looking up an empty name.
+ */
+public class Namespace {
+
+    /**
+     * Single updates share this lock while batches of updates hold it exclusively, so that a batch
+     * is validated and applied without interference.
+     */
+    private final ReentrantReadWriteLock updates = new ReentrantReadWriteLock();
+
+    /**
+     * Replaced when a batch of updates starts and ends being published. While a batch is being
+     * published it holds the entries the batch replaces, so that lookups read the bindings as they
+     * were before the batch instead of waiting for it. Lookups which overlap the start or the end of
+     * a publication are retried, so that they observe either none or all of the batch.
+     */
+    private volatile Publication publication = new Publication(null);
+
+    /**
+     * Set once the root context of this namespace has been created.
+     */
+    private final AtomicBoolean rooted = new AtomicBoolean();
+
+    /**
+     * Set once a context of this namespace has a {@link PathIndex}.
+     */
+    private volatile boolean pathIndexed;
+
+    /**
+     * Index of the full names of all the bindings, or null if it is not enabled.
+     */
+    private final SearchIndex searchIndex;
+
+    /**
+     * Journal of the changes to the bindings, or null if changes are not journaled.
+     */
+    private volatile Journal journal;
+
+    /**
+     * Dispatcher of the naming events, created when the first listener is registered.
+     */
+    private volatile NamingEventDispatcher events;
+
+    public Namespace() {
+        this(false);
+    }
+
+    /**
+     * @param searchIndex true to keep a {@link SearchIndex} of the bindings of this namespace
+     */
+    public Namespace(boolean searchIndex) {
+        this.searchIndex = searchIndex ? new SearchIndex() : null;
+    }
+
+    /**
+     * Records the creation of a context in this namespace. The first context created is the root.
+     *
+     * @return true if the context is the root of this namespace
+     */
+    boolean claimRoot() {
+        return rooted.compareAndSet(false, true);
+    }
+
+    /**
+     * @return the index of the full names of the bindings, or null if it is not enabled
+     */
+    public SearchIndex searchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Records that a binding of a context in this namespace has been added, replaced or removed,
+     * and drops the names which pass through it from the path indexes. Must be called after the
+     * change is visible in the bindings store.
+     *
+     * @param location the location of the context of the binding
+     * @param atom     the name of the binding
+     */
+    void changed(ContextLocation location, String atom) {
+        if (pathIndexed) {
+            PathIndex.invalidate(location, atom);
+        }
+    }
+
+    /**
+     * Records that a context of this namespace has a {@link PathIndex}.
+     */
+    void pathIndexed() {
+        pathIndexed = true;
+    }
+
+    /**
+     * @return the dispatcher of the naming events, or null if no listener was ever registered
+     */
+    NamingEventDispatcher events() {
+        return events;
+    }
+
+    /**
+     * Returns the dispatcher of the naming events, creating it if needed.
+     *
+     * @param queueSize the maximum number of undelivered changes, if the dispatcher is created
+     * @return the dispatcher of the naming events
+     */
+    synchronized NamingEventDispatcher events(int queueSize) {
+        if (events == null) {
+            events = new NamingEventDispatcher(queueSize);
+        }
+        return events;
+    }
+
+    /**
+     * @return the journal of the changes to the bindings, or null if changes are not journaled
+     */
+    public Journal journal() {
+        return journal;
+    }
+
+    /**
+     * Starts journaling the changes to the bindings. Must be called before the namespace is used.
+     *
+     * @param journal the journal, already replayed
+     */
+    void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Waits until the changes made so far are in the journal, if there is one. Must be called
+     * after making an update, once the update lock has been released. The update is applied
+     * whether or not its record can be written, so a failure to write the journal is reported by
+     * {@link Journal#failure()} rather than to the caller.
+     */
+    public void sync() {
+        Journal current = journal;
+        if (current != null) {
+            current.sync();
+        }
+    }
+
+    /**
+     * Returns the lock to hold while making a single update to a context of this namespace. Single
+     * updates share it, unless the namespace is journaled: the journal must record updates in the
+     * order they are applied, so they are then made one at a time.
+     *
+     * @return the lock to hold while making a single update to a context of this namespace
+     */
+    public Lock updateLock() {
+        return journal != null ? updates.writeLock() : updates.readLock();
+    }
+
+    /**
+     * @return the lock to hold while validating and applying a batch of updates
+     */
+    public Lock batchLock() {
+        return updates.writeLock();
+    }
+
+    /**
+     * Starts publishing a batch of updates. Must be called while holding the batch lock, right
+     * before the bindings stores are changed. Only the changes to the stores and the path indexes
+     * may be made until {@link #endPublication()}; the other consequences of the changes are
+     * handled once the publication has ended.
+     *
+     * @param previous the entries the batch replaces, by name for each bindings store it changes,
+     *                 with null standing for a name which is not bound
+     */
+    void beginPublication(Map<ConcurrentMap<String, NamingEntry>, Map<String, NamingEntry>> previous) {
+        publication = new Publication(previous);
+    }
+
+    /**
+     * Ends the publication started by {@link #beginPublication(Map)}.
+     */
+    void endPublication() {
+        publication = new Publication(null);
+    }
+
+    /**
+     * Returns a stamp to validate a lookup against. It never waits: while a batch is being
+     * published, the stamp gives the bindings as they were before the batch.
+     *
+     * @return the stamp
+     */
+    Publication readStamp() {
+        return publication;
+    }
+
+    /**
+     * @param stamp a stamp returned by {@link #readStamp()}
+     * @return true if no publication has started or ended since the stamp was taken
+     */
+    boolean validate(Publication stamp) {
+        return publication == stamp;
+    }
+
+    /**
+     * The state of publication of a namespace, either idle or the publication of a batch.
+     */
+    static final class Publication {
+
+        /**
+         * The entries replaced by the batch being published, or null if none is.
+         */
+        private final Map<ConcurrentMap<String, NamingEntry>, Map<String, NamingEntry>> previous;
+
+        private Publication(Map<ConcurrentMap<String, NamingEntry>, Map<String, NamingEntry>> previous) {
+            this.previous = previous;
+        }
+
+        /**
+         * @return true if a batch is being published
+         */
+        boolean inProgress() {
+            return previous != null;
+        }
+
+        /**
+         * @param bindings a bindings store
+         * @return the entries the batch being published replaces in the store, by name, or null
+         * if it does not change the store
+         */
+        Map<String, NamingEntry> previous(ConcurrentMap<String, NamingEntry> bindings) {
+            return previous == null ? null : previous.get(bindings);
+        }
+    }
+}
@@ -0,0 +1,664 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.jndi.internal.Constants;
+import org.wso2.carbon.jndi.internal.util.StringManager;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+
+import javax.naming.LinkRef;
+import javax.naming.NamingException;
+import javax.naming.RefAddr;
+import javax.naming.Reference;
+import javax.naming.StringRefAddr;
+
+/**
+ * Writes the bindings of a {@link NamingContext} and of its subcontexts to a binary snapshot file,
+ * and restores them from it.
+ * <p>
+ * Contexts, links, references with their addresses and serializable objects are written; other
+ * bindings, such as contexts of other providers or objects which cannot be serialized, are skipped,
+ * and so are bindings with a time to live and deferred values.
+ * A restored snapshot is memory mapped and nothing is decoded up front: the bindings of a context
+ * are decoded the first time the context is accessed, and a serialized object the first time it is
+ * looked up, so the cost of a restore grows with the bindings actually used rather than with the
+ * size of the snapshot. Objects are deserialized with Java serialization, so a snapshot must only
+ * be restored from a trusted location.
+ * <p>
+ * The file starts with a magic number and a version and ends with the position of the bindings of
+ * the root context. The bindings of every context are written after those of its subcontexts, as a
+ * count followed by one record per binding: its name, then the length of a tag and a tag specific
+ * payload, and the tag and payload themselves. A binding which cannot be decoded is logged and
+ * skipped, but a file whose records cannot be told apart is not restored.
+ */
+public final class NamespaceSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(NamespaceSnapshot.class);
+
+    private static final StringManager SM = StringManager.getManager(Constants.PACKAGE);
+
+    private static final int MAGIC = 0x4A4E4453;
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 8;
+    private static final int TRAILER_LENGTH = 4;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_SERIALIZED = 2;
+    private static final byte TAG_LINK = 3;
+    private static final byte TAG_REFERENCE = 4;
+    private static final byte TAG_CONTEXT = 5;
+    private static final byte TAG_SERIALIZED_REFERENCE = 6;
+
+    private static final byte ADDRESS_STRING = 0;
+    private static final byte ADDRESS_SERIALIZED = 1;
+
+    /**
+     * Root contexts of the namespaces opened with a snapshot file, by the file, so that
+     * {@link #writeOpened()} can write them back to it.
+     */
+    private static final Map<Path, NamingContext> OPENED = new ConcurrentHashMap<>();
+
+    private NamespaceSnapshot() {
+    }
+
+    /**
+     * Creates the root context of a new namespace. If the environment names a snapshot file with
+     * {@link Constants#SNAPSHOT_FILE} and the file exists, the namespace is restored from it. If
+     * the environment names a journal file with {@link Constants#JOURNAL_FILE}, the journal is
+     * replayed and then records the changes to the namespace, with the sync policy set by
+     * {@link Constants#JOURNAL_SYNC} and {@link Constants#JOURNAL_SYNC_INTERVAL}. A namespace
+     * opened with a snapshot file is written back to it by {@link #writeOpened()}.
+     *
+     * @param environment Environment properties for the Context.
+     * @param name        Name associated with the jndi context.
+     * @return the root context
+     * @throws NamingException if the snapshot or the journal cannot be read
+     */
+    public static NamingContext open(Hashtable<String, Object> environment, String name) throws NamingException {
+        NamingContext context = null;
+        Object file = environment != null ? environment.get(Constants.SNAPSHOT_FILE) : null;
+        if (file != null) {
+            Path path = Paths.get(file.toString());
+            if (Files.exists(path)) {
+                context = restore(environment, name, path);
+            }
+        }
+        if (context == null) {
+            context = new NamingContext(environment, name);
+        }
+
+        Object journalFile = environment != null ? environment.get(Constants.JOURNAL_FILE) : null;
+        if (journalFile != null) {
+            Journal journal = Journal.open(Paths.get(journalFile.toString()),
+                    Journal.syncPolicy(environment.get(Constants.JOURNAL_SYNC)),
+                    Journal.syncInterval(environment.get(Constants.JOURNAL_SYNC_INTERVAL)));
+            int replayed = journal.replay(context);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Replayed " + replayed + " records of journal " + journalFile);
+            }
+            context.namespace.setJournal(journal);
+        }
+        if (file != null) {
+            OPENED.put(Paths.get(file.toString()).toAbsolutePath().normalize(), context);
+        }
+        return context;
+    }
+
+    /**
+     * Writes every namespace opened with a snapshot file by {@link #open(Hashtable, String)} back
+     * to its file, so that it is restored with its current bindings the next time it is opened.
+     * Called when the bundle stops. A namespace which cannot be written is logged and skipped.
+     */
+    public static void writeOpened() {
+        for (Map.Entry<Path, NamingContext> opened : OPENED.entrySet()) {
+            try {
+                write(opened.getValue(), opened.getKey());
+            } catch (NamingException e) {
+                logger.error("Namespace " + opened.getValue().name + " could not be written to "
+                        + opened.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Writes the bindings of a context and of its subcontexts to a snapshot file. Updates of the
+     * namespace of the context wait until the snapshot has been written, so it is consistent. The
+     * file is replaced atomically where the file system supports it. If the context is the root of
+     * a journaled namespace, the journal is emptied once the snapshot is in place.
+     *
+     * @param context the context to write
+     * @param file    the snapshot file
+     * @throws NamingException if the snapshot cannot be written
+     */
+    public static void write(NamingContext context, Path file) throws NamingException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Lock lock = context.namespace.batchLock();
+        lock.lock();
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 DataOutputStream out = new DataOutputStream(
+                         new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                int root = new Writer(out).writeBindings(context);
+                out.writeInt(root);
+                out.flush();
+                channel.force(true);
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            // The snapshot of the whole namespace replaces the journal. Updates still wait, so no
+            // change is lost between the snapshot and the emptied journal
+            Journal journal = context.namespace.journal();
+            if (journal != null && "".equals(context.location.path())) {
+                journal.reset();
+            }
+        } catch (IOException e) {
+            throw namingException("namespaceSnapshot.writeFailed", file, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Restores the root context of a new namespace from a snapshot file.
+     *
+     * @param environment Environment properties for the Context.
+     * @param name        Name associated with the jndi context.
+     * @param file        the snapshot file
+     * @return the root context
+     * @throws NamingException if the snapshot cannot be read
+     */
+    public static NamingContext restore(Hashtable<String, Object> environment, String name, Path file)
+            throws NamingException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw namingException("namespaceSnapshot.readFailed", file, e);
+        }
+        if (buffer.limit() < HEADER_LENGTH + TRAILER_LENGTH || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION) {
+            throw new NamingException(SM.getString("namespaceSnapshot.invalidFile", file));
+        }
+        int root = buffer.getInt(buffer.limit() - TRAILER_LENGTH);
+        if (root < HEADER_LENGTH || root >= buffer.limit() - TRAILER_LENGTH) {
+            throw new NamingException(SM.getString("namespaceSnapshot.invalidFile", file));
+        }
+
+        // The bindings of the root context are decoded right away, and those of its subcontexts
+        // once they are accessed
+        Reader reader = new Reader(buffer, file);
+        NamingContext context = new NamingContext(environment, name);
+        reader.contexts.put(root, context);
+        try {
+            reader.readBindings(context, root, context.bindings);
+        } catch (StreamCorruptedException e) {
+            throw namingException("namespaceSnapshot.invalidFile", file, e);
+        }
+        // Subcontexts are only recorded as pending in the search index, which decodes them when a
+        // query reaches them
+        SearchIndex searchIndex = context.namespace.searchIndex();
+        if (searchIndex != null) {
+            searchIndex.addSubtree(context, "");
+        }
+        return context;
+    }
+
+    private static NamingException namingException(String key, Path file, Exception cause) {
+        NamingException namingException = new NamingException(SM.getString(key, file));
+        namingException.initCause(cause);
+        return namingException;
+    }
+
+    /**
+     * Writes the bindings of contexts, each context only once even if it is bound under several
+     * names.
+     */
+    private static final class Writer {
+
+        private final DataOutputStream out;
+        private final Map<ConcurrentMap<String, NamingEntry>, Integer> written = new IdentityHashMap<>();
+
+        private Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * Writes the bindings of a context after those of its subcontexts.
+         *
+         * @return the position of the bindings of the context
+         */
+        private int writeBindings(NamingContext context) throws IOException, NamingException {
+            Integer offset = written.get(context.bindings);
+            if (offset != null) {
+                return offset;
+            }
+            // Reserve the position so that a context bound below itself is written only once
+            written.put(context.bindings, -1);
+
+            Map<String, Integer> subContexts = new HashMap<>();
+            for (NamingEntry entry : context.bindings.values()) {
+                if (entry.type == NamingEntry.CONTEXT && entry.value instanceof NamingContext) {
+                    subContexts.put(entry.name, writeBindings((NamingContext) entry.value));
+                }
+            }
+
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            DataOutputStream recordOut = new DataOutputStream(records);
+            int count = 0;
+            for (NamingEntry entry : context.bindings.values()) {
+                if (entry.isExpired()) {
+                    continue;
+                }
+                Integer subContext = subContexts.get(entry.name);
+                if (subContext != null && subContext < 0) {
+                    // An enclosing context which is still being written, bound below itself
+                    subContext = null;
+                }
+                ByteArrayOutputStream record = new ByteArrayOutputStream();
+                if (writeEntry(new DataOutputStream(record), context, entry, subContext)) {
+                    writeString(recordOut, entry.name);
+                    writeBytes(recordOut, record.toByteArray());
+                    count++;
+                } else if (logger.isDebugEnabled()) {
+                    logger.debug("Binding " + entry.name + " of " + context.name + " is not written to the snapshot");
+                }
+            }
+
+            int position = out.size();
+            out.writeInt(count);
+            records.writeTo(out);
+            written.put(context.bindings, position);
+            return position;
+        }
+
+        /**
+         * Writes the tag and payload of an entry.
+         *
+         * @return false if the entry cannot be written
+         */
+        private boolean writeEntry(DataOutputStream record, NamingContext context, NamingEntry entry,
+                                   Integer subContext) throws IOException, NamingException {
+            if (entry.type != NamingEntry.CONTEXT) {
+                return writeValue(record, entry);
+            }
+            if (subContext == null) {
+                return false;
+            }
+            record.writeByte(TAG_CONTEXT);
+            record.writeInt(subContext);
+            // Whether this is the name the subcontext is located at, rather than an alias
+            record.writeBoolean(((NamingContext) entry.value).location.isAt(context.location, entry.name));
+            return true;
+        }
+    }
+
+    /**
+     * Decodes the bindings of contexts from a mapped snapshot.
+     */
+    static final class Reader {
+
+        private final ByteBuffer buffer;
+        private final Path file;
+
+        /**
+         * Contexts created so far by their position, so that a context bound under several names
+         * is restored as one context.
+         */
+        private final Map<Integer, NamingContext> contexts = new HashMap<>();
+
+        private Reader(ByteBuffer buffer, Path file) {
+            this.buffer = buffer;
+            this.file = file;
+        }
+
+        /**
+         * Decodes the bindings of a context. Subcontexts are created with bindings which are only
+         * decoded when they are accessed, and serialized objects are only deserialized when they
+         * are looked up. A binding which cannot be decoded is logged and skipped.
+         *
+         * @param context  the context the bindings belong to
+         * @param offset   the position of the bindings
+         * @param bindings the bindings store to add the bindings to
+         * @throws StreamCorruptedException if the bindings are truncated or their records cannot be
+         *                                  told apart, in which case only the bindings before the
+         *                                  corruption are added
+         */
+        void readBindings(NamingContext context, int offset, ConcurrentMap<String, NamingEntry> bindings)
+                throws StreamCorruptedException {
+            ByteBuffer in = buffer.duplicate();
+            try {
+                in.position(offset);
+                int count = in.getInt();
+                for (int i = 0; i < count; i++) {
+                    String atom = readString(in);
+                    ByteBuffer record = readBytes(in);
+                    try {
+                        NamingEntry entry = readEntry(record, context, atom);
+                        boolean located = entry.type == NamingEntry.CONTEXT && record.get() != 0;
+                        bindings.put(atom, entry);
+                        if (located) {
+                            ((NamingContext) entry.value).location.attach(context.location, atom);
+                        }
+                    } catch (NamingException | IOException | BufferUnderflowException | IllegalArgumentException e) {
+                        logger.error("Binding " + atom + " of " + context.name + " could not be restored from "
+                                + file, e);
+                    }
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                StreamCorruptedException corrupted = new StreamCorruptedException(String.valueOf(offset));
+                corrupted.initCause(e);
+                throw corrupted;
+            }
+        }
+
+        /**
+         * Decodes the bindings of a subcontext when they are first accessed. If they are corrupt,
+         * the error is logged and the subcontext keeps the bindings decoded before the corruption.
+         *
+         * @param context  the subcontext the bindings belong to
+         * @param offset   the position of the bindings
+         * @param bindings the bindings store to add the bindings to
+         */
+        void readSubContextBindings(NamingContext context, int offset, ConcurrentMap<String, NamingEntry> bindings) {
+            try {
+                readBindings(context, offset, bindings);
+            } catch (StreamCorruptedException e) {
+                logger.error("Bindings of " + context.name + " could not be restored from " + file, e);
+            }
+        }
+
+        private NamingEntry readEntry(ByteBuffer in, NamingContext context, String atom)
+                throws NamingException, IOException {
+            byte tag = in.get();
+            if (tag == TAG_CONTEXT) {
+                return new NamingEntry(atom, subContext(context, in.getInt()), NamingEntry.CONTEXT);
+            }
+            Object value = readValue(in, tag);
+            if (value instanceof SerializedValue) {
+                return NamingEntry.create(atom, value, NamingEntry.SERIALIZED, false);
+            }
+            return context.newEntry(atom, value);
+        }
+
+        private synchronized NamingContext subContext(NamingContext parent, int offset)
+                throws IOException, NamingException {
+            if (offset < HEADER_LENGTH || offset >= buffer.limit() - TRAILER_LENGTH) {
+                throw new StreamCorruptedException(String.valueOf(offset));
+            }
+            NamingContext context = contexts.get(offset);
+            if (context == null) {
+                MappedBindings bindings = new MappedBindings(this, offset);
+                context = new NamingContext(parent.env, parent.name, bindings, parent.namespace);
+                bindings.setContext(context);
+                contexts.put(offset, context);
+            }
+            return context;
+        }
+    }
+
+    /**
+     * Writes the value of an entry which is not a context as a tag followed by a tag specific
+     * payload.
+     *
+     * @param out   the output
+     * @param entry the entry
+     * @return false if the value cannot be written, in which case the output is left incomplete
+     * @throws IOException     if the output fails
+     * @throws NamingException if the name of a link cannot be read
+     */
+    static boolean writeValue(DataOutputStream out, NamingEntry entry) throws IOException, NamingException {
+        if (!isPersistent(entry)) {
+            return false;
+        }
+        Object value = entry.value;
+        switch (entry.type) {
+            case NamingEntry.LINK_REF:
+                out.writeByte(TAG_LINK);
+                writeString(out, ((LinkRef) value).getLinkName());
+                return true;
+            case NamingEntry.REFERENCE:
+                return writeReference(out, (Reference) value);
+            case NamingEntry.SERIALIZED:
+                SerializedValue serialized = (SerializedValue) value;
+                out.writeByte(TAG_SERIALIZED);
+                writeString(out, serialized.getClassName());
+                ByteBuffer serializedBytes = serialized.bytes();
+                byte[] copy = new byte[serializedBytes.remaining()];
+                serializedBytes.get(copy);
+                writeBytes(out, copy);
+                return true;
+            case NamingEntry.CONTEXT:
+                return false;
+            default:
+                if (value == null) {
+                    out.writeByte(TAG_NULL);
+                } else if (value instanceof String) {
+                    out.writeByte(TAG_STRING);
+                    writeString(out, (String) value);
+                } else if (value instanceof Serializable) {
+                    byte[] bytes = serialize(value);
+                    if (bytes == null) {
+                        return false;
+                    }
+                    out.writeByte(TAG_SERIALIZED);
+                    writeString(out, value.getClass().getName());
+                    writeBytes(out, bytes);
+                } else {
+                    return false;
+                }
+                return true;
+        }
+    }
+
+    /**
+     * Tells whether an entry outlives the namespace. Bindings with a time to live and deferred values
+     * are only kept in memory, so a snapshot skips them and a journal records them as unbound.
+     *
+     * @param entry the entry
+     * @return true if the entry is written to snapshots and journals
+     */
+    static boolean isPersistent(NamingEntry entry) {
+        return !entry.expires && entry.type != NamingEntry.SUPPLIER;
+    }
+
+    /**
+     * Reads a value written by {@link #writeValue(DataOutputStream, NamingEntry)}.
+     *
+     * @param in  the input, positioned after the tag
+     * @param tag the tag
+     * @return the value, as a {@link SerializedValue} if it is a serialized object other than a
+     * reference
+     * @throws IOException     if the input is corrupt
+     * @throws NamingException if a serialized reference cannot be deserialized
+     */
+    static Object readValue(ByteBuffer in, byte tag) throws IOException, NamingException {
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString(in);
+            case TAG_LINK:
+                return new LinkRef(readString(in));
+            case TAG_REFERENCE:
+                return readReference(in);
+            case TAG_SERIALIZED:
+                String className = readString(in);
+                return new SerializedValue(className, readBytes(in));
+            case TAG_SERIALIZED_REFERENCE:
+                // References are restored right away so that lookups resolve them
+                className = readString(in);
+                return new SerializedValue(className, readBytes(in)).deserialize();
+            default:
+                throw new StreamCorruptedException(String.valueOf(tag));
+        }
+    }
+
+    private static boolean writeReference(DataOutputStream out, Reference reference) throws IOException {
+        if (reference.getClass() != Reference.class) {
+            // Subclasses are restored as they are deserialized
+            byte[] bytes = serialize(reference);
+            if (bytes == null) {
+                return false;
+            }
+            out.writeByte(TAG_SERIALIZED_REFERENCE);
+            writeString(out, reference.getClass().getName());
+            writeBytes(out, bytes);
+            return true;
+        }
+        out.writeByte(TAG_REFERENCE);
+        writeString(out, reference.getClassName());
+        writeString(out, reference.getFactoryClassName());
+        writeString(out, reference.getFactoryClassLocation());
+        out.writeInt(reference.size());
+        Enumeration<RefAddr> addresses = reference.getAll();
+        while (addresses.hasMoreElements()) {
+            RefAddr address = addresses.nextElement();
+            if (address instanceof StringRefAddr) {
+                out.writeByte(ADDRESS_STRING);
+                writeString(out, address.getType());
+                writeString(out, (String) address.getContent());
+            } else {
+                byte[] bytes = serialize(address);
+                if (bytes == null) {
+                    return false;
+                }
+                out.writeByte(ADDRESS_SERIALIZED);
+                writeBytes(out, bytes);
+            }
+        }
+        return true;
+    }
+
+    private static Reference readReference(ByteBuffer in) throws IOException {
+        Reference reference = new Reference(readString(in), readString(in), readString(in));
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            if (in.get() == ADDRESS_STRING) {
+                reference.add(new StringRefAddr(readString(in), readString(in)));
+            } else {
+                ByteBuffer bytes = readBytes(in);
+                byte[] copy = new byte[bytes.remaining()];
+                bytes.get(copy);
+                try (ObjectInputStream objectIn = new SerializedValue.ContextClassLoaderObjectInputStream(
+                        new ByteArrayInputStream(copy))) {
+                    Object address = objectIn.readObject();
+                    if (!(address instanceof RefAddr)) {
+                        throw new InvalidClassException(address == null ? null : address.getClass().getName());
+                    }
+                    reference.add((RefAddr) address);
+                } catch (ClassNotFoundException e) {
+                    throw new InvalidClassException(e.getMessage());
+                }
+            }
+        }
+        return reference;
+    }
+
+    /**
+     * @return the serialized object, or null if it cannot be serialized
+     */
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+            objectOut.writeObject(value);
+        } catch (NotSerializableException e) {
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a view of the bytes within the input
+     */
+    private static ByteBuffer readBytes(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        ByteBuffer bytes = in.slice();
+        bytes.limit(length);
+        in.position(in.position() + length);
+        return bytes;
+    }
+}
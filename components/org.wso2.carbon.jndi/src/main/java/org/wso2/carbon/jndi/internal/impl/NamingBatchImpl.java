@@ -0,0 +1,376 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.wso2.carbon.jndi.NamingBatch;
+import org.wso2.carbon.jndi.internal.util.NameCache;
+import org.wso2.carbon.jndi.internal.util.StringManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+
+import javax.naming.Name;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.NotContextException;
+import javax.naming.OperationNotSupportedException;
+
+import static org.wso2.carbon.jndi.internal.Constants.PACKAGE;
+
+/**
+ * The batch of binds, rebinds and unbinds of a {@link NamingContext}, which are applied
+ * together by {@link #commit()}.
+ * <p>
+ * Operations may name bindings in any subcontext of the namespace of the context. On commit they
+ * are validated in the order they were added, each seeing the effect of the previous ones, and
+ * either all of them are applied or none is. Lookups never observe a partially applied batch, and
+ * never wait for one: a lookup which overlaps the publication of a batch reads the bindings as
+ * they were before it, and is retried if the publication starts or ends while it walks.
+ * <p>
+ * That guarantee is limited to lookups. Enumerations, subtree walks and searches are weakly
+ * consistent and may see part of a batch which overlaps them, except that a single context backed
+ * by {@link SnapshotBindings} changes all at once.
+ * <p>
+ * State factories and Referenceables run on commit before the batch is validated. While a batch
+ * is validated and applied, other updates to the namespace wait. A batch is not
+ * thread safe and may be reused once it has been committed.
+ */
+public class NamingBatchImpl implements NamingBatch {
+
+    private static final int BIND = 0;
+    private static final int REBIND = 1;
+    private static final int UNBIND = 2;
+
+    private static final StringManager SM = StringManager.getManager(PACKAGE);
+
+    /**
+     * The context the names of the operations are relative to.
+     */
+    private final NamingContext context;
+
+    private final List<Operation> operations = new ArrayList<>();
+
+    NamingBatchImpl(NamingContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Adds a bind of a name which must not be bound when the batch is committed.
+     *
+     * @param name the name to bind; may not be empty
+     * @param obj  the object to bind; possibly null
+     * @return this batch
+     */
+    @Override
+    public NamingBatch bind(Name name, Object obj) {
+        operations.add(new Operation(BIND, (Name) name.clone(), obj));
+        return this;
+    }
+
+    /**
+     * Adds a bind of a name which must not be bound when the batch is committed.
+     *
+     * @param name the name to bind; may not be empty
+     * @param obj  the object to bind; possibly null
+     * @return this batch
+     * @throws NamingException if the name is not a valid composite name
+     */
+    @Override
+    public NamingBatch bind(String name, Object obj) throws NamingException {
+        operations.add(new Operation(BIND, NameCache.get(name), obj));
+        return this;
+    }
+
+    /**
+     * Adds a bind of a name, overwriting any existing binding.
+     *
+     * @param name the name to bind; may not be empty
+     * @param obj  the object to bind; possibly null
+     * @return this batch
+     */
+    @Override
+    public NamingBatch rebind(Name name, Object obj) {
+        operations.add(new Operation(REBIND, (Name) name.clone(), obj));
+        return this;
+    }
+
+    /**
+     * Adds a bind of a name, overwriting any existing binding.
+     *
+     * @param name the name to bind; may not be empty
+     * @param obj  the object to bind; possibly null
+     * @return this batch
+     * @throws NamingException if the name is not a valid composite name
+     */
+    @Override
+    public NamingBatch rebind(String name, Object obj) throws NamingException {
+        operations.add(new Operation(REBIND, NameCache.get(name), obj));
+        return this;
+    }
+
+    /**
+     * Adds an unbind of a name which must be bound when the batch is committed.
+     *
+     * @param name the name to unbind; may not be empty
+     * @return this batch
+     */
+    @Override
+    public NamingBatch unbind(Name name) {
+        operations.add(new Operation(UNBIND, (Name) name.clone(), null));
+        return this;
+    }
+
+    /**
+     * Adds an unbind of a name which must be bound when the batch is committed.
+     *
+     * @param name the name to unbind; may not be empty
+     * @return this batch
+     * @throws NamingException if the name is not a valid composite name
+     */
+    @Override
+    public NamingBatch unbind(String name) throws NamingException {
+        operations.add(new Operation(UNBIND, NameCache.get(name), null));
+        return this;
+    }
+
+    /**
+     * @return the number of operations in this batch
+     */
+    @Override
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * Validates the operations of this batch and applies all of them in a single publication. If
+     * any operation fails, nothing is applied. The batch is empty afterwards in both cases.
+     *
+     * @throws NameAlreadyBoundException      if a bind names a bound name
+     * @throws NameNotFoundException          if an unbind names an unbound name, or an
+     *                                        intermediate context does not exist
+     * @throws OperationNotSupportedException if a name leads out of the namespace of the context
+     * @throws NamingException                if a jndi exception is encountered
+     */
+    @Override
+    public void commit() throws NamingException {
+        Namespace namespace = context.namespace;
+        try {
+            // State factories and Referenceables run before other updates are locked out. Their
+            // names are relative to the context of the batch, which is their naming context.
+            for (Operation operation : operations) {
+                if (operation.type != UNBIND) {
+                    operation.state = context.stateToBind(operation.obj, operation.name, 0);
+                }
+            }
+        } catch (NamingException | RuntimeException e) {
+            operations.clear();
+            throw e;
+        }
+
+        Lock lock = namespace.batchLock();
+        lock.lock();
+        try {
+            // New entries by name for each bindings store, with null standing for an unbind
+            Map<ConcurrentMap<String, NamingEntry>, Map<String, NamingEntry>> changes = new IdentityHashMap<>();
+            // A context owning each changed bindings store
+            Map<ConcurrentMap<String, NamingEntry>, NamingContext> targets = new IdentityHashMap<>();
+            long timeToLive = context.timeToLive();
+            for (Operation operation : operations) {
+                prepare(operation, changes, targets, timeToLive);
+            }
+
+            // Only the stores change while the batch is being published, so that lookups which read
+            // the bindings as they were before the batch do so for as short a time as possible
+            Map<ConcurrentMap<String, NamingEntry>, Map<String, NamingEntry>> previous = previous(changes);
+            namespace.beginPublication(previous);
+            try {
+                for (Map.Entry<ConcurrentMap<String, NamingEntry>, Map<String, NamingEntry>> store :
+                        changes.entrySet()) {
+                    NamingContext target = targets.get(store.getKey());
+                    apply(store.getKey(), store.getValue());
+                    for (String atom : store.getValue().keySet()) {
+                        namespace.changed(target.location, atom);
+                    }
+                }
+            } finally {
+                namespace.endPublication();
+            }
+
+            Journal journal = namespace.journal();
+            if (journal != null) {
+                journal.beginBatch();
+            }
+            try {
+                for (Map.Entry<ConcurrentMap<String, NamingEntry>, Map<String, NamingEntry>> store :
+                        changes.entrySet()) {
+                    NamingContext target = targets.get(store.getKey());
+                    Map<String, NamingEntry> replaced = previous.get(store.getKey());
+                    for (Map.Entry<String, NamingEntry> change : store.getValue().entrySet()) {
+                        target.bindingPublished(change.getKey(), replaced.get(change.getKey()), change.getValue());
+                    }
+                }
+            } finally {
+                if (journal != null) {
+                    journal.endBatch();
+                }
+            }
+        } finally {
+            operations.clear();
+            lock.unlock();
+        }
+        namespace.sync();
+    }
+
+    /**
+     * Validates an operation against the bindings as changed by the previous operations and records
+     * its change.
+     */
+    private void prepare(Operation operation,
+                         Map<ConcurrentMap<String, NamingEntry>, Map<String, NamingEntry>> changes,
+                         Map<ConcurrentMap<String, NamingEntry>, NamingContext> targets, long timeToLive)
+            throws NamingException {
+        Name name = operation.name;
+        int position = NamingContext.firstComponent(name, 0);
+        if (position == name.size()) {
+            throw new NamingException(SM.getString("namingContext.invalidName"));
+        }
+
+        NamingContext target = context;
+        while (position < name.size() - 1) {
+            NamingEntry entry = current(changes, target, name.get(position));
+            if (entry == null) {
+                throw target.nameNotBound(name, position);
+            }
+            if (entry.type != NamingEntry.CONTEXT) {
+                throw new NotContextException(SM.getString("namingContext.contextExpected"));
+            }
+            if (!(entry.value instanceof NamingContext)
+                    || ((NamingContext) entry.value).namespace != context.namespace) {
+                throw new OperationNotSupportedException(
+                        SM.getString("namingBatch.outsideNamespace", name.getPrefix(position + 1)));
+            }
+            target = (NamingContext) entry.value;
+            position = NamingContext.firstComponent(name, position + 1);
+            if (position == name.size()) {
+                throw new NamingException(SM.getString("namingContext.invalidName"));
+            }
+        }
+
+        String atom = name.get(position);
+        NamingEntry current = current(changes, target, atom);
+        Map<String, NamingEntry> targetChanges = changes.computeIfAbsent(target.bindings, k -> new LinkedHashMap<>());
+        targets.putIfAbsent(target.bindings, target);
+        if (operation.type == UNBIND) {
+            if (current == null) {
+                throw target.nameNotBound(name, position);
+            }
+            targetChanges.put(atom, null);
+        } else {
+            if (operation.type == BIND && current != null) {
+                throw new NameAlreadyBoundException(SM.getString("namingContext.alreadyBound", atom));
+            }
+            targetChanges.put(atom, target.newEntry(atom, operation.state, timeToLive));
+        }
+    }
+
+    /**
+     * Returns the entry bound to a name in a context, as changed by the operations prepared so far.
+     */
+    private static NamingEntry current(Map<ConcurrentMap<String, NamingEntry>, Map<String, NamingEntry>> changes,
+                                       NamingContext context, String atom) {
+        Map<String, NamingEntry> contextChanges = changes.get(context.bindings);
+        if (contextChanges != null && contextChanges.containsKey(atom)) {
+            return contextChanges.get(atom);
+        }
+        NamingEntry entry = context.bindings.get(atom);
+        return entry != null && entry.isExpired() ? null : entry;
+    }
+
+    /**
+     * Returns the entries the changes replace, by name for each bindings store. Unbinds of names
+     * which the store does not hold, such as names both bound and unbound by the batch, are dropped
+     * from the changes.
+     */
+    private static Map<ConcurrentMap<String, NamingEntry>, Map<String, NamingEntry>> previous(
+            Map<ConcurrentMap<String, NamingEntry>, Map<String, NamingEntry>> changes) {
+        Map<ConcurrentMap<String, NamingEntry>, Map<String, NamingEntry>> previous = new IdentityHashMap<>();
+        for (Map.Entry<ConcurrentMap<String, NamingEntry>, Map<String, NamingEntry>> store : changes.entrySet()) {
+            ConcurrentMap<String, NamingEntry> bindings = store.getKey();
+            Map<String, NamingEntry> replaced = new HashMap<>();
+            Iterator<Map.Entry<String, NamingEntry>> iterator = store.getValue().entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, NamingEntry> change = iterator.next();
+                NamingEntry entry = bindings.get(change.getKey());
+                if (entry == null && change.getValue() == null) {
+                    iterator.remove();
+                } else {
+                    replaced.put(change.getKey(), entry);
+                }
+            }
+            previous.put(bindings, replaced);
+        }
+        return previous;
+    }
+
+    /**
+     * Applies the changes to a bindings store, with a single compare-and-set if it supports that.
+     */
+    private static void apply(ConcurrentMap<String, NamingEntry> bindings, Map<String, NamingEntry> changes) {
+        if (bindings instanceof SnapshotBindings) {
+            ((SnapshotBindings) bindings).update(changes);
+        } else {
+            for (Map.Entry<String, NamingEntry> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    bindings.remove(change.getKey());
+                } else {
+                    bindings.put(change.getKey(), change.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * A bind, rebind or unbind added to the batch.
+     */
+    private static final class Operation {
+
+        private final int type;
+        private final Name name;
+        private final Object obj;
+
+        /**
+         * The state to bind for the object, once commit has obtained it.
+         */
+        private Object state;
+
+        private Operation(int type, Name name, Object obj) {
+            this.type = type;
+            this.name = name;
+            this.obj = obj;
+        }
+    }
+}
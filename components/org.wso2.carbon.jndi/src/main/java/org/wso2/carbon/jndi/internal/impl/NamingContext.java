@@ -20,14 +20,33 @@ package org.wso2.carbon.jndi.internal.impl;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wso2.carbon.jndi.ExtendedContext;
+import org.wso2.carbon.jndi.NamingBatch;
 import org.wso2.carbon.jndi.internal.Constants;
+import org.wso2.carbon.jndi.internal.util.ImmutableCompositeName;
+import org.wso2.carbon.jndi.internal.util.LazyNameNotFoundException;
+import org.wso2.carbon.jndi.internal.util.NameAtoms;
+import org.wso2.carbon.jndi.internal.util.NameCache;
 import org.wso2.carbon.jndi.internal.util.NameParserImpl;
+import org.wso2.carbon.jndi.internal.util.SharedEnvironment;
 import org.wso2.carbon.jndi.internal.util.StringManager;
 
-import java.util.ArrayList;
-import java.util.Enumeration;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.naming.Binding;
 import javax.naming.CompositeName;
@@ -43,14 +62,17 @@ import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.NotContextException;
 import javax.naming.OperationNotSupportedException;
+import javax.naming.RefAddr;
 import javax.naming.Reference;
 import javax.naming.Referenceable;
+import javax.naming.event.EventContext;
+import javax.naming.event.NamingListener;
 import javax.naming.spi.NamingManager;
 
 /**
  * JNDI Context implementation.
  */
-public class NamingContext implements Context {
+public class NamingContext implements EventContext, ExtendedContext {
 
     private static final Logger logger = LoggerFactory.getLogger(NamingContext.class);
 
@@ -60,9 +82,68 @@ public class NamingContext implements Context {
     protected static final NameParser NAME_PARSER = new NameParserImpl();
 
     /**
-     * Environment.
+     * Entry type for the state of a Referenceable, whose reference is bound instead.
      */
-    protected final Hashtable<String, Object> env;
+    private static final int REFERENCEABLE = -1;
+
+    /**
+     * Entry type of each class of bound state, as matched by {@link #newEntry(String, Object)}.
+     */
+    private static final ClassValue<Integer> ENTRY_TYPES = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            if (Context.class.isAssignableFrom(type)) {
+                return NamingEntry.CONTEXT;
+            } else if (LinkRef.class.isAssignableFrom(type)) {
+                return NamingEntry.LINK_REF;
+            } else if (Reference.class.isAssignableFrom(type)) {
+                return NamingEntry.REFERENCE;
+            } else if (Referenceable.class.isAssignableFrom(type)) {
+                return REFERENCEABLE;
+            } else if (Supplier.class.isAssignableFrom(type)) {
+                return NamingEntry.SUPPLIER;
+            }
+            return NamingEntry.ENTRY;
+        }
+    };
+
+    /**
+     * Whether the provider resource file of the package of each context class names state
+     * factories. NamingManager consults that file, besides the environment, for the state
+     * factories of a context.
+     */
+    private static final ClassValue<Boolean> PROVIDER_STATE_FACTORIES = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            String className = type.getName();
+            String resource = className.substring(0, className.lastIndexOf('.') + 1).replace('.', '/')
+                    + PROVIDER_RESOURCE;
+            ClassLoader classLoader = type.getClassLoader();
+            if (classLoader == null) {
+                classLoader = ClassLoader.getSystemClassLoader();
+            }
+            try (InputStream in = classLoader.getResourceAsStream(resource)) {
+                if (in == null) {
+                    return false;
+                }
+                Properties properties = new Properties();
+                properties.load(in);
+                return properties.containsKey(Context.STATE_FACTORIES);
+            } catch (IOException e) {
+                // Let NamingManager look the state factories up on every bind
+                return true;
+            }
+        }
+    };
+
+    private static final String PROVIDER_RESOURCE = "jndiprovider.properties";
+
+    /**
+     * Environment. It is shared with the views and subcontexts of this
+     * context and is never modified: a context which changes its environment
+     * replaces it with a modified copy.
+     */
+    protected volatile SharedEnvironment env;
 
     /**
      * The string manager for this package.
@@ -70,15 +151,31 @@ public class NamingContext implements Context {
     protected static final StringManager SM = StringManager.getManager(Constants.PACKAGE);
 
     /**
-     * Bindings in this Context.
+     * Bindings in this Context. Lookups read this map without locking while binds, rebinds and unbinds
+     * update it atomically, so readers never observe a partially applied change.
      */
-    protected final HashMap<String, NamingEntry> bindings;
+    protected final ConcurrentMap<String, NamingEntry> bindings;
 
     /**
      * Name of the associated with JNDI Context.
      */
     protected final String name;
 
+    /**
+     * State shared with the subcontexts and views of this context.
+     */
+    protected final Namespace namespace;
+
+    /**
+     * Index of deep names looked up from this context, or null if the index is not enabled.
+     */
+    protected final PathIndex pathIndex;
+
+    /**
+     * Where this context is bound within its namespace, shared with the views of this context.
+     */
+    protected final ContextLocation location;
+
     /**
      * Builds a jndi context using the given environment.
      *
@@ -87,7 +184,7 @@ public class NamingContext implements Context {
      * @throws NamingException  If no context can be created for the given environment.
      */
     public NamingContext(Hashtable<String, Object> environment, String name) throws NamingException {
-        this(environment, name, new HashMap<>());
+        this(environment, name, newBindings(environment));
     }
 
     /**
@@ -100,19 +197,51 @@ public class NamingContext implements Context {
      */
     public NamingContext(Hashtable<String, Object> environment,
                          String name,
-                         HashMap<String, NamingEntry> bindings) throws NamingException {
+                         ConcurrentMap<String, NamingEntry> bindings) throws NamingException {
+        this(environment, name, bindings, new Namespace(isEnabled(environment, Constants.SEARCH_INDEX)));
+    }
+
+    /**
+     * Builds a jndi context which belongs to an existing namespace.
+     *
+     * @param environment       Environment properties for the Context.
+     * @param name              Name associated with the jndi context.
+     * @param bindings          Bindings in this Context.
+     * @param namespace         Namespace this Context belongs to.
+     * @throws NamingException  If no context can be created for the given environment.
+     */
+    protected NamingContext(Hashtable<String, Object> environment,
+                            String name,
+                            ConcurrentMap<String, NamingEntry> bindings,
+                            Namespace namespace) throws NamingException {
 
-        this.env = new Hashtable<>();
+        this.env = SharedEnvironment.of(environment);
         this.name = name;
-        // Populating the environment hashtable
-        if (environment != null) {
-            Enumeration<String> envEntries = environment.keys();
-            while (envEntries.hasMoreElements()) {
-                String entryName = envEntries.nextElement();
-                addToEnvironment(entryName, environment.get(entryName));
-            }
-        }
         this.bindings = bindings;
+        this.namespace = namespace;
+        this.pathIndex = isEnabled(env, Constants.PATH_INDEX) ? new PathIndex(namespace) : null;
+        this.location = new ContextLocation(namespace.claimRoot(), pathIndex);
+        SearchIndex searchIndex = namespace.searchIndex();
+        if (searchIndex != null && location.path() != null) {
+            searchIndex.addSubtree(this, "");
+        }
+    }
+
+    /**
+     * Builds a new instance of the given context, which shares its bindings and namespace but has
+     * its own environment. The environment is only copied once either context changes it.
+     *
+     * @param context           Context to create a new instance of.
+     * @throws NamingException  If no context can be created for the given environment.
+     */
+    private NamingContext(NamingContext context) throws NamingException {
+
+        this.env = context.env;
+        this.name = context.name;
+        this.bindings = context.bindings;
+        this.namespace = context.namespace;
+        this.pathIndex = context.pathIndex;
+        this.location = context.location;
     }
 
     /**
@@ -139,7 +268,7 @@ public class NamingContext implements Context {
      */
     @Override
     public Object lookup(String name) throws NamingException {
-        return lookup(new CompositeName(name), true);
+        return lookup(NameCache.get(name), true);
     }
 
 
@@ -157,7 +286,7 @@ public class NamingContext implements Context {
      */
     @Override
     public void bind(Name name, Object obj) throws NamingException {
-        bind(name, obj, false);
+        bind(name, 0, obj, false);
     }
 
 
@@ -173,7 +302,7 @@ public class NamingContext implements Context {
      */
     @Override
     public void bind(String name, Object obj) throws NamingException {
-        bind(new CompositeName(name), obj);
+        bind(NameCache.get(name), obj);
     }
 
 
@@ -194,7 +323,7 @@ public class NamingContext implements Context {
      */
     @Override
     public void rebind(Name name, Object obj) throws NamingException {
-        bind(name, obj, true);
+        bind(name, 0, obj, true);
     }
 
 
@@ -209,7 +338,73 @@ public class NamingContext implements Context {
      */
     @Override
     public void rebind(String name, Object obj) throws NamingException {
-        rebind(new CompositeName(name), obj);
+        rebind(NameCache.get(name), obj);
+    }
+
+
+    /**
+     * Binds a name to an object for a limited time. Once the time to live has run out, lookups
+     * no longer find the binding and it is removed, as if the name had been unbound. Contexts
+     * never expire, so a time to live given for a context is ignored.
+     *
+     * @param name       the name to bind; may not be empty
+     * @param obj        the object to bind; possibly null
+     * @param timeToLive how long the binding lasts
+     * @param unit       the unit of timeToLive
+     * @throws NameAlreadyBoundException if name is already bound
+     * @throws NamingException           if timeToLive is not positive, or a jndi exception is
+     *                                   encountered
+     */
+    @Override
+    public void bind(Name name, Object obj, long timeToLive, TimeUnit unit) throws NamingException {
+        bind(name, 0, obj, false, timeToLive(timeToLive, unit));
+    }
+
+
+    /**
+     * Binds a name to an object for a limited time.
+     *
+     * @param name       the name to bind; may not be empty
+     * @param obj        the object to bind; possibly null
+     * @param timeToLive how long the binding lasts
+     * @param unit       the unit of timeToLive
+     * @throws NameAlreadyBoundException if name is already bound
+     * @throws NamingException           if timeToLive is not positive, or a jndi exception is
+     *                                   encountered
+     */
+    @Override
+    public void bind(String name, Object obj, long timeToLive, TimeUnit unit) throws NamingException {
+        bind(NameCache.get(name), obj, timeToLive, unit);
+    }
+
+
+    /**
+     * Binds a name to an object for a limited time, overwriting any existing binding.
+     *
+     * @param name       the name to bind; may not be empty
+     * @param obj        the object to bind; possibly null
+     * @param timeToLive how long the binding lasts
+     * @param unit       the unit of timeToLive
+     * @throws NamingException if timeToLive is not positive, or a jndi exception is encountered
+     */
+    @Override
+    public void rebind(Name name, Object obj, long timeToLive, TimeUnit unit) throws NamingException {
+        bind(name, 0, obj, true, timeToLive(timeToLive, unit));
+    }
+
+
+    /**
+     * Binds a name to an object for a limited time, overwriting any existing binding.
+     *
+     * @param name       the name to bind; may not be empty
+     * @param obj        the object to bind; possibly null
+     * @param timeToLive how long the binding lasts
+     * @param unit       the unit of timeToLive
+     * @throws NamingException if timeToLive is not positive, or a jndi exception is encountered
+     */
+    @Override
+    public void rebind(String name, Object obj, long timeToLive, TimeUnit unit) throws NamingException {
+        rebind(NameCache.get(name), obj, timeToLive, unit);
     }
 
 
@@ -229,31 +424,7 @@ public class NamingContext implements Context {
      */
     @Override
     public void unbind(Name name) throws NamingException {
-
-        while ((!name.isEmpty()) && (name.get(0).length() == 0)) {
-            name = name.getSuffix(1);
-        }
-
-        if (name.isEmpty()) {
-            throw new NamingException(SM.getString("namingContext.invalidName"));
-        }
-
-        NamingEntry entry = bindings.get(name.get(0));
-
-        if (entry == null) {
-            throw new NameNotFoundException(SM.getString("namingContext.nameNotBound", name, name.get(0)));
-        }
-
-        if (name.size() > 1) {
-            if (entry.type == NamingEntry.CONTEXT) {
-                ((Context) entry.value).unbind(name.getSuffix(1));
-            } else {
-                throw new NamingException(SM.getString("namingContext.contextExpected"));
-            }
-        } else {
-            bindings.remove(name.get(0));
-        }
-
+        unbind(name, 0);
     }
 
 
@@ -267,7 +438,7 @@ public class NamingContext implements Context {
      */
     @Override
     public void unbind(String name) throws NamingException {
-        unbind(new CompositeName(name));
+        unbind(NameCache.get(name));
     }
 
 
@@ -276,6 +447,13 @@ public class NamingContext implements Context {
      * old name. Both names are relative to this context. Any attributes
      * associated with the old name become associated with the new name.
      * Intermediate contexts of the old name are not changed.
+     * <p>
+     * When both names are bound in contexts of this namespace, the binding
+     * itself is moved, as it is: references and links are not resolved, and
+     * a renamed subcontext keeps its whole subtree, which is moved in
+     * constant time. Concurrent lookups see either the old name bound or the
+     * new one, never both or neither. Otherwise the object looked up under
+     * the old name is bound under the new one.
      *
      * @param oldName the name of the existing binding; may not be empty
      * @param newName the name of the new binding; may not be empty
@@ -284,9 +462,193 @@ public class NamingContext implements Context {
      */
     @Override
     public void rename(Name oldName, Name newName) throws NamingException {
+        NamingContext source = bindingContext(oldName);
+        NamingContext target = bindingContext(newName);
+        if (source != null && target != null) {
+            source.move(oldName, target, newName);
+            return;
+        }
+
+        // One of the names is bound in another context implementation, which cannot take the entry
         Object value = lookup(oldName);
-        bind(newName, value);
-        unbind(oldName);
+        NamingEventDispatcher events = namespace.events();
+        if (events == null) {
+            bind(newName, value);
+            unbind(oldName);
+            return;
+        }
+        events.beginRename();
+        try {
+            bind(newName, value);
+            unbind(oldName);
+        } finally {
+            events.endRename();
+        }
+    }
+
+
+    /**
+     * Returns the context of this namespace which the last component of a name is bound in,
+     * walking the intermediate contexts as a bind does.
+     *
+     * @param name the name; may not be empty
+     * @return the context, or null if an intermediate context is not a context of this namespace
+     * @throws NamingException if an intermediate context is not bound or is not a context
+     */
+    private NamingContext bindingContext(Name name) throws NamingException {
+        NamingContext context = this;
+        int position = firstComponent(name, 0);
+        if (position == name.size()) {
+            throw new NamingException(SM.getString("namingContext.invalidName"));
+        }
+        while (position < name.size() - 1) {
+            NamingEntry entry = context.getEntry(name, position);
+            if (entry == null) {
+                throw context.nameNotBound(name, position);
+            }
+            if (entry.type != NamingEntry.CONTEXT) {
+                throw new NamingException(SM.getString("namingContext.contextExpected"));
+            }
+            if (!(entry.value instanceof NamingContext) || ((NamingContext) entry.value).namespace != namespace) {
+                return null;
+            }
+            context = (NamingContext) entry.value;
+            position = firstComponent(name, position + 1);
+            if (position == name.size()) {
+                throw new NamingException(SM.getString("namingContext.invalidName"));
+            }
+        }
+        return context;
+    }
+
+
+    /**
+     * Moves the entry bound to the last component of a name in this context to the last
+     * component of another name in a context of the same namespace, as a single publication.
+     *
+     * @param oldName the name of the existing binding, whose last component is bound here
+     * @param target  the context the last component of the new name is bound in
+     * @param newName the name of the new binding
+     * @throws NameAlreadyBoundException if newName is already bound
+     * @throws NamingException           if oldName is not bound or a context would be moved within
+     *                                   itself
+     */
+    private void move(Name oldName, NamingContext target, Name newName) throws NamingException {
+        String oldAtom = oldName.get(oldName.size() - 1);
+        String newAtom = newName.get(newName.size() - 1);
+        if (target.bindings instanceof AtomBindings) {
+            // Share one copy of the component between all the entries bound to it
+            newAtom = NameAtoms.intern(newAtom).component();
+        }
+        Lock lock = namespace.batchLock();
+        lock.lock();
+        try {
+            NamingEntry entry = bindings.get(oldAtom);
+            if (entry == null || entry.isExpired()) {
+                throw nameNotBound(oldName, oldName.size() - 1);
+            }
+            NamingEntry replaced = target.bindings.get(newAtom);
+            if (replaced != null && !replaced.isExpired()) {
+                throw new NameAlreadyBoundException(SM.getString("namingContext.alreadyBound", newAtom));
+            }
+            // The location of a subcontext moves with the binding it is located at
+            ContextLocation moving = null;
+            if (entry.type == NamingEntry.CONTEXT && entry.value instanceof NamingContext
+                    && ((NamingContext) entry.value).namespace == namespace
+                    && ((NamingContext) entry.value).location.isAt(location, oldAtom)) {
+                moving = ((NamingContext) entry.value).location;
+                if (moving.contains(target.location)) {
+                    throw new NamingException(SM.getString("namingContext.moveIntoSubtree", oldName, newName));
+                }
+            }
+            NamingEntry moved = entry.moveTo(newAtom, target);
+
+            // Lookups read the old name until both stores have changed
+            Map<ConcurrentMap<String, NamingEntry>, Map<String, NamingEntry>> previous = new IdentityHashMap<>();
+            previous.computeIfAbsent(bindings, k -> new HashMap<>()).put(oldAtom, entry);
+            previous.computeIfAbsent(target.bindings, k -> new HashMap<>()).put(newAtom, replaced);
+            namespace.beginPublication(previous);
+            try {
+                if (replaced != null) {
+                    target.bindings.replace(newAtom, replaced, moved);
+                } else {
+                    target.bindings.put(newAtom, moved);
+                }
+                bindings.remove(oldAtom, entry);
+                namespace.changed(location, oldAtom);
+                namespace.changed(target.location, newAtom);
+            } finally {
+                namespace.endPublication();
+            }
+
+            NamingEventDispatcher events = namespace.events();
+            if (events != null) {
+                events.beginRename();
+            }
+            try {
+                bindingMoved(oldAtom, entry, target, newAtom, replaced, moved, moving);
+            } finally {
+                if (events != null) {
+                    events.endRename();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        namespace.sync();
+    }
+
+
+    /**
+     * Updates the locations of the subcontexts, the search index, the
+     * journal and the expiry wheel, and queues the naming events, after an
+     * entry of this context has been moved to a context of the same
+     * namespace and the publication of the move has ended.
+     *
+     * @param oldAtom  the old name of the binding in this context
+     * @param entry    the entry which was bound to the old name
+     * @param target   the context the binding was moved to
+     * @param newAtom  the new name of the binding in the target
+     * @param replaced the expired entry which was bound to the new name, or null
+     * @param moved    the entry now bound to the new name
+     * @param moving   the location of the moved subcontext if the old name was its location,
+     *                 or null
+     */
+    private void bindingMoved(String oldAtom, NamingEntry entry, NamingContext target, String newAtom,
+                              NamingEntry replaced, NamingEntry moved, ContextLocation moving) {
+        // The subtree is removed from the index under the old name while the subcontext is still
+        // located there, and added under the new name once it has moved
+        SearchIndex searchIndex = namespace.searchIndex();
+        if (searchIndex != null) {
+            searchIndex.update(this, oldAtom, entry);
+        }
+        if (moving != null) {
+            moving.move(location, oldAtom, target.location, newAtom);
+        } else if (moved.type == NamingEntry.CONTEXT && moved.value instanceof NamingContext
+                && ((NamingContext) moved.value).namespace == namespace) {
+            ((NamingContext) moved.value).location.attach(target.location, newAtom);
+        }
+        if (searchIndex != null) {
+            searchIndex.update(target, newAtom, replaced);
+        }
+        Journal journal = namespace.journal();
+        if (journal != null) {
+            journal.recordRename(this, oldAtom, target, newAtom, moved);
+        }
+        NamingEventDispatcher events = namespace.events();
+        if (events != null) {
+            events.changed(target, newAtom, replaced, moved);
+            events.changed(this, oldAtom, entry, null);
+        }
+        if (entry.expires) {
+            ExpiryWheel.SHARED.cancel((NamingEntry.Expiring) entry);
+        }
+        if (replaced != null && replaced.expires) {
+            ExpiryWheel.SHARED.cancel((NamingEntry.Expiring) replaced);
+        }
+        if (moved.expires) {
+            ExpiryWheel.SHARED.schedule((NamingEntry.Expiring) moved);
+        }
     }
 
 
@@ -301,7 +663,204 @@ public class NamingContext implements Context {
      */
     @Override
     public void rename(String oldName, String newName) throws NamingException {
-        rename(new CompositeName(oldName), new CompositeName(newName));
+        rename(NameCache.get(oldName), NameCache.get(newName));
+    }
+
+
+    /**
+     * Enumerates the first page of the names bound in the named context,
+     * along with the class names of objects bound to them. The enumeration
+     * ends after pageSize bindings, and
+     * {@link NamingContextEnumeration#nextPage()} continues the same
+     * iteration where it ended. {@link #list(String)} is never paged.
+     *
+     * @param name     the name of the context to list
+     * @param pageSize the maximum number of bindings per page
+     * @return an enumeration of the first page
+     * @throws OperationNotSupportedException if the named context is not
+     *                                        a context of this namespace
+     * @throws NamingException                if a jndi exception is encountered
+     */
+    @Override
+    public NamingContextEnumeration listPage(String name, int pageSize) throws NamingException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException(SM.getString("namingContext.invalidPageSize", pageSize));
+        }
+        NamingEnumeration<NameClassPair> enumeration = list(NameCache.get(name), 0, pageSize);
+        if (!(enumeration instanceof NamingContextEnumeration)) {
+            enumeration.close();
+            throw new OperationNotSupportedException(SM.getString("namingContext.pagingNotSupported", name));
+        }
+        return (NamingContextEnumeration) enumeration;
+    }
+
+
+    /**
+     * Enumerates the first page of the names bound in the named context,
+     * along with the objects bound to them. The enumeration ends after
+     * pageSize bindings, and
+     * {@link NamingContextBindingsEnumeration#nextPage()} continues the same
+     * iteration where it ended. {@link #listBindings(String)} is never
+     * paged.
+     *
+     * @param name     the name of the context to list
+     * @param pageSize the maximum number of bindings per page
+     * @return an enumeration of the first page
+     * @throws OperationNotSupportedException if the named context is not
+     *                                        a context of this namespace
+     * @throws NamingException                if a jndi exception is encountered
+     */
+    @Override
+    public NamingContextBindingsEnumeration listBindingsPage(String name, int pageSize) throws NamingException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException(SM.getString("namingContext.invalidPageSize", pageSize));
+        }
+        NamingEnumeration<Binding> enumeration = listBindings(NameCache.get(name), 0, pageSize, bindingResolution());
+        if (!(enumeration instanceof NamingContextBindingsEnumeration)) {
+            enumeration.close();
+            throw new OperationNotSupportedException(SM.getString("namingContext.pagingNotSupported", name));
+        }
+        return (NamingContextBindingsEnumeration) enumeration;
+    }
+
+
+    /**
+     * Returns a new, empty batch of updates whose names are relative to
+     * this context. The updates of a batch are applied together, and
+     * lookups never observe some of them without the others.
+     *
+     * @return a new batch of updates
+     */
+    @Override
+    public NamingBatch batch() {
+        return new NamingBatchImpl(this);
+    }
+
+
+    /**
+     * Returns a spliterator over the bindings of this context and of its
+     * subcontexts, each paired with its full name relative to this context.
+     * {@link #subtree(int, String, boolean)} returns them as bindings.
+     *
+     * @param maxDepth the depth of the deepest bindings to return, 1 being
+     *                 the bindings of this context; Integer.MAX_VALUE for no limit
+     * @param prefix   only the binding with this full name and the bindings
+     *                 below it are returned, and subcontexts which cannot
+     *                 contain such bindings are not walked; may be empty
+     * @return a spliterator over the subtree of this context
+     * @see SubtreeSpliterator
+     */
+    Spliterator<Map.Entry<String, NamingEntry>> subtreeSpliterator(int maxDepth, String prefix) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException(SM.getString("namingContext.invalidDepth", maxDepth));
+        }
+        return new SubtreeSpliterator(this, maxDepth, prefix);
+    }
+
+
+    /**
+     * Returns a stream of the bindings of this context and of its
+     * subcontexts, each named by its full name relative to this context.
+     *
+     * @param maxDepth the depth of the deepest bindings to return, 1 being
+     *                 the bindings of this context; Integer.MAX_VALUE for no limit
+     * @param prefix   only the binding with this full name and the bindings
+     *                 below it are returned; may be empty
+     * @param parallel if true, separate subtrees are walked in parallel
+     * @return a stream over the subtree of this context
+     */
+    @Override
+    public Stream<Binding> subtree(int maxDepth, String prefix, boolean parallel) {
+        return StreamSupport.stream(subtreeSpliterator(maxDepth, prefix), parallel)
+                .map(entry -> binding(entry.getKey(), entry.getValue()));
+    }
+
+
+    /**
+     * Returns a binding of an entry of this context or of one of its
+     * subcontexts. Plain objects and contexts are returned as they are bound;
+     * references, links and deferred values are looked up by their full
+     * name when the object of the binding is first asked for.
+     *
+     * @param fullName the full name of the entry relative to this context
+     * @param entry    the entry
+     * @return the binding
+     */
+    Binding binding(String fullName, NamingEntry entry) {
+        if (entry.type == NamingEntry.ENTRY || entry.type == NamingEntry.CONTEXT) {
+            return new Binding(fullName, entry.value, true);
+        }
+        return new LazyBinding(fullName, () -> lookup(fullName));
+    }
+
+
+    /**
+     * Returns the bindings below this context whose full name relative to
+     * this context starts with the given prefix, in the order of their names.
+     *
+     * @param prefix the prefix of the full names; may be empty
+     * @return the matching bindings, named by their full names relative to
+     * this context; empty if this context is not bound in its namespace
+     * @throws OperationNotSupportedException if the search index is not enabled
+     * @see SearchIndex#prefix(String, String)
+     */
+    @Override
+    public Stream<Binding> searchPrefix(String prefix) throws NamingException {
+        SearchIndex searchIndex = searchIndex();
+        String base = location.path();
+        return base == null ? Stream.empty() : bindings(searchIndex.prefix(base, prefix));
+    }
+
+
+    /**
+     * Returns the bindings below this context whose full name relative to
+     * this context is within the given range, in the order of their names.
+     *
+     * @param from the lowest full name, inclusive
+     * @param to   the highest full name, exclusive
+     * @return the matching bindings, named by their full names relative to
+     * this context; empty if this context is not bound in its namespace
+     * @throws OperationNotSupportedException if the search index is not enabled
+     * @see SearchIndex#range(String, String, String)
+     */
+    @Override
+    public Stream<Binding> searchRange(String from, String to) throws NamingException {
+        SearchIndex searchIndex = searchIndex();
+        String base = location.path();
+        return base == null ? Stream.empty() : bindings(searchIndex.range(base, from, to));
+    }
+
+
+    /**
+     * Returns the bindings below this context whose full name relative to
+     * this context matches a glob pattern, in the order of their names.
+     *
+     * @param glob the pattern, in which '*' matches within a component, '**'
+     *             across components and '?' a single character
+     * @return the matching bindings, named by their full names relative to
+     * this context; empty if this context is not bound in its namespace
+     * @throws OperationNotSupportedException if the search index is not enabled
+     * @see SearchIndex#glob(String, String)
+     */
+    @Override
+    public Stream<Binding> searchGlob(String glob) throws NamingException {
+        SearchIndex searchIndex = searchIndex();
+        String base = location.path();
+        return base == null ? Stream.empty() : bindings(searchIndex.glob(base, glob));
+    }
+
+
+    private Stream<Binding> bindings(Stream<Map.Entry<String, NamingEntry>> entries) {
+        return entries.map(entry -> binding(entry.getKey(), entry.getValue()));
+    }
+
+
+    private SearchIndex searchIndex() throws OperationNotSupportedException {
+        SearchIndex searchIndex = namespace.searchIndex();
+        if (searchIndex == null) {
+            throw new OperationNotSupportedException(SM.getString("namingContext.searchIndexDisabled"));
+        }
+        return searchIndex;
     }
 
 
@@ -320,25 +879,7 @@ public class NamingContext implements Context {
      */
     @Override
     public NamingEnumeration<NameClassPair> list(Name name) throws NamingException {
-        // Removing empty parts
-        while ((!name.isEmpty()) && (name.get(0).length() == 0)) {
-            name = name.getSuffix(1);
-        }
-
-        if (name.isEmpty()) {
-            return new NamingContextEnumeration(new ArrayList<>(bindings.values()));
-        }
-
-        NamingEntry entry = bindings.get(name.get(0));
-
-        if (entry == null) {
-            throw new NameNotFoundException(SM.getString("namingContext.nameNotBound", name, name.get(0)));
-        }
-
-        if (entry.type != NamingEntry.CONTEXT) {
-            throw new NamingException(SM.getString("namingContext.contextExpected"));
-        }
-        return ((Context) entry.value).list(name.getSuffix(1));
+        return list(name, 0, 0);
     }
 
 
@@ -353,7 +894,7 @@ public class NamingContext implements Context {
      */
     @Override
     public NamingEnumeration<NameClassPair> list(String name) throws NamingException {
-        return list(new CompositeName(name));
+        return list(NameCache.get(name));
     }
 
 
@@ -372,26 +913,7 @@ public class NamingContext implements Context {
      */
     @Override
     public NamingEnumeration<Binding> listBindings(Name name) throws NamingException {
-
-        // Removing empty parts
-        while ((!name.isEmpty()) && (name.get(0).length() == 0)) {
-            name = name.getSuffix(1);
-        }
-
-        if (name.isEmpty()) {
-            return new NamingContextBindingsEnumeration(new ArrayList<>(bindings.values()), this);
-        }
-
-        NamingEntry entry = bindings.get(name.get(0));
-
-        if (entry == null) {
-            throw new NameNotFoundException(SM.getString("namingContext.nameNotBound", name, name.get(0)));
-        }
-
-        if (entry.type != NamingEntry.CONTEXT) {
-            throw new NamingException(SM.getString("namingContext.contextExpected"));
-        }
-        return ((Context) entry.value).listBindings(name.getSuffix(1));
+        return listBindings(name, 0, 0, bindingResolution());
     }
 
 
@@ -406,7 +928,7 @@ public class NamingContext implements Context {
      */
     @Override
     public NamingEnumeration<Binding> listBindings(String name) throws NamingException {
-        return listBindings(new CompositeName(name));
+        return listBindings(NameCache.get(name));
     }
 
 
@@ -437,37 +959,8 @@ public class NamingContext implements Context {
      */
     @Override
     public void destroySubcontext(Name name) throws NamingException {
-
-        while ((!name.isEmpty()) && (name.get(0).length() == 0)) {
-            name = name.getSuffix(1);
-        }
-
-        if (name.isEmpty()) {
-            throw new NamingException(SM.getString("namingContext.invalidName"));
-        }
-
-        NamingEntry entry = bindings.get(name.get(0));
-
-        if (entry == null) {
-            throw new NameNotFoundException(SM.getString("namingContext.nameNotBound", name, name.get(0)));
-        }
-
-        if (name.size() > 1) {
-            if (entry.type == NamingEntry.CONTEXT) {
-                ((Context) entry.value).destroySubcontext(name.getSuffix(1));
-            } else {
-                throw new NamingException(SM.getString("namingContext.contextExpected"));
-            }
-        } else {
-            if (entry.type == NamingEntry.CONTEXT) {
-                ((Context) entry.value).close();
-                bindings.remove(name.get(0));
-            } else {
-                throw new NotContextException(SM.getString("namingContext.contextExpected"));
-            }
-        }
-
-    }
+        destroySubcontext(name, 0);
+    }
 
 
     /**
@@ -482,7 +975,7 @@ public class NamingContext implements Context {
     @Override
     public void destroySubcontext(String name)
             throws NamingException {
-        destroySubcontext(new CompositeName(name));
+        destroySubcontext(NameCache.get(name));
     }
 
 
@@ -502,7 +995,7 @@ public class NamingContext implements Context {
      */
     @Override
     public Context createSubcontext(Name name) throws NamingException {
-        NamingContext newContext = new NamingContext(env, this.name);
+        NamingContext newContext = new NamingContext(env, this.name, newBindings(env), namespace);
         bind(name, newContext);
         return newContext;
     }
@@ -521,7 +1014,7 @@ public class NamingContext implements Context {
      */
     @Override
     public Context createSubcontext(String name) throws NamingException {
-        return createSubcontext(new CompositeName(name));
+        return createSubcontext(NameCache.get(name));
     }
 
 
@@ -552,7 +1045,7 @@ public class NamingContext implements Context {
      */
     @Override
     public Object lookupLink(String name) throws NamingException {
-        return lookup(new CompositeName(name), false);
+        return lookup(NameCache.get(name), false);
     }
 
 
@@ -572,26 +1065,7 @@ public class NamingContext implements Context {
      */
     @Override
     public NameParser getNameParser(Name name) throws NamingException {
-
-        while ((!name.isEmpty()) && (name.get(0).length() == 0)) {
-            name = name.getSuffix(1);
-        }
-
-        if (name.isEmpty()) {
-            return NAME_PARSER;
-        }
-
-        if (name.size() > 1) {
-            Object obj = bindings.get(name.get(0));
-            if (obj instanceof Context) {
-                return ((Context) obj).getNameParser(name.getSuffix(1));
-            } else {
-                throw new NotContextException(SM.getString("namingContext.contextExpected"));
-            }
-        }
-
-        return NAME_PARSER;
-
+        return getNameParser(name, 0);
     }
 
 
@@ -605,7 +1079,7 @@ public class NamingContext implements Context {
      */
     @Override
     public NameParser getNameParser(String name) throws NamingException {
-        return getNameParser(new CompositeName(name));
+        return getNameParser(NameCache.get(name));
     }
 
 
@@ -655,8 +1129,10 @@ public class NamingContext implements Context {
      * @throws NamingException if a jndi exception is encountered
      */
     @Override
-    public Object addToEnvironment(String propName, Object propVal) throws NamingException {
-        return env.put(propName, propVal);
+    public synchronized Object addToEnvironment(String propName, Object propVal) throws NamingException {
+        SharedEnvironment environment = env;
+        env = environment.with(propName, propVal);
+        return environment.get(propName);
     }
 
 
@@ -668,8 +1144,10 @@ public class NamingContext implements Context {
      * @throws NamingException if a jndi exception is encountered
      */
     @Override
-    public Object removeFromEnvironment(String propName) throws NamingException {
-        return env.remove(propName);
+    public synchronized Object removeFromEnvironment(String propName) throws NamingException {
+        SharedEnvironment environment = env;
+        env = environment.without(propName);
+        return environment.get(propName);
     }
 
 
@@ -679,13 +1157,14 @@ public class NamingContext implements Context {
      * The caller should not make any changes to the object returned: their
      * effect on the context is undefined. The environment of this context
      * may be changed using addToEnvironment() and removeFromEnvironment().
+     * The returned environment is shared and cannot be modified.
      *
      * @return the environment of this context; never null
      * @throws NamingException if a jndi exception is encountered
      */
     @Override
     public Hashtable<?, ?> getEnvironment() throws NamingException {
-        return (Hashtable<?, ?>) env.clone();
+        return env;
     }
 
 
@@ -696,12 +1175,17 @@ public class NamingContext implements Context {
      * This method is idempotent: invoking it on a context that has already
      * been closed has no effect. Invoking any other method on a closed
      * context is not allowed, and results in undefined behaviour.
+     * The naming listeners added through this context are removed.
      *
      * @throws NamingException if a jndi exception is encountered
      */
     @Override
-    public void close() throws NamingException {
-        env.clear();
+    public synchronized void close() throws NamingException {
+        env = SharedEnvironment.EMPTY;
+        NamingEventDispatcher events = namespace.events();
+        if (events != null) {
+            events.removeAll(this);
+        }
     }
 
 
@@ -728,6 +1212,80 @@ public class NamingContext implements Context {
     }
 
 
+    /**
+     * Adds a listener for the events of the named target. Events are
+     * delivered by a dispatcher thread of the namespace, after the changes
+     * have been made, and a burst of changes of the same name is coalesced
+     * into one event. The size of the queue of undelivered changes is set by
+     * the {@link Constants#EVENT_QUEUE_SIZE} environment property.
+     *
+     * @param target   the name of the target, which need not be bound
+     * @param scope    one of OBJECT_SCOPE, ONELEVEL_SCOPE and SUBTREE_SCOPE
+     * @param listener the listener
+     * @throws NamingException if this context is not located in its
+     *                         namespace or the scope is not valid
+     */
+    @Override
+    public void addNamingListener(Name target, int scope, NamingListener listener) throws NamingException {
+        if (scope != OBJECT_SCOPE && scope != ONELEVEL_SCOPE && scope != SUBTREE_SCOPE) {
+            throw new NamingException(SM.getString("namingContext.invalidScope", scope));
+        }
+        String base = location.path();
+        if (base == null) {
+            throw new NamingException(SM.getString("namingContext.detachedEventContext"));
+        }
+        String fullName = base;
+        for (int i = firstComponent(target, 0); i < target.size(); i++) {
+            if (!target.get(i).isEmpty()) {
+                fullName = ContextLocation.join(fullName, target.get(i));
+            }
+        }
+        namespace.events(eventQueueSize()).add(this, base, fullName, scope, listener);
+    }
+
+
+    /**
+     * Adds a listener for the events of the named target.
+     *
+     * @param target   the name of the target, which need not be bound
+     * @param scope    one of OBJECT_SCOPE, ONELEVEL_SCOPE and SUBTREE_SCOPE
+     * @param listener the listener
+     * @throws NamingException if this context is not located in its
+     *                         namespace or the scope is not valid
+     */
+    @Override
+    public void addNamingListener(String target, int scope, NamingListener listener) throws NamingException {
+        addNamingListener(NameCache.get(target), scope, listener);
+    }
+
+
+    /**
+     * Removes a listener from all the targets it was added for through
+     * this context.
+     *
+     * @param listener the listener
+     * @throws NamingException if a jndi exception is encountered
+     */
+    @Override
+    public void removeNamingListener(NamingListener listener) throws NamingException {
+        NamingEventDispatcher events = namespace.events();
+        if (events != null) {
+            events.remove(this, listener);
+        }
+    }
+
+
+    /**
+     * Targets need not be bound when a listener is added.
+     *
+     * @return false
+     */
+    @Override
+    public boolean targetMustExist() throws NamingException {
+        return false;
+    }
+
+
     /**
      * Retrieves the named object.
      *
@@ -739,53 +1297,341 @@ public class NamingContext implements Context {
     protected Object lookup(Name name, boolean resolveLinks) throws NamingException {
 
         // Removing empty parts
-        while ((!name.isEmpty()) && (name.get(0).length() == 0)) {
-            name = name.getSuffix(1);
-        }
+        int first = firstComponent(name, 0);
 
-        if (name.isEmpty()) {
+        if (first == name.size()) {
             // If name is empty, a newly allocated jndi context is returned
-            return new NamingContext(env, this.name, bindings);
+            return new NamingContext(this);
         }
 
-        NamingEntry entry = bindings.get(name.get(0));
+        // While a link is being resolved, the entries on the way to its target are recorded, so
+        // the path index, which skips them, is not used
+        LinkResolution resolution = LinkResolution.current();
+
+        retry:
+        while (true) {
+            // A lookup which overlaps the start or the end of the publication of a batch is
+            // retried, so that it never observes a partially applied batch. While a batch is being
+            // published, the lookup reads the bindings as they were before it, and neither uses nor
+            // feeds the path index, which may already reflect the batch.
+            Namespace.Publication stamp = namespace.readStamp();
+
+            String path = null;
+            long pathStamp = 0;
+            if (pathIndex != null && name.size() - first > 1 && !stamp.inProgress() && resolution == null) {
+                path = pathKey(name, first);
+                pathStamp = pathIndex.stamp(path);
+                PathIndex.Resolved resolved = pathIndex.get(path, pathStamp);
+                if (resolved != null && resolved.entry == null) {
+                    if (!namespace.validate(stamp)) {
+                        continue;
+                    }
+                    int position = first;
+                    for (int i = 0; i < resolved.missing; i++) {
+                        position = firstComponent(name, position + 1);
+                    }
+                    throw nameNotBound(name, position);
+                }
+                if (resolved != null && !resolved.entry.isExpired()) {
+                    if (!namespace.validate(stamp)) {
+                        continue;
+                    }
+                    return resolved.context.resolve(resolved.entry, name, resolveLinks);
+                }
+            }
+
+            // Walk through the subcontexts one name component at a time. Results are only indexed
+            // while the walk passes through contexts at their location, since changes are only
+            // tracked along locations.
+            NamingContext context = this;
+            int position = first;
+            int depth = 0;
+            boolean indexed = path != null;
+            while (true) {
+                NamingEntry entry = context.getEntry(name, position, stamp);
+
+                if (entry == null) {
+                    if (!namespace.validate(stamp)) {
+                        continue retry;
+                    }
+                    // A miss stays valid until the name, or a context it passes through, is bound
+                    if (indexed) {
+                        pathIndex.put(path, new PathIndex.Resolved(depth, pathStamp));
+                    }
+                    throw nameNotBound(name, position);
+                }
 
-        if (entry == null) {
-            throw new NameNotFoundException(SM.getString("namingContext.nameNotBound", name, name.get(0)));
+                if (resolution != null) {
+                    resolution.depend(context, entry);
+                }
+
+                if (position == name.size() - 1) {
+                    if (!namespace.validate(stamp)) {
+                        continue retry;
+                    }
+                    if (indexed) {
+                        pathIndex.put(path, new PathIndex.Resolved(context, entry, pathStamp));
+                    }
+                    return context.resolve(entry, name, resolveLinks);
+                }
+
+                // If the size of the name is greater that 1, then we go through a
+                // number of subcontexts.
+                if (entry.type != NamingEntry.CONTEXT) {
+                    if (!namespace.validate(stamp)) {
+                        continue retry;
+                    }
+                    throw new NamingException(SM.getString("namingContext.contextExpected"));
+                }
+                if (!(entry.value instanceof NamingContext)) {
+                    // Other context implementations resolve the rest of the name themselves
+                    Context subContext = (Context) entry.value;
+                    Name remainingName = name.getSuffix(position + 1);
+                    return resolveLinks ? subContext.lookup(remainingName) : subContext.lookupLink(remainingName);
+                }
+
+                NamingContext parent = context;
+                context = (NamingContext) entry.value;
+                if (context.namespace != namespace) {
+                    indexed = false;
+                } else if (indexed && !context.location.isAt(parent.location, entry.name)) {
+                    indexed = false;
+                }
+                position = firstComponent(name, position + 1);
+                depth++;
+                if (position == name.size()) {
+                    if (!namespace.validate(stamp)) {
+                        continue retry;
+                    }
+                    return new NamingContext(context);
+                }
+            }
         }
+    }
 
-        if (name.size() > 1) {
-            // If the size of the name is greater that 1, then we go through a
-            // number of subcontexts.
-            if (entry.type != NamingEntry.CONTEXT) {
-                throw new NamingException(SM.getString("namingContext.contextExpected"));
+
+    /**
+     * Creates the exception thrown when a component of a name is not bound. Its message is only
+     * formatted when it is read, and it does not record its stack trace if the
+     * {@link Constants#STACKLESS_NAME_NOT_FOUND} property of the environment is set. The remaining
+     * name is only copied for the message if the name can be modified by the caller.
+     *
+     * @param name     the name
+     * @param position the position of the component which is not bound
+     * @return the exception
+     */
+    protected NameNotFoundException nameNotBound(Name name, int position) {
+        Object remaining = name instanceof ImmutableCompositeName
+                ? (Supplier<Name>) () -> name.getSuffix(position) : name.getSuffix(position);
+        return LazyNameNotFoundException.create(isEnabled(env, Constants.STACKLESS_NAME_NOT_FOUND), SM,
+                "namingContext.nameNotBound", remaining, name.get(position));
+    }
+
+
+    /**
+     * Returns the object represented by an entry bound in this context, resolving links,
+     * references and deferred values.
+     *
+     * @param entry        the entry which was looked up
+     * @param name         the name used for the lookup, whose last component names the entry
+     * @param resolveLinks If true, the links will be resolved
+     * @return the object bound to name
+     * @throws NamingException if a jndi exception is encountered
+     */
+    private Object resolve(NamingEntry entry, Name name, boolean resolveLinks) throws NamingException {
+        if (entry.type == NamingEntry.LINK_REF) {
+            return resolveLinks ? resolveLink(entry) : entry.value;
+        }
+
+        LinkResolution resolution = LinkResolution.current();
+        if (resolution != null) {
+            resolution.target(this, entry, name);
+        }
+
+        if (entry.type == NamingEntry.REFERENCE) {
+            if (entry.cacheResolved) {
+                Object resolved = entry.getResolved();
+                if (resolved != null) {
+                    return resolved;
+                }
+                return entry.getResolved(() -> getObjectInstance(entry, name));
+            }
+            return getObjectInstance(entry, name);
+        } else if (entry.type == NamingEntry.SERIALIZED) {
+            Object resolved = entry.getResolved();
+            if (resolved != null) {
+                return resolved;
+            }
+            return entry.getResolved(((SerializedValue) entry.value)::deserialize);
+        } else if (entry.type == NamingEntry.SUPPLIER) {
+            Object resolved = entry.getResolved();
+            if (resolved != null) {
+                return resolved;
             }
-            return ((Context) entry.value).lookup(name.getSuffix(1));
+            return entry.getResolved(() -> supply(entry));
         } else {
-            if ((resolveLinks) && (entry.type == NamingEntry.LINK_REF)) {
-                String link = ((LinkRef) entry.value).getLinkName();
+            return entry.value;
+        }
+    }
+
+
+    /**
+     * Resolves an entry bound in this context to the object a lookup of its name returns.
+     *
+     * @param entry the entry
+     * @return the object bound to the entry
+     * @throws NamingException if a jndi exception is encountered
+     */
+    Object resolve(NamingEntry entry) throws NamingException {
+        return resolve(entry, new CompositeName().add(entry.name), true);
+    }
+
+
+    /**
+     * Resolves a link entry to the object bound to the final target of its chain of links. The
+     * target is cached in the entry and reused until an entry the chain went through is unbound or
+     * replaced.
+     *
+     * @param entry the link entry
+     * @return the object bound to the target of the link
+     * @throws NamingException if the link cannot be resolved or is part of a cycle of links
+     */
+    private Object resolveLink(NamingEntry entry) throws NamingException {
+        LinkResolution resolution = LinkResolution.current();
+
+        Object cached = entry.getResolved();
+        if (cached instanceof LinkResolution.Target) {
+            LinkResolution.Target target = (LinkResolution.Target) cached;
+            if (target.isValid() && !target.entry.isExpired()) {
+                if (resolution != null) {
+                    resolution.depend(target);
+                }
+                return target.context.resolve(target.entry, target.name, true);
+            }
+        }
+
+        boolean outermost = resolution == null;
+        if (outermost) {
+            resolution = LinkResolution.begin();
+        }
+        String link = ((LinkRef) entry.value).getLinkName();
+        try {
+            if (!resolution.enter(entry)) {
+                throw new NamingException(SM.getString("namingContext.linkCycle", link));
+            }
+            Object result;
+            try {
                 if (link.startsWith(".")) {
                     // Link relative to this context
-                    return lookup(link.substring(1));
+                    result = lookup(link.substring(1));
                 } else {
-                    return (new InitialContext(env)).lookup(link);
-                }
-            } else if (entry.type == NamingEntry.REFERENCE) {
-                try {
-                    return NamingManager.getObjectInstance
-                            (entry.value, name, this, env);
-                } catch (NamingException e) {
-                    throw e;
-                } catch (Exception e) {
-//                    log.warn(SM.getString
-//                             ("namingContext.failResolvingReference"), e);
-                    throw new NamingException(e.getMessage());
+                    result = (new InitialContext(env)).lookup(link);
                 }
-            } else {
-                return entry.value;
+            } finally {
+                resolution.exit(entry);
+            }
+            if (outermost) {
+                entry.setResolved(resolution.toTarget());
+            }
+            return result;
+        } finally {
+            if (outermost) {
+                resolution.end();
             }
         }
+    }
+
+
+    /**
+     * Creates the object referred to by a reference entry. The object factory is given a modifiable
+     * copy of the environment, as factories are free to change the environment they are given.
+     *
+     * @param entry the entry holding the reference
+     * @param name  the name the entry was looked up with, its last component naming the entry
+     * @return the object created from the reference
+     * @throws NamingException if the object could not be created
+     */
+    private Object getObjectInstance(NamingEntry entry, Name name) throws NamingException {
+        try {
+            return NamingManager.getObjectInstance
+                    (entry.value, relativeName(name, name.size() - 1), this, (Hashtable<?, ?>) env.clone());
+        } catch (NamingException e) {
+            throw e;
+        } catch (Exception e) {
+//            log.warn(SM.getString
+//                     ("namingContext.failResolvingReference"), e);
+            throw new NamingException(e.getMessage());
+        }
+    }
+
+
+    /**
+     * Gets the object a deferred value stands for from its supplier.
+     *
+     * @param entry the entry holding the supplier
+     * @return the object supplied
+     * @throws NamingException if the supplier fails
+     */
+    private static Object supply(NamingEntry entry) throws NamingException {
+        try {
+            return ((Supplier<?>) entry.value).get();
+        } catch (RuntimeException e) {
+            NamingException namingException =
+                    new NamingException(SM.getString("namingContext.failSupplyingValue", entry.name));
+            namingException.initCause(e);
+            throw namingException;
+        }
+    }
+
+
+    /**
+     * Tells whether the object created from a reference bound in this context should be created
+     * only once and cached in its binding. This is the case when the context environment enables
+     * {@link Constants#CACHE_REFERENCES} or the reference has a {@link Constants#CACHE_REFERENCE_ADDRESS}
+     * address with the content "true".
+     *
+     * @param reference the reference being bound
+     * @return true if the created object should be cached
+     */
+    protected boolean cacheResolved(Reference reference) {
+        if (isEnabled(env, Constants.CACHE_REFERENCES)) {
+            return true;
+        }
+        RefAddr address = reference.get(Constants.CACHE_REFERENCE_ADDRESS);
+        return address != null && Boolean.parseBoolean(String.valueOf(address.getContent()));
+    }
+
 
+    /**
+     * Returns the position of the first non empty component of a name at or after the given
+     * position, or the size of the name if there is none.
+     *
+     * @param name     the name
+     * @param position the position to start from
+     * @return the position of the first non empty component
+     */
+    protected static int firstComponent(Name name, int position) {
+        int size = name.size();
+        while ((position < size) && (name.get(position).length() == 0)) {
+            position++;
+        }
+        return position;
+    }
+
+
+    /**
+     * Builds the key used by the path index for a name, ignoring empty components.
+     *
+     * @param name     the name
+     * @param position the position of the first component to include
+     * @return the normalized form of the name
+     */
+    protected static String pathKey(Name name, int position) {
+        if (name instanceof ImmutableCompositeName && position == firstComponent(name, 0)) {
+            // Parsed names remember their normalized form
+            return ((ImmutableCompositeName) name).getNormalizedName();
+        }
+        return ImmutableCompositeName.normalize(name, position);
     }
 
 
@@ -794,67 +1640,710 @@ public class NamingContext implements Context {
      * context (that named by all but terminal atomic component of the name)
      * must already exist.
      *
-     * @param name   the name to bind; may not be empty
-     * @param obj    the object to bind; possibly null
-     * @param rebind if true, then perform a rebind (ie, overwrite)
+     * @param name     the name to bind; may not be empty
+     * @param position position of the first component of name which is relative to this context
+     * @param obj      the object to bind; possibly null
+     * @param rebind   if true, then perform a rebind (ie, overwrite)
      * @throws NameAlreadyBoundException                         if name is already bound
      * @throws javax.naming.directory.InvalidAttributesException if object
      *                                                           did not supply all mandatory attributes
      * @throws NamingException                                   if a jndi exception is encountered
      */
-    protected void bind(Name name, Object obj, boolean rebind) throws NamingException {
+    protected void bind(Name name, int position, Object obj, boolean rebind) throws NamingException {
+        bind(name, position, obj, rebind, timeToLive());
+    }
 
-        while ((!name.isEmpty()) && (name.get(0).length() == 0)) {
-            name = name.getSuffix(1);
-        }
 
-        if (name.isEmpty()) {
+    /**
+     * Binds a name to an object, with a time to live.
+     *
+     * @param name       the name to bind; may not be empty
+     * @param position   position of the first component of name which is relative to this context
+     * @param obj        the object to bind; possibly null
+     * @param rebind     if true, then perform a rebind (ie, overwrite)
+     * @param timeToLive the time to live of the binding in nanoseconds, or 0 if it never expires
+     * @throws NameAlreadyBoundException if name is already bound
+     * @throws NamingException           if a jndi exception is encountered
+     */
+    protected void bind(Name name, int position, Object obj, boolean rebind, long timeToLive)
+            throws NamingException {
+
+        position = firstComponent(name, position);
+
+        if (position == name.size()) {
             throw new NamingException(SM.getString("namingContext.invalidName"));
         }
 
-        NamingEntry entry = bindings.get(name.get(0));
+        NamingEntry entry = getEntry(name, position);
 
-        if (name.size() > 1) {
+        if (position < name.size() - 1) {
             if (entry == null) {
-                throw new NameNotFoundException(SM.getString("namingContext.nameNotBound", name, name.get(0)));
+                throw nameNotBound(name, position);
             }
             if (entry.type == NamingEntry.CONTEXT) {
-                if (rebind) {
-                    ((Context) entry.value).rebind(name.getSuffix(1), obj);
+                if (entry.value instanceof NamingContext) {
+                    ((NamingContext) entry.value).bind(name, position + 1, obj, rebind, timeToLive);
+                } else if (rebind) {
+                    ((Context) entry.value).rebind(name.getSuffix(position + 1), obj);
                 } else {
-                    ((Context) entry.value).bind(name.getSuffix(1), obj);
+                    ((Context) entry.value).bind(name.getSuffix(position + 1), obj);
                 }
             } else {
                 throw new NamingException(SM.getString("namingContext.contextExpected"));
             }
         } else {
+            String atom = name.get(position);
+            if (bindings instanceof AtomBindings) {
+                // Share one copy of the component between all the entries bound to it
+                atom = NameAtoms.intern(atom).component();
+            }
             if ((!rebind) && (entry != null)) {
-                throw new NameAlreadyBoundException(SM.getString("namingContext.alreadyBound", name.get(0)));
+                throw new NameAlreadyBoundException(SM.getString("namingContext.alreadyBound", atom));
             } else {
                 // Getting the type of the object and wrapping it within a new
                 // NamingEntry
-                Object toBind =
-                        NamingManager.getStateToBind(obj, name, this, env);
-                if (toBind instanceof Context) {
-                    entry = new NamingEntry(name.get(0), toBind,
-                            NamingEntry.CONTEXT);
-                } else if (toBind instanceof LinkRef) {
-                    entry = new NamingEntry(name.get(0), toBind,
-                            NamingEntry.LINK_REF);
-                } else if (toBind instanceof Reference) {
-                    entry = new NamingEntry(name.get(0), toBind,
-                            NamingEntry.REFERENCE);
-                } else if (toBind instanceof Referenceable) {
-                    toBind = ((Referenceable) toBind).getReference();
-                    entry = new NamingEntry(name.get(0), toBind,
-                            NamingEntry.REFERENCE);
+                Object toBind = getStateToBind(obj, name, position);
+                entry = newEntry(atom, toBind, timeToLive);
+                Lock lock = namespace.updateLock();
+                lock.lock();
+                try {
+                    NamingEntry previous = null;
+                    if (rebind) {
+                        previous = bindings.put(atom, entry);
+                    } else {
+                        previous = bindings.putIfAbsent(atom, entry);
+                        // Another thread may have bound the same name after the check above, and an
+                        // expired binding which has not been removed yet is replaced
+                        if (previous != null
+                                && (!previous.isExpired() || !bindings.replace(atom, previous, entry))) {
+                            throw new NameAlreadyBoundException(SM.getString("namingContext.alreadyBound", atom));
+                        }
+                    }
+                    bindingChanged(atom, previous, entry);
+                } finally {
+                    lock.unlock();
+                }
+                namespace.sync();
+            }
+        }
+    }
+
+
+    /**
+     * Returns the state to bind for an object, as {@link NamingManager#getStateToBind} does. When
+     * neither the environment nor the provider resource file of this context names any state
+     * factory, NamingManager would return the object itself, so it is not called at all.
+     *
+     * @param obj      the object to bind; possibly null
+     * @param name     the name to bind
+     * @param position position of the component of name which names the binding in this context
+     * @return the state to bind
+     * @throws NamingException if a state factory fails
+     */
+    protected Object getStateToBind(Object obj, Name name, int position) throws NamingException {
+        Hashtable<String, Object> environment = env;
+        if (environment.get(Context.STATE_FACTORIES) == null && !PROVIDER_STATE_FACTORIES.get(getClass())) {
+            return obj;
+        }
+        return NamingManager.getStateToBind(obj, relativeName(name, position), this,
+                (Hashtable<?, ?>) environment.clone());
+    }
+
+
+    /**
+     * Returns the state to bind for an object, as {@link #getStateToBind(Object, Name, int)} does,
+     * with the reference of a Referenceable in place of the Referenceable, so that
+     * {@link #newEntry(String, Object, long)} does not run any code of the object.
+     *
+     * @param obj      the object to bind; possibly null
+     * @param name     the name to bind
+     * @param position position of the first component of name which is relative to this context
+     * @return the state to bind
+     * @throws NamingException if a state factory fails or the reference of a Referenceable could
+     *                         not be obtained
+     */
+    Object stateToBind(Object obj, Name name, int position) throws NamingException {
+        Object toBind = getStateToBind(obj, name, position);
+        if (toBind != null && ENTRY_TYPES.get(toBind.getClass()) == REFERENCEABLE) {
+            return ((Referenceable) toBind).getReference();
+        }
+        return toBind;
+    }
+
+
+    /**
+     * Wraps the state of an object to bind in a new entry of the matching type.
+     *
+     * @param atom   the name of the binding in this context
+     * @param toBind the state to bind, as returned by {@link NamingManager#getStateToBind}
+     * @return the new entry
+     * @throws NamingException if the reference of a Referenceable could not be obtained
+     */
+    protected NamingEntry newEntry(String atom, Object toBind) throws NamingException {
+        return newEntry(atom, toBind, 0);
+    }
+
+
+    /**
+     * Wraps the state of an object to bind in a new entry of the matching type, which expires after
+     * the given time to live. A reference with a {@link Constants#TIME_TO_LIVE_ADDRESS} address
+     * expires after the time to live of the address instead, and a context never expires.
+     *
+     * @param atom       the name of the binding in this context
+     * @param toBind     the state to bind, as returned by {@link NamingManager#getStateToBind}
+     * @param timeToLive the time to live in nanoseconds, or 0 if the entry never expires
+     * @return the new entry
+     * @throws NamingException if the reference of a Referenceable could not be obtained, or the time
+     *                         to live of a reference is not valid
+     */
+    protected NamingEntry newEntry(String atom, Object toBind, long timeToLive) throws NamingException {
+        int type = toBind == null ? NamingEntry.ENTRY : ENTRY_TYPES.get(toBind.getClass());
+        switch (type) {
+            case NamingEntry.REFERENCE:
+                return NamingEntry.create(atom, toBind, NamingEntry.REFERENCE, cacheResolved((Reference) toBind),
+                        timeToLive((Reference) toBind, timeToLive), this);
+            case REFERENCEABLE:
+                Reference reference = ((Referenceable) toBind).getReference();
+                return NamingEntry.create(atom, reference, NamingEntry.REFERENCE, cacheResolved(reference),
+                        timeToLive(reference, timeToLive), this);
+            case NamingEntry.CONTEXT:
+                return NamingEntry.create(atom, toBind, type, false);
+            case NamingEntry.SUPPLIER:
+                // A supplier only stands for the object it supplies if the environment says so
+                return NamingEntry.create(atom, toBind,
+                        isEnabled(env, Constants.LAZY_SUPPLIERS) ? type : NamingEntry.ENTRY, false, timeToLive, this);
+            default:
+                return NamingEntry.create(atom, toBind, type, false, timeToLive, this);
+        }
+    }
+
+
+    /**
+     * Removes an entry from this context, unless it has been replaced or removed in the meantime.
+     *
+     * @param atom  the name of the binding in this context
+     * @param entry the entry to remove
+     * @return true if the entry was removed
+     */
+    private boolean removeEntry(String atom, NamingEntry entry) {
+        boolean removed;
+        Lock lock = namespace.updateLock();
+        lock.lock();
+        try {
+            removed = bindings.remove(atom, entry);
+            if (removed) {
+                bindingChanged(atom, entry, null);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (removed) {
+            namespace.sync();
+        }
+        return removed;
+    }
+
+
+    /**
+     * Removes an entry whose time to live has run out, unless it has been replaced or removed in
+     * the meantime. Called by the {@link ExpiryWheel}.
+     *
+     * @param entry the expired entry
+     */
+    void expire(NamingEntry entry) {
+        removeEntry(entry.name, entry);
+    }
+
+
+    /**
+     * Updates the path indexes, the locations of the subcontexts, the
+     * search index, the journal and the expiry wheel, and queues the naming
+     * event, after a binding of this context has been added, replaced or
+     * removed.
+     *
+     * @param atom     the name of the binding in this context
+     * @param previous the entry bound before the change, or null
+     * @param entry    the entry bound after the change, or null
+     */
+    void bindingChanged(String atom, NamingEntry previous, NamingEntry entry) {
+        namespace.changed(location, atom);
+        bindingPublished(atom, previous, entry);
+    }
+
+
+    /**
+     * Updates the locations of the subcontexts, the search index, the
+     * journal and the expiry wheel, and queues the naming event, after a
+     * binding of this context has been added, replaced or removed and the
+     * change has been recorded by {@link Namespace#changed(ContextLocation, String)}.
+     *
+     * @param atom     the name of the binding in this context
+     * @param previous the entry bound before the change, or null
+     * @param entry    the entry bound after the change, or null
+     */
+    void bindingPublished(String atom, NamingEntry previous, NamingEntry entry) {
+        // A new subcontext is located before it is indexed, and a replaced one is removed from
+        // the index before it loses its location
+        if (entry != null && entry.type == NamingEntry.CONTEXT && entry.value instanceof NamingContext
+                && ((NamingContext) entry.value).namespace == namespace) {
+            ((NamingContext) entry.value).location.attach(location, atom);
+        }
+        SearchIndex searchIndex = namespace.searchIndex();
+        if (searchIndex != null) {
+            searchIndex.update(this, atom, previous);
+        }
+        Journal journal = namespace.journal();
+        if (journal != null) {
+            journal.record(this, atom, entry);
+        }
+        NamingEventDispatcher events = namespace.events();
+        if (events != null) {
+            events.changed(this, atom, previous, entry);
+        }
+        if (previous != entry) {
+            if (previous != null && previous.expires) {
+                ExpiryWheel.SHARED.cancel((NamingEntry.Expiring) previous);
+            }
+            if (entry != null && entry.expires) {
+                ExpiryWheel.SHARED.schedule((NamingEntry.Expiring) entry);
+            }
+        }
+        if (previous != null && previous != entry && previous.type == NamingEntry.CONTEXT
+                && previous.value instanceof NamingContext) {
+            ((NamingContext) previous.value).location.detach(location, atom);
+        }
+    }
+
+
+    /**
+     * Unbinds the named object.
+     *
+     * @param name     the name to bind; may not be empty
+     * @param position position of the first component of name which is relative to this context
+     * @throws NameNotFoundException if an intermediate context does not
+     *                               exist
+     * @throws NamingException       if a jndi exception is encountered
+     */
+    protected void unbind(Name name, int position) throws NamingException {
+
+        position = firstComponent(name, position);
+
+        if (position == name.size()) {
+            throw new NamingException(SM.getString("namingContext.invalidName"));
+        }
+
+        NamingEntry entry = getEntry(name, position);
+
+        if (entry == null) {
+            throw nameNotBound(name, position);
+        }
+
+        if (position < name.size() - 1) {
+            if (entry.type == NamingEntry.CONTEXT) {
+                if (entry.value instanceof NamingContext) {
+                    ((NamingContext) entry.value).unbind(name, position + 1);
                 } else {
-                    entry = new NamingEntry(name.get(0), toBind,
-                            NamingEntry.ENTRY);
+                    ((Context) entry.value).unbind(name.getSuffix(position + 1));
                 }
-                bindings.put(name.get(0), entry);
+            } else {
+                throw new NamingException(SM.getString("namingContext.contextExpected"));
             }
+        } else {
+            removeEntry(name.get(position), entry);
         }
+
     }
-}
 
+
+    /**
+     * Enumerates the names bound in the named context, along with the class
+     * names of objects bound to them.
+     *
+     * @param name     the name of the context to list
+     * @param position position of the first component of name which is relative to this context
+     * @param pageSize maximum number of bindings per enumeration, or 0 for no limit
+     * @return an enumeration of the names and class names of the bindings in
+     * this context. Each element of the enumeration is of type NameClassPair.
+     * @throws NamingException if a jndi exception is encountered
+     */
+    protected NamingEnumeration<NameClassPair> list(Name name, int position, int pageSize)
+            throws NamingException {
+        // Removing empty parts
+        position = firstComponent(name, position);
+
+        if (position == name.size()) {
+            return new NamingContextEnumeration(entries(), pageSize);
+        }
+
+        NamingEntry entry = getEntry(name, position);
+
+        if (entry == null) {
+            throw nameNotBound(name, position);
+        }
+
+        if (entry.type != NamingEntry.CONTEXT) {
+            throw new NamingException(SM.getString("namingContext.contextExpected"));
+        }
+        if (entry.value instanceof NamingContext) {
+            return ((NamingContext) entry.value).list(name, position + 1, pageSize);
+        }
+        return ((Context) entry.value).list(name.getSuffix(position + 1));
+    }
+
+
+    /**
+     * Enumerates the names bound in the named context, along with the
+     * objects bound to them.
+     *
+     * @param name     the name of the context to list
+     * @param position position of the first component of name which is relative to this context
+     * @param pageSize   maximum number of bindings per enumeration, or 0 for no limit
+     * @param resolution how the enumeration resolves references and links
+     * @return an enumeration of the bindings in this context.
+     * Each element of the enumeration is of type Binding.
+     * @throws NamingException if a jndi exception is encountered
+     */
+    protected NamingEnumeration<Binding> listBindings(Name name, int position, int pageSize, int resolution)
+            throws NamingException {
+
+        // Removing empty parts
+        position = firstComponent(name, position);
+
+        if (position == name.size()) {
+            return new NamingContextBindingsEnumeration(entries(), this, pageSize, resolution);
+        }
+
+        NamingEntry entry = getEntry(name, position);
+
+        if (entry == null) {
+            throw nameNotBound(name, position);
+        }
+
+        if (entry.type != NamingEntry.CONTEXT) {
+            throw new NamingException(SM.getString("namingContext.contextExpected"));
+        }
+        if (entry.value instanceof NamingContext) {
+            return ((NamingContext) entry.value).listBindings(name, position + 1, pageSize, resolution);
+        }
+        return ((Context) entry.value).listBindings(name.getSuffix(position + 1));
+    }
+
+
+    /**
+     * Destroys the named context and removes it from the namespace.
+     *
+     * @param name     the name of the context to be destroyed; may not be empty
+     * @param position position of the first component of name which is relative to this context
+     * @throws NameNotFoundException if an intermediate context does not
+     *                               exist
+     * @throws NotContextException   if the name is bound but does not name
+     *                               a context, or does not name a context of the appropriate type
+     */
+    protected void destroySubcontext(Name name, int position) throws NamingException {
+
+        position = firstComponent(name, position);
+
+        if (position == name.size()) {
+            throw new NamingException(SM.getString("namingContext.invalidName"));
+        }
+
+        NamingEntry entry = getEntry(name, position);
+
+        if (entry == null) {
+            throw nameNotBound(name, position);
+        }
+
+        if (position < name.size() - 1) {
+            if (entry.type == NamingEntry.CONTEXT) {
+                if (entry.value instanceof NamingContext) {
+                    ((NamingContext) entry.value).destroySubcontext(name, position + 1);
+                } else {
+                    ((Context) entry.value).destroySubcontext(name.getSuffix(position + 1));
+                }
+            } else {
+                throw new NamingException(SM.getString("namingContext.contextExpected"));
+            }
+        } else {
+            if (entry.type == NamingEntry.CONTEXT) {
+                // Only the thread which actually removed the binding closes the context
+                if (removeEntry(name.get(position), entry)) {
+                    ((Context) entry.value).close();
+                }
+            } else {
+                throw new NotContextException(SM.getString("namingContext.contextExpected"));
+            }
+        }
+
+    }
+
+
+    /**
+     * Retrieves the parser associated with the named context.
+     *
+     * @param name     the name of the context from which to get the parser
+     * @param position position of the first component of name which is relative to this context
+     * @return a name parser that can parse compound names into their atomic
+     * components
+     * @throws NamingException if a jndi exception is encountered
+     */
+    protected NameParser getNameParser(Name name, int position) throws NamingException {
+
+        position = firstComponent(name, position);
+
+        if (position < name.size() - 1) {
+            NamingEntry entry = getEntry(name, position);
+            if (entry != null && entry.type == NamingEntry.CONTEXT) {
+                if (entry.value instanceof NamingContext) {
+                    return ((NamingContext) entry.value).getNameParser(name, position + 1);
+                }
+                return ((Context) entry.value).getNameParser(name.getSuffix(position + 1));
+            } else {
+                throw new NotContextException(SM.getString("namingContext.contextExpected"));
+            }
+        }
+
+        return NAME_PARSER;
+
+    }
+
+
+    /**
+     * Returns the part of a name which is relative to the context at the given position, without
+     * copying the name when it is relative to this context as a whole.
+     *
+     * @param name     the name
+     * @param position position of the first component of name which is relative to the context
+     * @return the components of name starting at position
+     */
+    protected static Name relativeName(Name name, int position) {
+        return position == 0 ? name : name.getSuffix(position);
+    }
+
+
+    /**
+     * Returns an iterator over the bindings of this context. The bindings are not copied: snapshot
+     * stores are iterated as they were when the iterator was created, other stores are iterated
+     * weakly consistently and may or may not reflect changes made during the iteration. Expired
+     * bindings are skipped, whether or not the expiry wheel has removed them yet. Unlike lookups,
+     * iteration does not read the bindings as they were before a {@link NamingBatchImpl} being
+     * published, so it may see part of the batch.
+     *
+     * @return an iterator over the bindings of this context
+     */
+    protected Iterator<NamingEntry> entries() {
+        return new LiveEntries(bindings.values().iterator());
+    }
+
+
+    /**
+     * Returns the maximum number of changes waiting to be delivered to the
+     * naming listeners of the namespace, as set by the
+     * {@link Constants#EVENT_QUEUE_SIZE} environment property.
+     *
+     * @return the maximum number of undelivered changes
+     * @throws NamingException if the property is not a positive number
+     */
+    protected int eventQueueSize() throws NamingException {
+        Object value = env.get(Constants.EVENT_QUEUE_SIZE);
+        if (value == null) {
+            return NamingEventDispatcher.DEFAULT_QUEUE_SIZE;
+        }
+        try {
+            int size = Integer.parseInt(value.toString().trim());
+            if (size > 0) {
+                return size;
+            }
+        } catch (NumberFormatException e) {
+            NamingException namingException =
+                    new NamingException(SM.getString("namingContext.invalidEventQueueSize", value));
+            namingException.initCause(e);
+            throw namingException;
+        }
+        throw new NamingException(SM.getString("namingContext.invalidEventQueueSize", value));
+    }
+
+
+    /**
+     * Returns the time to live of the bindings made through this context, as set by the
+     * {@link Constants#BINDING_TIME_TO_LIVE} environment property.
+     *
+     * @return the time to live in nanoseconds, or 0 if bindings never expire
+     * @throws NamingException if the property is not a positive number of milliseconds
+     */
+    protected long timeToLive() throws NamingException {
+        Object value = env.get(Constants.BINDING_TIME_TO_LIVE);
+        return value == null ? 0 : parseTimeToLive(value);
+    }
+
+
+    /**
+     * Returns the time to live of a reference, as set by its {@link Constants#TIME_TO_LIVE_ADDRESS}
+     * address.
+     *
+     * @param reference  the reference being bound
+     * @param timeToLive the time to live in nanoseconds to use if the reference does not set one
+     * @return the time to live in nanoseconds, or 0 if the reference never expires
+     * @throws NamingException if the address is not a positive number of milliseconds
+     */
+    protected long timeToLive(Reference reference, long timeToLive) throws NamingException {
+        RefAddr address = reference.get(Constants.TIME_TO_LIVE_ADDRESS);
+        return address == null ? timeToLive : parseTimeToLive(address.getContent());
+    }
+
+
+    private static long timeToLive(long timeToLive, TimeUnit unit) throws NamingException {
+        if (timeToLive <= 0) {
+            throw new NamingException(SM.getString("namingContext.invalidTimeToLive", timeToLive));
+        }
+        return unit.toNanos(timeToLive);
+    }
+
+
+    private static long parseTimeToLive(Object value) throws NamingException {
+        try {
+            return timeToLive(Long.parseLong(String.valueOf(value).trim()), TimeUnit.MILLISECONDS);
+        } catch (NumberFormatException e) {
+            NamingException namingException =
+                    new NamingException(SM.getString("namingContext.invalidTimeToLive", value));
+            namingException.initCause(e);
+            throw namingException;
+        }
+    }
+
+
+    /**
+     * Returns how enumerations of this context resolve references and links, as set by the
+     * {@link Constants#LIST_BINDINGS_RESOLUTION} environment property: "eager" (the default),
+     * "lazy" or "parallel".
+     *
+     * @return one of the resolution modes of {@link NamingContextBindingsEnumeration}
+     * @throws NamingException if the property has an unknown value
+     */
+    protected int bindingResolution() throws NamingException {
+        Object value = env.get(Constants.LIST_BINDINGS_RESOLUTION);
+        if (value == null || "eager".equalsIgnoreCase(value.toString().trim())) {
+            return NamingContextBindingsEnumeration.RESOLVE_EAGERLY;
+        } else if ("lazy".equalsIgnoreCase(value.toString().trim())) {
+            return NamingContextBindingsEnumeration.RESOLVE_LAZILY;
+        } else if ("parallel".equalsIgnoreCase(value.toString().trim())) {
+            return NamingContextBindingsEnumeration.RESOLVE_IN_PARALLEL;
+        }
+        throw new NamingException(SM.getString("namingContext.invalidBindingResolution", value));
+    }
+
+
+    /**
+     * Creates the bindings store requested by the given environment.
+     *
+     * @param environment Environment properties for the Context.
+     * @return a new, empty bindings store
+     */
+    static ConcurrentMap<String, NamingEntry> newBindings(Hashtable<String, Object> environment) {
+        if (isEnabled(environment, Constants.SNAPSHOT_BINDINGS)) {
+            return new SnapshotBindings();
+        }
+        if (isEnabled(environment, Constants.ATOM_BINDINGS)) {
+            return new AtomBindings();
+        }
+        return new CompactBindings();
+    }
+
+
+    /**
+     * Returns the binding of a component of a name in this context.
+     *
+     * @param name     the name
+     * @param position the position of the component
+     * @return the binding, or null if the component is not bound
+     */
+    private NamingEntry getEntry(Name name, int position) {
+        NamingEntry entry = bindings instanceof AtomBindings ? ((AtomBindings) bindings).get(name, position)
+                : bindings.get(name.get(position));
+        // An expired entry is unbound, whether or not the expiry wheel has removed it yet
+        return entry != null && entry.isExpired() ? null : entry;
+    }
+
+
+    /**
+     * @param entry an entry read from this context
+     * @return true if the entry is still bound in this context and has not expired
+     */
+    boolean isBound(NamingEntry entry) {
+        return bindings.get(entry.name) == entry && !entry.isExpired();
+    }
+
+
+    /**
+     * Returns the binding of a component of a name in this context, as it was before the batch
+     * being published when the stamp was taken, if any.
+     *
+     * @param name     the name
+     * @param position the position of the component
+     * @param stamp    the stamp the lookup is validated against
+     * @return the binding, or null if the component is not bound
+     */
+    private NamingEntry getEntry(Name name, int position, Namespace.Publication stamp) {
+        Map<String, NamingEntry> previous = stamp.previous(bindings);
+        if (previous != null) {
+            String atom = name.get(position);
+            if (previous.containsKey(atom)) {
+                NamingEntry entry = previous.get(atom);
+                return entry != null && entry.isExpired() ? null : entry;
+            }
+        }
+        return getEntry(name, position);
+    }
+
+
+    /**
+     * Checks whether a boolean environment property is set to true.
+     *
+     * @param environment  Environment properties, possibly null.
+     * @param propertyName name of the property.
+     * @return true if the property is set to {@code true} or {@code "true"}
+     */
+    protected static boolean isEnabled(Hashtable<?, ?> environment, String propertyName) {
+        return environment != null && Boolean.parseBoolean(String.valueOf(environment.get(propertyName)));
+    }
+
+
+    /**
+     * Iterator over the entries of a bindings store which have not expired.
+     */
+    private static final class LiveEntries implements Iterator<NamingEntry> {
+
+        private final Iterator<NamingEntry> entries;
+        private NamingEntry next;
+
+        LiveEntries(Iterator<NamingEntry> entries) {
+            this.entries = entries;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public NamingEntry next() {
+            NamingEntry current = next;
+            if (current == null) {
+                throw new NoSuchElementException();
+            }
+            advance();
+            return current;
+        }
+
+        private void advance() {
+            next = null;
+            while (entries.hasNext()) {
+                NamingEntry entry = entries.next();
+                if (!entry.isExpired()) {
+                    next = entry;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -18,40 +18,148 @@
 
 package org.wso2.carbon.jndi.internal.impl;
 
+import org.wso2.carbon.jndi.PagedNamingEnumeration;
+import org.wso2.carbon.jndi.internal.util.UncheckedNamingException;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.naming.Binding;
 import javax.naming.CompositeName;
 import javax.naming.Context;
-import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 
 /**
  * Naming enumeration implementation.
+ * <p>
+ * Entries are read from the iterator as the enumeration advances, so enumerating a context takes
+ * constant memory. With a page size, the enumeration ends after that many entries and
+ * {@link #nextPage()} continues where it stopped.
+ * <p>
+ * References, links and deferred values are resolved in one of three ways:
+ * <ul>
+ * <li>{@link #RESOLVE_EAGERLY}: one at a time by {@link #next()}.</li>
+ * <li>{@link #RESOLVE_LAZILY}: on the first call to {@link Binding#getObject()}.</li>
+ * <li>{@link #RESOLVE_IN_PARALLEL}: ahead of the enumeration, on a pool of
+ * {@link #RESOLVER_THREADS} threads shared by all enumerations.</li>
+ * </ul>
+ * In every mode the bindings are returned in iteration order, and in the eager and parallel modes
+ * {@link #next()} throws the exception which resolving its binding failed with. In the lazy mode
+ * {@link Binding#getObject()} throws an {@link UncheckedNamingException} wrapping it.
  **/
-public class NamingContextBindingsEnumeration implements NamingEnumeration<Binding> {
+public class NamingContextBindingsEnumeration implements PagedNamingEnumeration<Binding> {
+
+    public static final int RESOLVE_EAGERLY = 0;
+    public static final int RESOLVE_LAZILY = 1;
+    public static final int RESOLVE_IN_PARALLEL = 2;
+
+    /**
+     * Number of threads resolving bindings for parallel enumerations, which is also the number of
+     * bindings an enumeration resolves ahead.
+     */
+    public static final int RESOLVER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Resolutions which may wait for a resolver thread, beyond those being resolved.
+     */
+    private static final int RESOLVER_QUEUE_SIZE = RESOLVER_THREADS * 16;
 
     /**
-     * Maintain the current position of the enumeration.
+     * The resolver threads, created when first needed. Guarded by the class.
      */
-    private int currentIndex = 0;
+    private static ThreadPoolExecutor resolver;
 
     /**
-     * Maintain the enumeration as a list.
+     * Iterator over the entries being enumerated.
      */
-    private List<NamingEntry> namingEntries;
+    private final Iterator<NamingEntry> namingEntries;
     /**
      * The context for which this enumeration is being generated.
      */
     private final Context context;
+    /**
+     * Maximum number of entries enumerated by each page, or 0 for no limit.
+     */
+    private final int pageSize;
+    /**
+     * Number of entries left in this page, or -1 for no limit.
+     */
+    private int remaining;
+    /**
+     * How references and links are resolved.
+     */
+    private final int resolution;
+    /**
+     * Entries taken from the iterator whose resolution has been started, in iteration order.
+     */
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
 
     /**
      * @param entries set of bindings.
      * @param context Context on which bindings are enumerated.
      */
     public NamingContextBindingsEnumeration(List<NamingEntry> entries, Context context) {
+        this(entries.iterator(), context);
+    }
+
+    /**
+     * @param entries iterator over the bindings to enumerate.
+     * @param context Context on which bindings are enumerated.
+     */
+    public NamingContextBindingsEnumeration(Iterator<NamingEntry> entries, Context context) {
+        this(entries, context, 0);
+    }
+
+    /**
+     * @param entries  iterator over the bindings to enumerate.
+     * @param context  Context on which bindings are enumerated.
+     * @param pageSize maximum number of bindings to enumerate before the page ends, or 0 for no limit.
+     */
+    public NamingContextBindingsEnumeration(Iterator<NamingEntry> entries, Context context, int pageSize) {
+        this(entries, context, pageSize, RESOLVE_EAGERLY);
+    }
+
+    /**
+     * @param entries    iterator over the bindings to enumerate.
+     * @param context    Context on which bindings are enumerated.
+     * @param pageSize   maximum number of bindings to enumerate before the page ends, or 0 for no limit.
+     * @param resolution how references and links are resolved, one of {@link #RESOLVE_EAGERLY},
+     *                   {@link #RESOLVE_LAZILY} and {@link #RESOLVE_IN_PARALLEL}.
+     */
+    public NamingContextBindingsEnumeration(Iterator<NamingEntry> entries, Context context, int pageSize,
+                                            int resolution) {
         namingEntries = entries;
         this.context = context;
+        this.pageSize = pageSize;
+        this.resolution = resolution;
+        remaining = pageSize > 0 ? pageSize : -1;
+    }
+
+    /**
+     * @return true if bindings are left after the end of this page
+     */
+    @Override
+    public boolean hasNextPage() {
+        return namingEntries.hasNext();
+    }
+
+    /**
+     * Returns an enumeration over the next page of bindings, starting after the last binding
+     * returned by this enumeration.
+     *
+     * @return the enumeration of the next page
+     */
+    @Override
+    public NamingContextBindingsEnumeration nextPage() {
+        return new NamingContextBindingsEnumeration(namingEntries, context, pageSize, resolution);
     }
 
     @Override
@@ -66,11 +174,17 @@ public class NamingContextBindingsEnumeration implements NamingEnumeration<Bindi
 
     @Override
     public void close() throws NamingException {
+        for (Pending entry : pending) {
+            if (entry.value != null) {
+                entry.value.cancel(false);
+            }
+        }
+        pending.clear();
     }
 
     @Override
     public boolean hasMoreElements() {
-        return currentIndex < namingEntries.size();
+        return remaining != 0 && (!pending.isEmpty() || namingEntries.hasNext());
     }
 
     @Override
@@ -78,7 +192,7 @@ public class NamingContextBindingsEnumeration implements NamingEnumeration<Bindi
         try {
             return nextElementInternal();
         } catch (NamingException e) {
-            throw new RuntimeException(e.getMessage(), e);
+            throw new UncheckedNamingException(e);
         }
     }
 
@@ -89,26 +203,165 @@ public class NamingContextBindingsEnumeration implements NamingEnumeration<Bindi
      * @throws NamingException
      */
     private Binding nextElementInternal() throws NamingException {
-        NamingEntry entry = namingEntries.get(currentIndex++);
+        if (remaining == 0) {
+            throw new NoSuchElementException();
+        }
+        if (resolution == RESOLVE_IN_PARALLEL) {
+            resolveAhead();
+        }
+        Pending next = pending.poll();
+        NamingEntry entry = next != null ? next.entry : namingEntries.next();
+        if (remaining > 0) {
+            remaining--;
+        }
         Object value;
 
         // If the entry is a reference, resolve it
-        if (entry.type == NamingEntry.REFERENCE || entry.type == NamingEntry.LINK_REF) {
-
-            try {
-                value = context.lookup(new CompositeName(entry.name));
-            } catch (NamingException e) {
-                throw e;
-            } catch (Exception e) {
-                NamingException namingException = new NamingException(e.getMessage());
-                namingException.initCause(e);
-                throw namingException;
+        if (next != null && next.value != null) {
+            value = await(next.value);
+        } else if (isResolved(entry)) {
+            if (resolution == RESOLVE_LAZILY) {
+                return new LazyBinding(entry.name, () -> resolve(entry));
             }
+            value = resolve(entry);
         } else {
             value = entry.value;
         }
 
-        return new Binding(entry.name, value.getClass().getName(), value, true);
+        return new Binding(entry.name, value != null ? value.getClass().getName() : null, value, true);
     }
-}
 
+    /**
+     * Takes entries from the iterator, up to the number of resolver threads and without crossing
+     * the end of the page, and starts resolving them.
+     */
+    private void resolveAhead() {
+        int window = RESOLVER_THREADS;
+        if (remaining > 0) {
+            window = Math.min(window, remaining);
+        }
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        while (pending.size() < window && namingEntries.hasNext()) {
+            NamingEntry entry = namingEntries.next();
+            CompletableFuture<Object> value = null;
+            if (isResolved(entry)) {
+                value = CompletableFuture.supplyAsync(() -> {
+                    // Object factories are loaded through the context class loader of the caller
+                    Thread thread = Thread.currentThread();
+                    ClassLoader previous = thread.getContextClassLoader();
+                    thread.setContextClassLoader(loader);
+                    try {
+                        return resolve(entry);
+                    } catch (NamingException e) {
+                        throw new CompletionException(e);
+                    } finally {
+                        thread.setContextClassLoader(previous);
+                    }
+                }, resolver());
+            }
+            pending.add(new Pending(entry, value));
+        }
+    }
+
+    /**
+     * Returns the resolver threads. Their number is bounded, and so is the number of resolutions
+     * waiting for them: once that many are waiting, or after the resolver is shut down, the thread
+     * of the enumeration resolves the binding itself. Resolver threads which are idle for a while
+     * end, so no thread is left behind once enumerations stop.
+     *
+     * @return the executor of the resolver threads
+     */
+    private static synchronized Executor resolver() {
+        if (resolver == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(RESOLVER_THREADS, RESOLVER_THREADS,
+                    30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(RESOLVER_QUEUE_SIZE), task -> {
+                        Thread thread = new Thread(task, "carbon-jndi-resolver");
+                        thread.setDaemon(true);
+                        return thread;
+                    }, (task, pool) -> task.run());
+            executor.allowCoreThreadTimeOut(true);
+            resolver = executor;
+        }
+        return resolver;
+    }
+
+    /**
+     * Shuts the resolver threads down once they finish the resolutions they were given. Called when
+     * the bundle stops; a later parallel enumeration starts new threads.
+     */
+    public static synchronized void shutdownResolver() {
+        if (resolver != null) {
+            resolver.shutdown();
+            resolver = null;
+        }
+    }
+
+    /**
+     * Waits for the resolution of an entry started by {@link #resolveAhead()}.
+     *
+     * @param value the resolution
+     * @return the resolved object
+     * @throws NamingException if the resolution failed
+     */
+    private static Object await(CompletableFuture<Object> value) throws NamingException {
+        try {
+            return value.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof NamingException) {
+                throw (NamingException) cause;
+            }
+            NamingException namingException = new NamingException(cause.getMessage());
+            namingException.initCause(cause);
+            throw namingException;
+        }
+    }
+
+    /**
+     * @param entry an entry of the context
+     * @return true if the object of the binding has to be resolved from the entry
+     */
+    private static boolean isResolved(NamingEntry entry) {
+        return entry.type == NamingEntry.REFERENCE || entry.type == NamingEntry.LINK_REF
+                || entry.type == NamingEntry.SERIALIZED || entry.type == NamingEntry.SUPPLIER;
+    }
+
+    /**
+     * Resolves a reference or link entry of the context.
+     *
+     * @param entry the entry
+     * @return the resolved object
+     * @throws NamingException if the entry could not be resolved
+     */
+    private Object resolve(NamingEntry entry) throws NamingException {
+        try {
+            if (context instanceof NamingContext) {
+                return ((NamingContext) context).resolve(entry);
+            }
+            return context.lookup(new CompositeName().add(entry.name));
+        } catch (NamingException e) {
+            throw e;
+        } catch (Exception e) {
+            NamingException namingException = new NamingException(e.getMessage());
+            namingException.initCause(e);
+            throw namingException;
+        }
+    }
+
+    /**
+     * An entry taken from the iterator ahead of the enumeration.
+     */
+    private static final class Pending {
+
+        private final NamingEntry entry;
+        /**
+         * The resolution of the entry, or null if it does not need to be resolved.
+         */
+        private final CompletableFuture<Object> value;
+
+        private Pending(NamingEntry entry, CompletableFuture<Object> value) {
+            this.entry = entry;
+            this.value = value;
+        }
+    }
+}
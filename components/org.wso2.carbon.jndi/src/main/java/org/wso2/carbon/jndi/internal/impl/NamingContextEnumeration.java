@@ -18,29 +18,75 @@
 
 package org.wso2.carbon.jndi.internal.impl;
 
+import org.wso2.carbon.jndi.PagedNamingEnumeration;
+
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import javax.naming.NameClassPair;
-import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 
 /**
  * Naming enumeration implementation.
+ * <p>
+ * Entries are read from the iterator as the enumeration advances, so enumerating a context takes
+ * constant memory. With a page size, the enumeration ends after that many entries and
+ * {@link #nextPage()} continues where it stopped.
  */
-public class NamingContextEnumeration implements NamingEnumeration<NameClassPair> {
+public class NamingContextEnumeration implements PagedNamingEnumeration<NameClassPair> {
 
     /**
-     * Maintain the current position of the enumeration.
+     * Iterator over the entries being enumerated.
      */
-    private int currentIndex = 0;
-
+    private final Iterator<NamingEntry> namingEntries;
+    /**
+     * Maximum number of entries enumerated by each page, or 0 for no limit.
+     */
+    private final int pageSize;
     /**
-     * Maintain the enumeration as a list.
+     * Number of entries left in this page, or -1 for no limit.
      */
-    List<NamingEntry> namingEntries;
+    private int remaining;
 
     public NamingContextEnumeration(List<NamingEntry> entries) {
+        this(entries.iterator());
+    }
+
+    /**
+     * @param entries iterator over the bindings to enumerate.
+     */
+    public NamingContextEnumeration(Iterator<NamingEntry> entries) {
+        this(entries, 0);
+    }
+
+    /**
+     * @param entries  iterator over the bindings to enumerate.
+     * @param pageSize maximum number of bindings to enumerate before the page ends, or 0 for no limit.
+     */
+    public NamingContextEnumeration(Iterator<NamingEntry> entries, int pageSize) {
         namingEntries = entries;
+        this.pageSize = pageSize;
+        remaining = pageSize > 0 ? pageSize : -1;
+    }
+
+    /**
+     * @return true if bindings are left after the end of this page
+     */
+    @Override
+    public boolean hasNextPage() {
+        return namingEntries.hasNext();
+    }
+
+    /**
+     * Returns an enumeration over the next page of bindings, starting after the last binding
+     * returned by this enumeration.
+     *
+     * @return the enumeration of the next page
+     */
+    @Override
+    public NamingContextEnumeration nextPage() {
+        return new NamingContextEnumeration(namingEntries, pageSize);
     }
 
     /**
@@ -68,12 +114,21 @@ public class NamingContextEnumeration implements NamingEnumeration<NameClassPair
 
     @Override
     public boolean hasMoreElements() {
-        return currentIndex < namingEntries.size();
+        return remaining != 0 && namingEntries.hasNext();
     }
 
     @Override
     public NameClassPair nextElement() {
-        NamingEntry entry = namingEntries.get(currentIndex++);
+        if (remaining == 0) {
+            throw new NoSuchElementException();
+        }
+        NamingEntry entry = namingEntries.next();
+        if (remaining > 0) {
+            remaining--;
+        }
+        if (entry.type == NamingEntry.SERIALIZED) {
+            return new NameClassPair(entry.name, ((SerializedValue) entry.value).getClassName());
+        }
         return new NameClassPair(entry.name, entry.value.getClass().getName());
     }
 }
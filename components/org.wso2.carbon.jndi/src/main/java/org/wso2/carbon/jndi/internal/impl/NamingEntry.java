@@ -16,48 +16,249 @@
  */
 package org.wso2.carbon.jndi.internal.impl;
 
+import org.wso2.carbon.jndi.internal.util.LambdaExceptionUtils.SupplierWithExceptions;
+
+import javax.naming.NamingException;
 
 /**
  * Represents a binding in a NamingContext.
+ * <p>
+ * Entries of plain objects and contexts are never resolved and hold only their name, value, type
+ * and flags, so they fit in 24 bytes with compressed references. Links, references, serialized
+ * objects and deferred values are created with {@link #create(String, Object, int, boolean)} as entries which can also
+ * keep the object they resolve to, and bindings with a time to live with
+ * {@link #create(String, Object, int, boolean, long, NamingContext)} as entries which also carry their
+ * deadline and their place in the {@link ExpiryWheel}.
  */
 public class NamingEntry {
     public static final int ENTRY = 0;
     public static final int LINK_REF = 1;
     public static final int REFERENCE = 2;
+    /**
+     * An object restored from a {@link NamespaceSnapshot}, whose value is its
+     * {@link SerializedValue} until the first lookup deserializes it.
+     */
+    public static final int SERIALIZED = 3;
+    /**
+     * A deferred value, whose value is the {@link java.util.function.Supplier} of the object it
+     * stands for. The first lookup gets the object from the supplier and the entry keeps it.
+     */
+    public static final int SUPPLIER = 4;
     public static final int CONTEXT = 10;
 
     /**
      * The type instance variable is used to avoid using RTTI when doing
-     * lookups.
+     * lookups. The bound value of an entry never changes so that entries can
+     * be safely shared with concurrent readers of a context. Entries use identity equality, which
+     * lets conditional map updates tell a binding apart from a later rebind
+     * of the same name.
      */
-    public int type;
+    public final byte type;
     public final String name;
-    public Object value;
+    public final Object value;
+
+    /**
+     * Whether the object resolved from the value is kept by the entry and
+     * returned by every later lookup, instead of being resolved again.
+     */
+    public final boolean cacheResolved;
+
+    /**
+     * Whether the entry has a time to live, after which it is treated as unbound.
+     */
+    public final boolean expires;
 
     /**
      *
      * @param name name of the binding
      * @param value object to bind to the given name
-     * @param type type of the value
+     * @param type type of the value, {@link #ENTRY} or {@link #CONTEXT}
      */
     public NamingEntry(String name, Object value, int type) {
+        this(name, value, type, false);
+    }
+
+    /**
+     *
+     * @param name name of the binding
+     * @param value object to bind to the given name
+     * @param type type of the value
+     * @param cacheResolved whether the object resolved from the value should be cached
+     */
+    protected NamingEntry(String name, Object value, int type, boolean cacheResolved) {
+        this(name, value, type, cacheResolved, false);
+    }
+
+    private NamingEntry(String name, Object value, int type, boolean cacheResolved, boolean expires) {
         this.name = name;
         this.value = value;
-        this.type = type;
+        this.type = (byte) type;
+        this.cacheResolved = cacheResolved;
+        this.expires = expires;
     }
 
-    @Override
-    public boolean equals(Object obj) {
-        if (obj instanceof NamingEntry) {
-            return name.equals(((NamingEntry) obj).name);
-        } else {
-            return false;
+    /**
+     * Creates an entry of the given type, which can keep the object resolved from its value if the
+     * type is resolved on lookup.
+     *
+     * @param name name of the binding
+     * @param value object to bind to the given name
+     * @param type type of the value
+     * @param cacheResolved whether the object resolved from the value should be cached
+     * @return the new entry
+     */
+    public static NamingEntry create(String name, Object value, int type, boolean cacheResolved) {
+        if (type == ENTRY || type == CONTEXT) {
+            return new NamingEntry(name, value, type, cacheResolved);
         }
+        return new Resolvable(name, value, type, cacheResolved, false);
     }
 
+    /**
+     * Creates an entry of the given type which expires after a time to live, counted from now.
+     *
+     * @param name name of the binding
+     * @param value object to bind to the given name
+     * @param type type of the value
+     * @param cacheResolved whether the object resolved from the value should be cached
+     * @param timeToLive the time to live in nanoseconds, or 0 if the entry never expires
+     * @param context the context the entry is bound in, which removes it once it has expired
+     * @return the new entry
+     */
+    static NamingEntry create(String name, Object value, int type, boolean cacheResolved, long timeToLive,
+                              NamingContext context) {
+        if (timeToLive <= 0) {
+            return create(name, value, type, cacheResolved);
+        }
+        return new Expiring(name, value, type, cacheResolved, System.nanoTime() + timeToLive, context);
+    }
 
-    @Override
-    public int hashCode() {
-        return name.hashCode();
+    /**
+     * Creates the entry which binds the value of this entry under another name, possibly in
+     * another context, for a rename. The new entry has the same type and flags, keeps the
+     * resolved object if one is cached, and an entry with a time to live keeps its deadline.
+     *
+     * @param name the new name of the binding
+     * @param context the context the new entry is bound in
+     * @return the new entry
+     */
+    NamingEntry moveTo(String name, NamingContext context) {
+        NamingEntry moved = expires
+                ? new Expiring(name, value, type, cacheResolved, ((Expiring) this).deadline, context)
+                : create(name, value, type, cacheResolved);
+        moved.setResolved(getResolved());
+        return moved;
+    }
+
+    /**
+     * @return true if this entry has a time to live which has run out
+     */
+    public final boolean isExpired() {
+        return expires && ((Expiring) this).deadline - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Returns the object resolved from the value of this entry. The first
+     * caller runs the resolver while concurrent callers wait for its result,
+     * so the object is constructed only once. A resolver which fails or
+     * returns null leaves nothing cached and the next caller tries again.
+     * Entries of plain objects and contexts keep nothing and run the
+     * resolver every time.
+     *
+     * @param resolver resolves the value of this entry
+     * @return the resolved object
+     * @throws NamingException if the resolver fails
+     */
+    public Object getResolved(SupplierWithExceptions<Object, NamingException> resolver)
+            throws NamingException {
+        return resolver.get();
+    }
+
+    /**
+     * @return the resolved object if it has been cached, otherwise null
+     */
+    public Object getResolved() {
+        return null;
+    }
+
+    /**
+     * Replaces the cached resolved object. Meant for results which can
+     * become stale and are validated by the caller before they are used.
+     *
+     * @param resolved the resolved object, or null to clear it
+     */
+    void setResolved(Object resolved) {
+    }
+
+    /**
+     * Entry of a link, a reference, a serialized object or a deferred value.
+     */
+    private static class Resolvable extends NamingEntry {
+
+        /**
+         * The resolved object, once known, or for a link the target it was last
+         * resolved to. A rebind or unbind replaces or drops the whole entry, so
+         * the resolved object never outlives its binding.
+         */
+        private volatile Object resolved;
+
+        Resolvable(String name, Object value, int type, boolean cacheResolved, boolean expires) {
+            super(name, value, type, cacheResolved, expires);
+        }
+
+        @Override
+        public Object getResolved(SupplierWithExceptions<Object, NamingException> resolver)
+                throws NamingException {
+            Object result = resolved;
+            if (result == null) {
+                synchronized (this) {
+                    result = resolved;
+                    if (result == null) {
+                        result = resolver.get();
+                        resolved = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public Object getResolved() {
+            return resolved;
+        }
+
+        @Override
+        void setResolved(Object resolved) {
+            this.resolved = resolved;
+        }
+    }
+
+    /**
+     * Entry with a time to live. It is linked into the {@link ExpiryWheel} while it is bound and
+     * its deadline has not been reached.
+     */
+    static final class Expiring extends Resolvable {
+
+        /**
+         * The {@link System#nanoTime()} after which the entry is treated as unbound.
+         */
+        final long deadline;
+
+        /**
+         * The context the entry is bound in.
+         */
+        final NamingContext context;
+
+        // Links of the wheel, guarded by the wheel
+        long tick;
+        int slot = -1;
+        Expiring next;
+        Expiring prev;
+
+        Expiring(String name, Object value, int type, boolean cacheResolved, long deadline, NamingContext context) {
+            super(name, value, type, cacheResolved, true);
+            this.deadline = deadline;
+            this.context = context;
+        }
     }
 }
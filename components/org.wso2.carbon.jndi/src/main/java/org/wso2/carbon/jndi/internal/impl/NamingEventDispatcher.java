@@ -0,0 +1,403 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.jndi.internal.Constants;
+import org.wso2.carbon.jndi.internal.util.StringManager;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.naming.Binding;
+import javax.naming.LimitExceededException;
+import javax.naming.NamingException;
+import javax.naming.event.EventContext;
+import javax.naming.event.NamespaceChangeListener;
+import javax.naming.event.NamingEvent;
+import javax.naming.event.NamingExceptionEvent;
+import javax.naming.event.NamingListener;
+import javax.naming.event.ObjectChangeListener;
+
+/**
+ * Delivers the {@link NamingEvent}s of a {@link Namespace} to the listeners registered with its
+ * contexts.
+ * <p>
+ * Changes are queued by the thread which made them and delivered by a single dispatcher thread,
+ * which runs while listeners are registered, so a slow listener never delays an update. Until it
+ * is delivered, a change is coalesced with the later changes of the same name: a listener sees the
+ * binding before the first and after the last of them, and nothing if the name ended up unbound
+ * as it was. The queue is bounded. Changes which do not fit are dropped, and every listener is then
+ * sent a {@link NamingExceptionEvent} telling it that events were lost.
+ * <p>
+ * Listeners are registered by the full name of their target, so only changes to located contexts
+ * are reported, and links or federated contexts below the target are not followed.
+ */
+final class NamingEventDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(NamingEventDispatcher.class);
+
+    private static final StringManager SM = StringManager.getManager(Constants.PACKAGE);
+
+    /**
+     * Default maximum number of undelivered changes.
+     */
+    static final int DEFAULT_QUEUE_SIZE = 4096;
+
+    private final int queueSize;
+
+    private final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    /**
+     * Undelivered changes, in the order they were first made.
+     */
+    private ArrayDeque<Change> queue = new ArrayDeque<>();
+
+    /**
+     * The undelivered change of each name which later changes of the name are coalesced with.
+     */
+    private final Map<String, Change> latest = new HashMap<>();
+
+    /**
+     * Whether changes were dropped since the last delivery.
+     */
+    private boolean overflowed;
+
+    private Thread dispatcher;
+
+    /**
+     * The rename being made by the current thread, which collects its bind and unbind.
+     */
+    private final ThreadLocal<Change> renaming = new ThreadLocal<>();
+
+    /**
+     * @param queueSize the maximum number of undelivered changes
+     */
+    NamingEventDispatcher(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Registers a listener.
+     *
+     * @param source   the context the listener was added to
+     * @param base     the full name of the source
+     * @param target   the full name of the target
+     * @param scope    the scope of the target, one of the scopes of {@link EventContext}
+     * @param listener the listener
+     */
+    synchronized void add(EventContext source, String base, String target, int scope, NamingListener listener) {
+        registrations.add(new Registration(source, base, target, scope, listener));
+        if (dispatcher == null) {
+            dispatcher = new Thread(this::dispatch, "carbon-jndi-events");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+    }
+
+    /**
+     * Unregisters a listener from a context. The dispatcher thread stops once the last listener
+     * is removed.
+     *
+     * @param source   the context the listener was added to
+     * @param listener the listener
+     */
+    synchronized void remove(EventContext source, NamingListener listener) {
+        registrations.removeIf(registration -> registration.source == source && registration.listener == listener);
+        notifyAll();
+    }
+
+    /**
+     * Unregisters all the listeners added to a context, once the context is closed. The dispatcher
+     * thread stops once the last listener is removed.
+     *
+     * @param source the context the listeners were added to
+     */
+    synchronized void removeAll(EventContext source) {
+        registrations.removeIf(registration -> registration.source == source);
+        notifyAll();
+    }
+
+    /**
+     * Queues a change to a binding of a context, unless no listener is registered.
+     *
+     * @param context  the context whose binding changed
+     * @param atom     the name of the binding in the context
+     * @param previous the entry which was bound before the change, or null
+     * @param entry    the entry bound after the change, or null
+     */
+    void changed(NamingContext context, String atom, NamingEntry previous, NamingEntry entry) {
+        if (registrations.isEmpty()) {
+            return;
+        }
+        String parent = context.location.path();
+        if (parent == null) {
+            return;
+        }
+        Change rename = renaming.get();
+        if (rename != null) {
+            if (entry != null) {
+                rename.parent = parent;
+                rename.name = ContextLocation.join(parent, atom);
+                rename.entry = entry;
+            } else {
+                rename.oldParent = parent;
+                rename.oldName = ContextLocation.join(parent, atom);
+                rename.previous = previous;
+            }
+            return;
+        }
+        String name = ContextLocation.join(parent, atom);
+        synchronized (this) {
+            Change change = latest.get(name);
+            if (change != null) {
+                change.entry = entry;
+                return;
+            }
+            change = new Change();
+            change.parent = parent;
+            change.name = name;
+            change.previous = previous;
+            change.entry = entry;
+            change.oldParent = parent;
+            change.oldName = name;
+            if (offer(change)) {
+                latest.put(name, change);
+            }
+        }
+    }
+
+    /**
+     * Starts collecting the bind and the unbind made by the current thread into one rename.
+     */
+    void beginRename() {
+        renaming.set(new Change());
+    }
+
+    /**
+     * Queues the rename collected since {@link #beginRename()}.
+     */
+    void endRename() {
+        Change rename = renaming.get();
+        renaming.remove();
+        if (rename == null || (rename.name == null && rename.oldName == null)) {
+            return;
+        }
+        rename.renamed = rename.name != null && rename.oldName != null;
+        synchronized (this) {
+            // Later changes of either name must not be coalesced with changes made before the rename
+            if (rename.name != null) {
+                latest.remove(rename.name);
+            }
+            if (rename.oldName != null) {
+                latest.remove(rename.oldName);
+            }
+            offer(rename);
+        }
+    }
+
+    private boolean offer(Change change) {
+        if (queue.size() >= queueSize) {
+            overflowed = true;
+            return false;
+        }
+        queue.add(change);
+        if (queue.size() == 1) {
+            notifyAll();
+        }
+        return true;
+    }
+
+    private void dispatch() {
+        while (true) {
+            ArrayDeque<Change> changes;
+            boolean lost;
+            synchronized (this) {
+                while (queue.isEmpty() && !overflowed && !registrations.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dispatcher = null;
+                        return;
+                    }
+                }
+                if (registrations.isEmpty()) {
+                    queue.clear();
+                    latest.clear();
+                    overflowed = false;
+                    dispatcher = null;
+                    return;
+                }
+                changes = queue;
+                queue = new ArrayDeque<>();
+                latest.clear();
+                lost = overflowed;
+                overflowed = false;
+            }
+            for (Change change : changes) {
+                deliver(change);
+            }
+            if (lost) {
+                for (Registration registration : registrations) {
+                    LimitExceededException exception =
+                            new LimitExceededException(SM.getString("namingEvents.queueFull", queueSize));
+                    fire(registration, new NamingExceptionEvent(registration.source, exception));
+                }
+            }
+        }
+    }
+
+    private void deliver(Change change) {
+        int type;
+        if (change.renamed) {
+            type = NamingEvent.OBJECT_RENAMED;
+        } else if (change.previous == null && change.entry == null) {
+            return;
+        } else if (change.previous == null) {
+            type = NamingEvent.OBJECT_ADDED;
+        } else if (change.entry == null) {
+            type = NamingEvent.OBJECT_REMOVED;
+        } else if (change.previous == change.entry) {
+            return;
+        } else {
+            type = NamingEvent.OBJECT_CHANGED;
+        }
+        for (Registration registration : registrations) {
+            boolean matches = change.name != null && registration.matches(change.parent, change.name);
+            if (!matches && change.oldName != null && (change.renamed || change.name == null)) {
+                matches = registration.matches(change.oldParent, change.oldName);
+            }
+            if (!matches) {
+                continue;
+            }
+            boolean namespaceChange = type != NamingEvent.OBJECT_CHANGED;
+            if (namespaceChange ? !(registration.listener instanceof NamespaceChangeListener)
+                    : !(registration.listener instanceof ObjectChangeListener)) {
+                continue;
+            }
+            Binding newBinding = binding(registration, change.name, change.entry);
+            Binding oldBinding = binding(registration, change.oldName, change.previous);
+            fire(registration, new NamingEvent(registration.source, type, newBinding, oldBinding, null));
+        }
+    }
+
+    private static void fire(Registration registration, NamingEvent event) {
+        try {
+            event.dispatch(registration.listener);
+        } catch (RuntimeException e) {
+            logger.warn("Naming listener " + registration.listener + " failed", e);
+        }
+    }
+
+    private static void fire(Registration registration, NamingExceptionEvent event) {
+        try {
+            event.dispatch(registration.listener);
+        } catch (RuntimeException e) {
+            logger.warn("Naming listener " + registration.listener + " failed", e);
+        }
+    }
+
+    /**
+     * Returns the binding of an entry named relative to the source of a listener. Links and
+     * references are reported as they are bound, without being resolved.
+     */
+    private static Binding binding(Registration registration, String name, NamingEntry entry) {
+        if (entry == null || name == null) {
+            return null;
+        }
+        String relative;
+        if (registration.base.isEmpty()) {
+            relative = name;
+        } else if (name.startsWith(registration.base + "/")) {
+            relative = name.substring(registration.base.length() + 1);
+        } else {
+            return null;
+        }
+        Object value = entry.value;
+        String className;
+        if (entry.type == NamingEntry.SERIALIZED) {
+            SerializedValue serialized = (SerializedValue) entry.value;
+            className = serialized.getClassName();
+            try {
+                value = entry.getResolved(serialized::deserialize);
+            } catch (NamingException e) {
+                value = null;
+            }
+        } else {
+            className = value != null ? value.getClass().getName() : null;
+        }
+        return new Binding(relative, className, value, true);
+    }
+
+    /**
+     * A listener and the names it is interested in.
+     */
+    private static final class Registration {
+
+        final EventContext source;
+        final String base;
+        final String target;
+        final int scope;
+        final NamingListener listener;
+
+        Registration(EventContext source, String base, String target, int scope, NamingListener listener) {
+            this.source = source;
+            this.base = base;
+            this.target = target;
+            this.scope = scope;
+            this.listener = listener;
+        }
+
+        /**
+         * Tells whether a binding is within the scope of the target.
+         *
+         * @param parent the full name of the context of the binding
+         * @param name   the full name of the binding
+         */
+        boolean matches(String parent, String name) {
+            switch (scope) {
+                case EventContext.OBJECT_SCOPE:
+                    return name.equals(target);
+                case EventContext.ONELEVEL_SCOPE:
+                    return parent.equals(target);
+                default:
+                    return target.isEmpty() || name.equals(target)
+                            || (name.startsWith(target) && name.charAt(target.length()) == '/');
+            }
+        }
+    }
+
+    /**
+     * An undelivered change of a name, or a rename.
+     */
+    private static final class Change {
+
+        String parent;
+        String name;
+        NamingEntry entry;
+        String oldParent;
+        String oldName;
+        NamingEntry previous;
+        boolean renamed;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.wso2.carbon.jndi.internal.util.ImmutableCompositeName;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Flat index from normalized multi-component names to the entries they resolve to, relative to a
+ * single context. A deep lookup which hits the index costs one hash probe instead of one probe per
+ * name component.
+ * <p>
+ * Lookups which miss are indexed too, as the component found missing, so that probing for an
+ * optional name which is not bound costs one hash probe as well.
+ * <p>
+ * The index is filled by lookups which only pass through contexts at their {@link ContextLocation},
+ * so that every name it holds runs along the locations of the contexts it passes through. When a
+ * binding is added, replaced or removed, {@link #invalidate(ContextLocation, String)} walks up
+ * from the location of its context and, in the index of each context on the way, moves the counter
+ * of the stripe the name of the binding relative to that context hashes to.
+ * <p>
+ * The {@link #stamp(String) stamp} of a name is the sum of the counters of the stripes of its
+ * prefixes. A lookup reads the stamp before walking the contexts and stores it with its result,
+ * and a result is only returned while the stamp of its name has not moved. A change therefore
+ * only drops the names which pass through the binding, or share a stripe with one of them, and
+ * does so without scanning the index. Dropped names are removed when they are next looked up, or
+ * evicted.
+ */
+public class PathIndex {
+
+    /**
+     * Upper bound on the number of names remembered by one index.
+     */
+    private static final int MAX_ENTRIES = 4096;
+
+    /**
+     * Number of names evicted when the index is full.
+     */
+    private static final int EVICTION_SIZE = MAX_ENTRIES / 4;
+
+    /**
+     * Number of change counters of one index. Must be a power of two.
+     */
+    private static final int STRIPES = 64;
+
+    private final ConcurrentHashMap<String, Resolved> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLongArray stripes = new AtomicLongArray(STRIPES);
+
+    public PathIndex(Namespace namespace) {
+        namespace.pathIndexed();
+    }
+
+    /**
+     * Returns the sum of the change counters of the prefixes of a name. The stamp moves whenever
+     * a binding the name passes through is changed.
+     *
+     * @param path a normalized name relative to the context of this index
+     * @return the current stamp of the name
+     */
+    public long stamp(String path) {
+        // Hashes every prefix which ends before a separator, as String.hashCode would, without
+        // building the prefixes. An escaped separator adds a stripe which is not needed, which
+        // only drops names more often than needed.
+        long stamp = 0;
+        int hash = 0;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '/') {
+                stamp += stripes.get(stripe(hash));
+            }
+            hash = 31 * hash + c;
+        }
+        return stamp + stripes.get(stripe(hash));
+    }
+
+    public Resolved get(String path) {
+        return get(path, stamp(path));
+    }
+
+    /**
+     * Returns the result stored for a name, unless a binding it passes through has changed since.
+     *
+     * @param path  the normalized name to look up
+     * @param stamp the current {@link #stamp(String) stamp} of the name
+     * @return the result, or null if there is none
+     */
+    public Resolved get(String path, long stamp) {
+        Resolved resolved = entries.get(path);
+        if (resolved != null && resolved.stamp != stamp) {
+            entries.remove(path, resolved);
+            return null;
+        }
+        return resolved;
+    }
+
+    /**
+     * Stores the result of a lookup. The result is only returned while the stamp it carries, read
+     * before the lookup walked the contexts, is current, so a result which a change may have
+     * overtaken is never returned.
+     *
+     * @param path     the normalized name which was looked up
+     * @param resolved the result
+     */
+    public void put(String path, Resolved resolved) {
+        if (entries.size() >= MAX_ENTRIES) {
+            evict();
+        }
+        entries.put(path, resolved);
+    }
+
+    /**
+     * @return the number of names in this index
+     */
+    int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        Iterator<String> paths = entries.keySet().iterator();
+        for (int i = 0; i < EVICTION_SIZE && paths.hasNext(); i++) {
+            paths.next();
+            paths.remove();
+        }
+    }
+
+    /**
+     * Moves the stamps of the given name and of the names which pass through it.
+     *
+     * @param path a normalized name relative to the context of this index
+     */
+    private void changed(String path) {
+        stripes.incrementAndGet(stripe(path.hashCode()));
+    }
+
+    private static int stripe(int hash) {
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Drops the names which pass through a binding from the indexes of its context and of the
+     * contexts above it. Must be called after the change is visible in the bindings store.
+     *
+     * @param location the location of the context of the binding
+     * @param atom     the name of the binding
+     */
+    static void invalidate(ContextLocation location, String atom) {
+        StringBuilder path = ImmutableCompositeName.appendComponent(new StringBuilder(), atom);
+        while (location != null) {
+            PathIndex index = location.pathIndex();
+            if (index != null) {
+                index.changed(path.toString());
+            }
+            String parentAtom = location.atom();
+            location = location.parent();
+            if (parentAtom == null) {
+                break;
+            }
+            StringBuilder parentPath = ImmutableCompositeName.appendComponent(new StringBuilder(), parentAtom);
+            path = parentPath.append('/').append(path);
+        }
+    }
+
+    /**
+     * An entry together with the context it is bound in, or the component of a name which was
+     * found missing.
+     */
+    public static final class Resolved {
+
+        final NamingContext context;
+        final NamingEntry entry;
+
+        /**
+         * The stamp of the name read before the lookup walked the contexts.
+         */
+        final long stamp;
+
+        /**
+         * For a miss, the number of non empty components of the name before the missing one.
+         */
+        final int missing;
+
+        Resolved(NamingContext context, NamingEntry entry, long stamp) {
+            this.context = context;
+            this.entry = entry;
+            this.missing = -1;
+            this.stamp = stamp;
+        }
+
+        Resolved(int missing, long stamp) {
+            this.context = null;
+            this.entry = null;
+            this.missing = missing;
+            this.stamp = stamp;
+        }
+    }
+}
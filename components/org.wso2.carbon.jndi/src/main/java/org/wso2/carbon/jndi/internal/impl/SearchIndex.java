@@ -0,0 +1,274 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Ordered index of every binding of a {@link Namespace} by its full name relative to the root of
+ * the namespace, as returned by {@link ContextLocation#path(String)}.
+ * <p>
+ * The index is updated after every change to the bindings of a located context. Updates are
+ * serialized and always copy the binding currently in the bindings store, so the index converges
+ * to the store even when updates of the same name race. Queries read the index without locking and
+ * return lazy, weakly consistent streams, which skip expired bindings whether or not the expiry
+ * wheel has unbound them yet. A {@link NamingBatchImpl} reaches the index after it has been published to
+ * the bindings stores, one binding at a time, so queries may see part of it.
+ * <p>
+ * Subcontexts restored from a {@link NamespaceSnapshot} whose bindings have not been decoded yet are
+ * only recorded as pending. A query first indexes the pending subcontexts whose bindings it could
+ * match, so restoring a namespace does not decode the bindings of contexts no query reaches.
+ */
+public class SearchIndex {
+
+    private final ConcurrentSkipListMap<String, NamingEntry> entries = new ConcurrentSkipListMap<>();
+
+    /**
+     * Located subcontexts whose bindings have not been indexed yet, by their full names. Changed
+     * while holding the lock of the index.
+     */
+    private final ConcurrentSkipListMap<String, NamingContext> pending = new ConcurrentSkipListMap<>();
+
+    /**
+     * Records the current binding of a name of a context, after the bindings store has changed.
+     *
+     * @param context  the context whose binding changed
+     * @param atom     the name of the binding in the context
+     * @param previous the entry which was bound before the change, or null
+     */
+    synchronized void update(NamingContext context, String atom, NamingEntry previous) {
+        String fullName = context.location.path(atom);
+        if (fullName == null) {
+            return;
+        }
+        NamingEntry current = context.bindings.get(atom);
+        if (current == previous) {
+            return;
+        }
+        if (located(previous, context, atom)) {
+            removeSubtree(fullName);
+        }
+        if (current == null) {
+            entries.remove(fullName);
+        } else {
+            entries.put(fullName, current);
+            if (located(current, context, atom)) {
+                addSubtree((NamingContext) current.value, fullName);
+            }
+        }
+    }
+
+    /**
+     * Indexes all the bindings below a context. Subcontexts are only walked below the name they
+     * are located at. A context whose bindings have not been decoded from a snapshot yet is only
+     * recorded as pending, and walked once a query reaches it.
+     *
+     * @param context  the context
+     * @param fullName the full name of the context
+     */
+    synchronized void addSubtree(NamingContext context, String fullName) {
+        if (context.bindings instanceof MappedBindings && !((MappedBindings) context.bindings).isDecoded()) {
+            pending.put(fullName, context);
+        } else {
+            walk(context, fullName);
+        }
+    }
+
+    /**
+     * Indexes the bindings of a context, decoding them if needed, and the bindings below its
+     * located subcontexts.
+     */
+    private void walk(NamingContext context, String fullName) {
+        Iterator<NamingEntry> bindings = context.entries();
+        while (bindings.hasNext()) {
+            NamingEntry entry = bindings.next();
+            String name = ContextLocation.join(fullName, entry.name);
+            entries.put(name, entry);
+            if (located(entry, context, entry.name)) {
+                addSubtree((NamingContext) entry.value, name);
+            }
+        }
+    }
+
+    /**
+     * Returns the bindings below a context whose name relative to the context starts with the given
+     * prefix, in the order of their names.
+     *
+     * @param base   the full name of the context, empty for the root of the namespace
+     * @param prefix the prefix of names relative to the context
+     * @return the matching bindings, named relative to the context
+     */
+    public Stream<Map.Entry<String, NamingEntry>> prefix(String base, String prefix) {
+        String absolutePrefix = absolute(base, prefix);
+        expand(absolutePrefix);
+        return relative(base, prefixMap(entries, absolutePrefix));
+    }
+
+    /**
+     * Returns the bindings below a context whose name relative to the context is within the given
+     * range, in the order of their names.
+     *
+     * @param base the full name of the context, empty for the root of the namespace
+     * @param from the lowest name relative to the context, inclusive
+     * @param to   the highest name relative to the context, exclusive
+     * @return the matching bindings, named relative to the context
+     */
+    public Stream<Map.Entry<String, NamingEntry>> range(String base, String from, String to) {
+        String absoluteFrom = absolute(base, from);
+        String absoluteTo = absolute(base, to);
+        if (absoluteFrom.compareTo(absoluteTo) >= 0) {
+            return Stream.empty();
+        }
+        int common = 0;
+        while (common < absoluteFrom.length() && common < absoluteTo.length()
+                && absoluteFrom.charAt(common) == absoluteTo.charAt(common)) {
+            common++;
+        }
+        expand(absoluteFrom.substring(0, common));
+        return relative(base, entries.subMap(absoluteFrom, true, absoluteTo, false));
+    }
+
+    /**
+     * Returns the bindings below a context whose name relative to the context matches a glob
+     * pattern, in the order of their names. In the pattern, '*' matches any characters except '/',
+     * '**' matches any characters and '?' matches one character except '/'. Only the names which
+     * start with the part of the pattern before the first wildcard are examined.
+     *
+     * @param base the full name of the context, empty for the root of the namespace
+     * @param glob the pattern of names relative to the context
+     * @return the matching bindings, named relative to the context
+     */
+    public Stream<Map.Entry<String, NamingEntry>> glob(String base, String glob) {
+        StringBuilder regex = new StringBuilder();
+        int literal = glob.length();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                literal = Math.min(literal, i);
+                if (c == '?') {
+                    regex.append("[^/]");
+                } else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i++;
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        Pattern pattern = Pattern.compile(regex.toString());
+        return prefix(base, glob.substring(0, literal))
+                .filter(entry -> pattern.matcher(entry.getKey()).matches());
+    }
+
+    /**
+     * @return the number of indexed bindings
+     */
+    public int size() {
+        expand("");
+        return entries.size();
+    }
+
+    /**
+     * Indexes the pending subcontexts which may hold bindings whose full names start with the
+     * given prefix, decoding their bindings, until none is left.
+     *
+     * @param prefix the prefix of full names
+     */
+    private void expand(String prefix) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            Map.Entry<String, NamingContext> next;
+            while ((next = overlapping(prefix)) != null) {
+                pending.remove(next.getKey());
+                walk(next.getValue(), next.getKey());
+            }
+        }
+    }
+
+    /**
+     * Returns a pending subcontext whose bindings may have full names starting with a prefix:
+     * one whose full name starts with the prefix, or one of the contexts the prefix lies in.
+     */
+    private Map.Entry<String, NamingContext> overlapping(String prefix) {
+        Map.Entry<String, NamingContext> below = prefixMap(pending, prefix).firstEntry();
+        if (below != null) {
+            return below;
+        }
+        for (int i = prefix.indexOf('/'); i >= 0; i = prefix.indexOf('/', i + 1)) {
+            String ancestor = prefix.substring(0, i);
+            NamingContext context = pending.get(ancestor);
+            if (context != null) {
+                return new AbstractMap.SimpleImmutableEntry<>(ancestor, context);
+            }
+        }
+        return null;
+    }
+
+    private static <V> NavigableMap<String, V> prefixMap(ConcurrentSkipListMap<String, V> map, String prefix) {
+        if (prefix.isEmpty()) {
+            return map;
+        }
+        char last = prefix.charAt(prefix.length() - 1);
+        if (last == Character.MAX_VALUE) {
+            return map.tailMap(prefix, true);
+        }
+        String end = prefix.substring(0, prefix.length() - 1) + (char) (last + 1);
+        return map.subMap(prefix, true, end, false);
+    }
+
+    private static String absolute(String base, String name) {
+        return base.isEmpty() ? name : base + "/" + name;
+    }
+
+    private static Stream<Map.Entry<String, NamingEntry>> relative(String base, NavigableMap<String, NamingEntry> map) {
+        Stream<Map.Entry<String, NamingEntry>> stream = map.entrySet().stream()
+                .filter(entry -> !entry.getValue().isExpired());
+        if (base.isEmpty()) {
+            return stream;
+        }
+        int offset = base.length() + 1;
+        return stream.map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey().substring(offset),
+                entry.getValue()));
+    }
+
+    private void removeSubtree(String fullName) {
+        prefixMap(entries, fullName + "/").clear();
+        pending.remove(fullName);
+        prefixMap(pending, fullName + "/").clear();
+    }
+
+    /**
+     * Tells whether an entry is a subcontext located at the given name of a context, whose
+     * bindings are therefore indexed below the name.
+     */
+    private static boolean located(NamingEntry entry, NamingContext context, String atom) {
+        return entry != null && entry.type == NamingEntry.CONTEXT && entry.value instanceof NamingContext
+                && ((NamingContext) entry.value).location.isAt(context.location, atom);
+    }
+}
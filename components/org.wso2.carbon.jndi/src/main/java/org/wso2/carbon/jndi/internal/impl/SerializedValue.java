@@ -0,0 +1,109 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.wso2.carbon.jndi.internal.Constants;
+import org.wso2.carbon.jndi.internal.util.StringManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.nio.ByteBuffer;
+
+import javax.naming.NamingException;
+
+/**
+ * The serialized form of an object restored from a {@link NamespaceSnapshot}, which is the value of
+ * a {@link NamingEntry#SERIALIZED} entry until the first lookup deserializes it.
+ */
+public final class SerializedValue {
+
+    private static final StringManager SM = StringManager.getManager(Constants.PACKAGE);
+
+    private final String className;
+    private final ByteBuffer bytes;
+
+    /**
+     * @param className the class name of the serialized object
+     * @param bytes     the serialized object, which may be a view of a mapped file
+     */
+    SerializedValue(String className, ByteBuffer bytes) {
+        this.className = className;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return the class name of the serialized object
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return a new view of the serialized object
+     */
+    ByteBuffer bytes() {
+        return bytes.duplicate();
+    }
+
+    /**
+     * Deserializes the object, loading its classes through the context class loader of the calling
+     * thread and falling back to the class loader of this bundle.
+     *
+     * @return a new copy of the object
+     * @throws NamingException if the object cannot be deserialized
+     */
+    public Object deserialize() throws NamingException {
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.duplicate().get(copy);
+        try (ObjectInputStream in = new ContextClassLoaderObjectInputStream(new ByteArrayInputStream(copy))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            NamingException namingException =
+                    new NamingException(SM.getString("namespaceSnapshot.deserializationFailed", className));
+            namingException.initCause(e);
+            throw namingException;
+        }
+    }
+
+    /**
+     * Object stream which resolves classes through the context class loader of the calling thread.
+     */
+    static final class ContextClassLoaderObjectInputStream extends ObjectInputStream {
+
+        ContextClassLoaderObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            if (classLoader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    // Fall back to the default resolution
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
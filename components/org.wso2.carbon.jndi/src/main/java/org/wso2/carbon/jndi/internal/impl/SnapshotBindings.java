@@ -0,0 +1,485 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bindings store which keeps the bindings of a context in an immutable hash array mapped trie.
+ * <p>
+ * Every update path-copies the trie and publishes the new root with a single compare-and-set, so
+ * readers always work on a consistent snapshot without taking locks. Iterators walk the snapshot
+ * which was current when they were created and are never affected by later updates, which lets
+ * list and listBindings enumerate the bindings without copying them.
+ */
+public class SnapshotBindings extends AbstractMap<String, NamingEntry> implements ConcurrentMap<String, NamingEntry> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * Trie levels beyond this shift have no hash bits left and hold colliding leaves in a flat array.
+     */
+    private static final int MAX_SHIFT = 32;
+
+    /**
+     * The currently published snapshot.
+     */
+    private final AtomicReference<Snapshot> root = new AtomicReference<>(Snapshot.EMPTY);
+
+    private final Set<Map.Entry<String, NamingEntry>> entrySet = new EntrySet();
+
+    @Override
+    public NamingEntry get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        return root.get().get((String) key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return root.get().size;
+    }
+
+    @Override
+    public NamingEntry put(String key, NamingEntry value) {
+        checkNotNull(key, value);
+        while (true) {
+            Snapshot current = root.get();
+            NamingEntry previous = current.get(key);
+            if (root.compareAndSet(current, current.with(key, value))) {
+                return previous;
+            }
+        }
+    }
+
+    @Override
+    public NamingEntry putIfAbsent(String key, NamingEntry value) {
+        checkNotNull(key, value);
+        while (true) {
+            Snapshot current = root.get();
+            NamingEntry previous = current.get(key);
+            if (previous != null) {
+                return previous;
+            }
+            if (root.compareAndSet(current, current.with(key, value))) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public NamingEntry remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        while (true) {
+            Snapshot current = root.get();
+            NamingEntry previous = current.get((String) key);
+            if (previous == null) {
+                return null;
+            }
+            if (root.compareAndSet(current, current.without((String) key))) {
+                return previous;
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (!(key instanceof String)) {
+            return false;
+        }
+        while (true) {
+            Snapshot current = root.get();
+            NamingEntry previous = current.get((String) key);
+            if (previous == null || !previous.equals(value)) {
+                return false;
+            }
+            if (root.compareAndSet(current, current.without((String) key))) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean replace(String key, NamingEntry oldValue, NamingEntry newValue) {
+        checkNotNull(key, newValue);
+        while (true) {
+            Snapshot current = root.get();
+            NamingEntry previous = current.get(key);
+            if (previous == null || !previous.equals(oldValue)) {
+                return false;
+            }
+            if (root.compareAndSet(current, current.with(key, newValue))) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public NamingEntry replace(String key, NamingEntry value) {
+        checkNotNull(key, value);
+        while (true) {
+            Snapshot current = root.get();
+            NamingEntry previous = current.get(key);
+            if (previous == null) {
+                return null;
+            }
+            if (root.compareAndSet(current, current.with(key, value))) {
+                return previous;
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        root.set(Snapshot.EMPTY);
+    }
+
+    /**
+     * Applies several changes and publishes them together with a single compare-and-set, so that
+     * readers see either none or all of them.
+     *
+     * @param changes the new entries by key, with a null entry removing the key
+     */
+    public void update(Map<String, NamingEntry> changes) {
+        while (true) {
+            Snapshot current = root.get();
+            Snapshot updated = current;
+            for (Map.Entry<String, NamingEntry> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    updated = updated.without(change.getKey());
+                } else {
+                    updated = updated.with(change.getKey(), change.getValue());
+                }
+            }
+            if (root.compareAndSet(current, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns a set view of the bindings. Its iterators walk the snapshot which was published when
+     * the iterator was created.
+     */
+    @Override
+    public Set<Map.Entry<String, NamingEntry>> entrySet() {
+        return entrySet;
+    }
+
+    private static void checkNotNull(String key, NamingEntry value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    /**
+     * Set view over the published snapshot.
+     */
+    private final class EntrySet extends AbstractSet<Map.Entry<String, NamingEntry>> {
+
+        @Override
+        public Iterator<Map.Entry<String, NamingEntry>> iterator() {
+            Iterator<Map.Entry<String, NamingEntry>> iterator = new SnapshotIterator(root.get().node);
+            return new Iterator<Map.Entry<String, NamingEntry>>() {
+
+                private Map.Entry<String, NamingEntry> last;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Map.Entry<String, NamingEntry> next() {
+                    last = iterator.next();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException();
+                    }
+                    SnapshotBindings.this.remove(last.getKey(), last.getValue());
+                    last = null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return SnapshotBindings.this.size();
+        }
+    }
+
+    /**
+     * An immutable version of the bindings.
+     */
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(Node.EMPTY, 0);
+
+        final Node node;
+        final int size;
+
+        Snapshot(Node node, int size) {
+            this.node = node;
+            this.size = size;
+        }
+
+        NamingEntry get(String key) {
+            Leaf leaf = node.find(key, spread(key.hashCode()), 0);
+            return leaf == null ? null : leaf.getValue();
+        }
+
+        Snapshot with(String key, NamingEntry value) {
+            Leaf leaf = new Leaf(key, value);
+            boolean present = node.find(key, leaf.hash, 0) != null;
+            return new Snapshot(node.with(leaf, 0), present ? size : size + 1);
+        }
+
+        Snapshot without(String key) {
+            Node updated = node.without(key, spread(key.hashCode()), 0);
+            return updated == node ? this : new Snapshot(updated, size - 1);
+        }
+    }
+
+    /**
+     * A single binding stored in the trie.
+     */
+    private static final class Leaf extends AbstractMap.SimpleImmutableEntry<String, NamingEntry> {
+
+        private static final long serialVersionUID = 1L;
+
+        final int hash;
+
+        Leaf(String key, NamingEntry value) {
+            super(key, value);
+            this.hash = spread(key.hashCode());
+        }
+    }
+
+    /**
+     * A trie node. Each slot holds either a {@code Leaf} or a child {@code Node}, and the bitmap tells
+     * which of the 32 possible hash fragments are present at this level. Nodes below
+     * {@code MAX_SHIFT} have an empty bitmap and hold colliding leaves only.
+     */
+    private static final class Node {
+
+        static final Node EMPTY = new Node(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        Leaf find(String key, int hash, int shift) {
+            if (shift >= MAX_SHIFT) {
+                for (Object slot : slots) {
+                    Leaf leaf = (Leaf) slot;
+                    if (leaf.getKey().equals(key)) {
+                        return leaf;
+                    }
+                }
+                return null;
+            }
+
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = slots[Integer.bitCount(bitmap & (bit - 1))];
+            if (slot instanceof Node) {
+                return ((Node) slot).find(key, hash, shift + BITS);
+            }
+            Leaf leaf = (Leaf) slot;
+            return leaf.hash == hash && leaf.getKey().equals(key) ? leaf : null;
+        }
+
+        Node with(Leaf leaf, int shift) {
+            if (shift >= MAX_SHIFT) {
+                for (int i = 0; i < slots.length; i++) {
+                    if (((Leaf) slots[i]).getKey().equals(leaf.getKey())) {
+                        return new Node(0, replace(slots, i, leaf));
+                    }
+                }
+                return new Node(0, insert(slots, slots.length, leaf));
+            }
+
+            int bit = 1 << ((leaf.hash >>> shift) & MASK);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                return new Node(bitmap | bit, insert(slots, index, leaf));
+            }
+
+            Object slot = slots[index];
+            Object replacement;
+            if (slot instanceof Node) {
+                replacement = ((Node) slot).with(leaf, shift + BITS);
+            } else {
+                Leaf existing = (Leaf) slot;
+                if (existing.hash == leaf.hash && existing.getKey().equals(leaf.getKey())) {
+                    replacement = leaf;
+                } else {
+                    replacement = EMPTY.with(existing, shift + BITS).with(leaf, shift + BITS);
+                }
+            }
+            return new Node(bitmap, replace(slots, index, replacement));
+        }
+
+        /**
+         * Removes the given key, returning this node itself if neither it nor its children hold the
+         * key.
+         */
+        Node without(String key, int hash, int shift) {
+            if (shift >= MAX_SHIFT) {
+                for (int i = 0; i < slots.length; i++) {
+                    if (((Leaf) slots[i]).getKey().equals(key)) {
+                        return new Node(0, remove(slots, i));
+                    }
+                }
+                return this;
+            }
+
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            Object slot = slots[index];
+            if (slot instanceof Node) {
+                Node child = ((Node) slot).without(key, hash, shift + BITS);
+                if (child == slot) {
+                    return this;
+                }
+                if (child.slots.length == 0) {
+                    return new Node(bitmap & ~bit, remove(slots, index));
+                }
+                if (child.slots.length == 1 && child.slots[0] instanceof Leaf) {
+                    // Pull a lone leaf up so that lookups do not walk through single entry nodes
+                    return new Node(bitmap, replace(slots, index, child.slots[0]));
+                }
+                return new Node(bitmap, replace(slots, index, child));
+            }
+            Leaf leaf = (Leaf) slot;
+            if (leaf.hash != hash || !leaf.getKey().equals(key)) {
+                return this;
+            }
+            return new Node(bitmap & ~bit, remove(slots, index));
+        }
+
+        private static Object[] insert(Object[] slots, int index, Object value) {
+            Object[] copy = new Object[slots.length + 1];
+            System.arraycopy(slots, 0, copy, 0, index);
+            copy[index] = value;
+            System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+            return copy;
+        }
+
+        private static Object[] replace(Object[] slots, int index, Object value) {
+            Object[] copy = slots.clone();
+            copy[index] = value;
+            return copy;
+        }
+
+        private static Object[] remove(Object[] slots, int index) {
+            Object[] copy = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, copy, 0, index);
+            System.arraycopy(slots, index + 1, copy, index, slots.length - index - 1);
+            return copy;
+        }
+    }
+
+    /**
+     * Depth first iterator over the leaves of a frozen trie.
+     */
+    private static final class SnapshotIterator implements Iterator<Map.Entry<String, NamingEntry>> {
+
+        private final Node[] nodes = new Node[MAX_SHIFT / BITS + 2];
+        private final int[] positions = new int[MAX_SHIFT / BITS + 2];
+        private int depth;
+        private Leaf next;
+
+        SnapshotIterator(Node root) {
+            nodes[0] = root;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, NamingEntry> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf current = next;
+            advance();
+            return current;
+        }
+
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                Node node = nodes[depth];
+                if (positions[depth] == node.slots.length) {
+                    depth--;
+                    continue;
+                }
+                Object slot = node.slots[positions[depth]++];
+                if (slot instanceof Node) {
+                    depth++;
+                    nodes[depth] = (Node) slot;
+                    positions[depth] = 0;
+                } else {
+                    next = (Leaf) slot;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Spreads the higher bits of the hash code so that the first trie levels are well distributed.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
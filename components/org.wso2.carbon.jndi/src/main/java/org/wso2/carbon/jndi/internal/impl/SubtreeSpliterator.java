@@ -0,0 +1,216 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the bindings of a {@link NamingContext} and, recursively, of its subcontexts.
+ * <p>
+ * Each element pairs the full name of a binding, relative to the context the walk started from,
+ * with its entry. Full names join the components with '/' and escape any '/' or '\' within a
+ * component with '\'. Subcontexts are walked without recursion, so deep trees need no stack, and
+ * a split hands over subcontexts which have not been walked yet, so a parallel stream walks
+ * separate subtrees on separate threads.
+ * <p>
+ * Bindings are read as the walk advances, with the consistency of {@link NamingContext#entries()}.
+ * Only subcontexts which are themselves NamingContexts are walked, and each of them only once,
+ * even if it is bound under several names.
+ * <p>
+ * A prefix matches whole components: the prefix "a/b" selects "a/b" and the bindings below it,
+ * but not "a/bc". The size is estimated from the number of bindings of the contexts found so far
+ * and not walked yet, since the size of subtrees which have not been reached is not known.
+ */
+final class SubtreeSpliterator implements Spliterator<Map.Entry<String, NamingEntry>> {
+
+    /**
+     * Depth of the bindings of the context the walk started from.
+     */
+    private static final int ROOT_DEPTH = 1;
+
+    private final int maxDepth;
+    private final String prefix;
+    /**
+     * Bindings stores of the subcontexts queued so far, shared by all the spliterators of a walk.
+     */
+    private final Set<Object> visited;
+    /**
+     * Subcontexts which have been found but not walked yet.
+     */
+    private final ArrayDeque<Frame> pending;
+
+    private Frame current;
+
+    /**
+     * Number of bindings left to read in the current context and in the pending ones.
+     */
+    private long estimate;
+
+    /**
+     * @param context  the context to start from
+     * @param maxDepth the depth of the deepest bindings to return, 1 being the bindings of the
+     *                 context itself
+     * @param prefix   only the binding with this full name and the bindings below it are returned;
+     *                 may be empty
+     */
+    SubtreeSpliterator(NamingContext context, int maxDepth, String prefix) {
+        this.maxDepth = maxDepth;
+        this.prefix = prefix;
+        this.visited = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        this.pending = new ArrayDeque<>();
+        visited.add(context.bindings);
+        Frame root = new Frame(context, "", ROOT_DEPTH);
+        pending.add(root);
+        estimate = root.remaining;
+    }
+
+    private SubtreeSpliterator(SubtreeSpliterator parent, ArrayDeque<Frame> pending, long estimate) {
+        this.maxDepth = parent.maxDepth;
+        this.prefix = parent.prefix;
+        this.visited = parent.visited;
+        this.pending = pending;
+        this.estimate = estimate;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Map.Entry<String, NamingEntry>> action) {
+        while (true) {
+            if (current == null) {
+                current = pending.pollLast();
+                if (current == null) {
+                    return false;
+                }
+                current.entries = current.context.entries();
+            }
+            if (!current.entries.hasNext()) {
+                // The context may have lost bindings since it was found
+                estimate = Math.max(0, estimate - current.remaining);
+                current = null;
+                continue;
+            }
+
+            NamingEntry entry = current.entries.next();
+            if (current.remaining > 0) {
+                current.remaining--;
+                estimate--;
+            }
+            String fullName = ContextLocation.join(current.path, entry.name);
+
+            if (entry.type == NamingEntry.CONTEXT && entry.value instanceof NamingContext
+                    && current.depth < maxDepth && mayContainPrefix(fullName)) {
+                NamingContext subContext = (NamingContext) entry.value;
+                if (visited.add(subContext.bindings)) {
+                    Frame frame = new Frame(subContext, fullName, current.depth + 1);
+                    pending.addLast(frame);
+                    estimate += frame.remaining;
+                }
+            }
+
+            if (matchesPrefix(fullName)) {
+                action.accept(new AbstractMap.SimpleImmutableEntry<>(fullName, entry));
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Splits off half of the subcontexts which have been found but not walked yet, starting with
+     * the ones found first, which are the closest to the root and have the largest subtrees.
+     */
+    @Override
+    public Spliterator<Map.Entry<String, NamingEntry>> trySplit() {
+        int size = pending.size();
+        if (size == 0 || (size == 1 && current == null)) {
+            return null;
+        }
+        ArrayDeque<Frame> split = new ArrayDeque<>();
+        long splitEstimate = 0;
+        for (int i = 0, n = current == null ? size / 2 : (size + 1) / 2; i < n; i++) {
+            Frame frame = pending.pollFirst();
+            split.addLast(frame);
+            splitEstimate += frame.remaining;
+        }
+        estimate = Math.max(0, estimate - splitEstimate);
+        return new SubtreeSpliterator(this, split, splitEstimate);
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL | DISTINCT;
+    }
+
+    /**
+     * Tells whether a full name is the prefix or a name below it.
+     */
+    private boolean matchesPrefix(String fullName) {
+        return prefix.isEmpty() || isWithin(fullName, prefix);
+    }
+
+    /**
+     * Tells whether a subcontext may contain bindings which match the prefix.
+     */
+    private boolean mayContainPrefix(String fullName) {
+        return matchesPrefix(fullName) || isWithin(prefix, fullName);
+    }
+
+    /**
+     * @param fullName a full name
+     * @param ancestor another full name
+     * @return true if fullName is ancestor or a name below it
+     */
+    private static boolean isWithin(String fullName, String ancestor) {
+        return fullName.startsWith(ancestor)
+                && (fullName.length() == ancestor.length() || fullName.charAt(ancestor.length()) == '/');
+    }
+
+    /**
+     * A context whose bindings are to be walked.
+     */
+    private static final class Frame {
+
+        private final NamingContext context;
+        private final String path;
+        private final int depth;
+        private Iterator<NamingEntry> entries;
+        /**
+         * Number of bindings of the context not read yet, as estimated when it was found.
+         */
+        private long remaining;
+
+        private Frame(NamingContext context, String path, int depth) {
+            this.context = context;
+            this.path = path;
+            this.depth = depth;
+            this.remaining = context.bindings.size();
+        }
+    }
+}
@@ -18,7 +18,7 @@
 
 package org.wso2.carbon.jndi.internal.java;
 
-import org.wso2.carbon.jndi.internal.impl.NamingContext;
+import org.wso2.carbon.jndi.internal.impl.NamespaceSnapshot;
 
 import java.util.Hashtable;
 
@@ -56,7 +56,7 @@ public class JavaURLContextFactory implements ObjectFactory {
                                                  Hashtable<?, ?> environment) throws NamingException {
 
         if (javaInitialContext == null) {
-            javaInitialContext = new NamingContext((Hashtable<String, Object>) environment, "Java");
+            javaInitialContext = NamespaceSnapshot.open((Hashtable<String, Object>) environment, "Java");
         }
         return javaInitialContext;
     }
@@ -24,11 +24,12 @@ import org.osgi.service.jndi.JNDIConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wso2.carbon.jndi.internal.Constants;
+import org.wso2.carbon.jndi.internal.util.LazyNameNotFoundException;
 import org.wso2.carbon.jndi.internal.util.NameParserImpl;
+import org.wso2.carbon.jndi.internal.util.SharedEnvironment;
 import org.wso2.carbon.jndi.internal.util.StringManager;
 
 import java.util.Arrays;
-import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.List;
 import javax.naming.Binding;
@@ -52,7 +53,7 @@ public class OSGiURLContext implements Context {
     /**
      * The environment for this context.
      */
-    protected Hashtable<String, Object> env;
+    protected volatile SharedEnvironment env;
 
     /**
      * The string manager for this package.
@@ -94,14 +95,7 @@ public class OSGiURLContext implements Context {
     public OSGiURLContext(BundleContext callerContext, Hashtable<String, Object> environment) throws NamingException {
         this.callerContext = callerContext;
         parser = new NameParserImpl();
-        env = new Hashtable<>();
-        if (environment != null) {
-            Enumeration<String> envEntries = environment.keys();
-            while (envEntries.hasMoreElements()) {
-                String entryName = envEntries.nextElement();
-                addToEnvironment(entryName, environment.get(entryName));
-            }
-        }
+        env = SharedEnvironment.of(environment);
     }
 
     /**
@@ -134,7 +128,7 @@ public class OSGiURLContext implements Context {
         }
 
         if (lookupResult == null) {
-            throw new NameNotFoundException(name.toString());
+            throw LazyNameNotFoundException.create(isStackless(), name.toString());
         }
 
         return lookupResult;
@@ -167,7 +161,8 @@ public class OSGiURLContext implements Context {
         //find the service with the given serviceName and filter.
         Object result;
         try {
-            result = getService(ctx, serviceName, filter);
+            // Not thrown to the caller, so not worth a stack trace
+            result = getService(ctx, serviceName, filter, true);
             if (logger.isDebugEnabled()) {
                 logger.debug("Successfully completed service registry lookup for name : " + lookupName);
             }
@@ -179,13 +174,14 @@ public class OSGiURLContext implements Context {
                 logger.debug("No service found for name : " + lookupName +
                         ". Retrying service registry lookup with jndi-service-name : " + jndiServiceName);
             }
-            result = getService(ctx, null, filter);  //parse as serviceName=null
+            result = getService(ctx, null, filter, isStackless());  //parse as serviceName=null
         }
 
         return result;
     }
 
-    private Object getService(BundleContext bundleContext, String serviceName, String filter) throws NamingException {
+    private Object getService(BundleContext bundleContext, String serviceName, String filter, boolean stackless)
+            throws NamingException {
 
         try {
             ServiceReference[] serviceReferences = bundleContext.getServiceReferences(serviceName, filter);
@@ -198,19 +194,27 @@ public class OSGiURLContext implements Context {
                         return serviceObject;
                     }
                 }
-                throw new NameNotFoundException(SM.getString("osgiUrlContext.noService"));
+                throw LazyNameNotFoundException.create(stackless, SM, "osgiUrlContext.noService");
             } else {
-                throw new NameNotFoundException(SM.getString("osgiUrlContext.noServiceReference", serviceName));
+                throw LazyNameNotFoundException.create(stackless, SM, "osgiUrlContext.noServiceReference",
+                        serviceName);
             }
 
         } catch (InvalidSyntaxException e) {
             // If we get an invalid syntax exception we just ignore and return
             // a NameNotFoundException. eg: for queries :- osgi:service/foo/myService (where "foo/myService" is the
             // osgi.jndi.service.name and this may read filter=myService which causes an invalid syntax exception)
-            throw new NameNotFoundException(SM.getString("osgiUrlContext.noServiceForFilter", filter));
+            throw LazyNameNotFoundException.create(stackless, SM, "osgiUrlContext.noServiceForFilter", filter);
         }
     }
 
+    /**
+     * @return true if the environment asks for name not found exceptions without stack traces
+     */
+    private boolean isStackless() {
+        return Boolean.parseBoolean(String.valueOf(env.get(Constants.STACKLESS_NAME_NOT_FOUND)));
+    }
+
     /**
      * @param scheme first component of the osgi query (eg: osgi:service)
      * @return scheme path
@@ -533,8 +537,10 @@ public class OSGiURLContext implements Context {
      * @throws NamingException if a jndi exception is encountered
      */
     @Override
-    public Object addToEnvironment(String propName, Object propVal) throws NamingException {
-        return env.put(propName, propVal);
+    public synchronized Object addToEnvironment(String propName, Object propVal) throws NamingException {
+        SharedEnvironment environment = env;
+        env = environment.with(propName, propVal);
+        return environment.get(propName);
     }
 
     /**
@@ -545,8 +551,10 @@ public class OSGiURLContext implements Context {
      * @throws NamingException if a jndi exception is encountered
      */
     @Override
-    public Object removeFromEnvironment(String propName) throws NamingException {
-        return env.remove(propName);
+    public synchronized Object removeFromEnvironment(String propName) throws NamingException {
+        SharedEnvironment environment = env;
+        env = environment.without(propName);
+        return environment.get(propName);
     }
 
     /**
@@ -555,15 +563,14 @@ public class OSGiURLContext implements Context {
      * The caller should not make any changes to the object returned: their
      * effect on the context is undefined. The environment of this context
      * may be changed using addToEnvironment() and removeFromEnvironment().
+     * The returned environment is shared and cannot be modified.
      *
      * @return the environment of this context; never null
      * @throws NamingException if a jndi exception is encountered
      */
     @Override
     public Hashtable<?, ?> getEnvironment() throws NamingException {
-        Hashtable<Object, Object> environment = new Hashtable<>();
-        environment.putAll(env);
-        return environment;
+        return env;
     }
 
     /**
@@ -578,7 +585,7 @@ public class OSGiURLContext implements Context {
      */
     @Override
     public void close() throws NamingException {
-        env.clear();
+        env = SharedEnvironment.EMPTY;
         parser = null;
     }
 
@@ -22,6 +22,7 @@ import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wso2.carbon.jndi.internal.util.JNDIUtils;
+import org.wso2.carbon.jndi.internal.util.SharedEnvironment;
 
 import java.util.HashMap;
 import java.util.Hashtable;
@@ -76,7 +77,7 @@ public class WrapperContext implements Context, DirContext {
     public WrapperContext(BundleContext bundleContext, Optional<Context> deletedContext, Hashtable<?, ?> env) {
         this.bundleContext = bundleContext;
         this.backingContext = deletedContext;
-        this.env = (Hashtable<?, ?>) env.clone();
+        this.env = SharedEnvironment.of(env);
     }
 
     /**
@@ -709,7 +710,9 @@ public class WrapperContext implements Context, DirContext {
                 .stream()
                 .map(serviceRef -> getService(bundleContext, serviceRef))
                 .flatMap(objectFactoryOptional -> objectFactoryOptional.map(Stream::of).orElseGet(Stream::empty))
-                .map(rethrowFunction(objectFactory -> objectFactory.getObjectInstance(null, null, null, env)))
+                // The factory is given a modifiable copy, as the shared environment rejects changes
+                .map(rethrowFunction(objectFactory ->
+                        objectFactory.getObjectInstance(null, null, null, (Hashtable<?, ?>) env.clone())))
                 .filter(object -> object instanceof Context)
                 .map(object -> (Context) object)
                 .findFirst()
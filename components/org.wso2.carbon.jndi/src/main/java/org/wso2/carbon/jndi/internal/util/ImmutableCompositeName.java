@@ -0,0 +1,177 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.util;
+
+import javax.naming.CompositeName;
+import javax.naming.InvalidNameException;
+import javax.naming.Name;
+
+/**
+ * A composite name which cannot be modified once parsed. Instances can therefore be shared between
+ * threads and cached, and they remember their hash code, string form and normalized form.
+ * <p>
+ * All mutators throw {@code UnsupportedOperationException}. {@code clone()}, {@code getPrefix()}
+ * and {@code getSuffix()} return ordinary, modifiable composite names.
+ */
+public final class ImmutableCompositeName extends CompositeName {
+
+    private static final long serialVersionUID = -4420722961367328447L;
+
+    private transient String string;
+    private transient String normalizedName;
+    private transient int hash;
+    private transient NameAtoms.Atom[] atoms;
+
+    /**
+     * Parses the given string into an immutable composite name.
+     *
+     * @param name the non-null string to parse
+     * @throws InvalidNameException if name has invalid composite name syntax
+     */
+    public ImmutableCompositeName(String name) throws InvalidNameException {
+        super(name);
+        this.string = name;
+    }
+
+    /**
+     * Returns the components of this name without the empty ones, joined by '/'. A '/' or '\' within a
+     * component is escaped with '\'.
+     *
+     * @return the normalized form of this name
+     */
+    public String getNormalizedName() {
+        String normalized = normalizedName;
+        if (normalized == null) {
+            normalized = normalize(this, 0);
+            normalizedName = normalized;
+        }
+        return normalized;
+    }
+
+    /**
+     * Returns the normalized form of the components of a name starting at the given position. Empty
+     * components are left out, the others are joined by '/' and a '/' or '\' within a component is
+     * escaped with '\'.
+     *
+     * @param name     the name
+     * @param position the position of the first component to include
+     * @return the normalized form of the name
+     */
+    public static String normalize(Name name, int position) {
+        StringBuilder normalized = new StringBuilder();
+        for (int i = position; i < name.size(); i++) {
+            String component = name.get(i);
+            if (component.length() == 0) {
+                continue;
+            }
+            if (normalized.length() > 0) {
+                normalized.append('/');
+            }
+            appendComponent(normalized, component);
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Appends a name component to a normalized name, escaping any '/' or '\' within it with '\'.
+     *
+     * @param normalized the normalized name to append to
+     * @param component  the component
+     * @return the normalized name
+     */
+    public static StringBuilder appendComponent(StringBuilder normalized, String component) {
+        for (int j = 0; j < component.length(); j++) {
+            char c = component.charAt(j);
+            if (c == '/' || c == '\\') {
+                normalized.append('\\');
+            }
+            normalized.append(c);
+        }
+        return normalized;
+    }
+
+    /**
+     * Returns the {@link NameAtoms} atom of a component. Once the component is interned, its atom
+     * is remembered, which keeps it interned, so later calls do not hash the component again.
+     *
+     * @param position the position of the component
+     * @return the atom of the component, or null if it is not interned
+     */
+    public NameAtoms.Atom atom(int position) {
+        NameAtoms.Atom[] cached = atoms;
+        if (cached == null) {
+            cached = new NameAtoms.Atom[size()];
+            atoms = cached;
+        }
+        NameAtoms.Atom atom = cached[position];
+        if (atom == null) {
+            atom = NameAtoms.find(get(position));
+            cached[position] = atom;
+        }
+        return atom;
+    }
+
+    @Override
+    public String toString() {
+        String value = string;
+        if (value == null) {
+            value = super.toString();
+            string = value;
+        }
+        return value;
+    }
+
+    @Override
+    public int hashCode() {
+        int value = hash;
+        if (value == 0) {
+            value = super.hashCode();
+            hash = value;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return super.equals(obj);
+    }
+
+    @Override
+    public Name add(String comp) throws InvalidNameException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Name add(int posn, String comp) throws InvalidNameException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Name addAll(Name suffix) throws InvalidNameException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Name addAll(int posn, Name n) throws InvalidNameException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object remove(int posn) throws InvalidNameException {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.util;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.function.Supplier;
+import javax.naming.NameNotFoundException;
+
+/**
+ * A NameNotFoundException whose message is only formatted when it is read. Callers which probe for
+ * optional names and catch the exception never pay for the message. Arguments of the message which
+ * are {@link Supplier}s are only evaluated then as well.
+ * <p>
+ * Instances created with {@code stackless} set do not record a stack trace either, which makes
+ * throwing them about as cheap as returning. The message is formatted before the exception is
+ * serialized.
+ */
+public class LazyNameNotFoundException extends NameNotFoundException {
+
+    private static final long serialVersionUID = -5263904126732817436L;
+
+    private final transient StringManager sm;
+    private final transient String key;
+    private final transient Object[] args;
+
+    private volatile String message;
+
+    private LazyNameNotFoundException(StringManager sm, String key, Object[] args) {
+        this.sm = sm;
+        this.key = key;
+        this.args = args;
+    }
+
+    private LazyNameNotFoundException(String message) {
+        this(null, null, null);
+        this.message = message;
+    }
+
+    /**
+     * Creates an exception whose message is the string of the given key, formatted with the given
+     * arguments when it is first read.
+     *
+     * @param stackless true to create an exception which does not record its stack trace
+     * @param sm        the string manager of the message
+     * @param key       the key of the message
+     * @param args      the arguments of the message, or suppliers of them
+     * @return the exception
+     */
+    public static NameNotFoundException create(boolean stackless, StringManager sm, String key, Object... args) {
+        return stackless ? new Stackless(sm, key, args) : new LazyNameNotFoundException(sm, key, args);
+    }
+
+    /**
+     * Creates an exception with a message which is already formatted.
+     *
+     * @param stackless true to create an exception which does not record its stack trace
+     * @param message   the message
+     * @return the exception
+     */
+    public static NameNotFoundException create(boolean stackless, String message) {
+        return stackless ? new Stackless(message) : new LazyNameNotFoundException(message);
+    }
+
+    @Override
+    public String getMessage() {
+        String formatted = message;
+        if (formatted == null && sm != null) {
+            if (args.length == 0) {
+                formatted = sm.getString(key);
+            } else {
+                Object[] values = args.clone();
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] instanceof Supplier) {
+                        values[i] = ((Supplier<?>) values[i]).get();
+                    }
+                }
+                formatted = sm.getString(key, values);
+            }
+            message = formatted;
+        }
+        return formatted;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getMessage();
+        out.defaultWriteObject();
+    }
+
+    /**
+     * An exception which does not record its stack trace.
+     */
+    private static final class Stackless extends LazyNameNotFoundException {
+
+        private static final long serialVersionUID = 2981440512436618713L;
+
+        Stackless(StringManager sm, String key, Object[] args) {
+            super(sm, key, args);
+        }
+
+        Stackless(String message) {
+            super(message);
+        }
+
+        @Override
+        public Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Interning table of name components, shared by all contexts. Each distinct component is given an
+ * {@link Atom} holding a canonical string and an int hash, so bindings stores can be keyed by atoms
+ * and the contexts of many tenants share one copy of the components they all use, such as "comp",
+ * "env" and "jdbc".
+ * <p>
+ * Components are only interned when they are bound. The table refers to its atoms weakly, so an
+ * atom is released once no bindings store and no cached name refers to it, and a namespace whose
+ * names keep changing does not grow the table without bound. Looking up a component which is not
+ * interned does not intern it.
+ */
+public final class NameAtoms {
+
+    private static final ConcurrentHashMap<String, AtomReference> atoms = new ConcurrentHashMap<>();
+
+    /**
+     * The references to the atoms which have been released.
+     */
+    private static final ReferenceQueue<Atom> released = new ReferenceQueue<>();
+
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    private NameAtoms() {
+    }
+
+    /**
+     * Returns the atom of a component, interning it if needed.
+     *
+     * @param component the component
+     * @return the atom of the component
+     */
+    public static Atom intern(String component) {
+        Atom atom = find(component);
+        if (atom != null) {
+            return atom;
+        }
+        expunge();
+        Atom[] interned = new Atom[1];
+        atoms.compute(component, (key, current) -> {
+            Atom existing = current != null ? current.get() : null;
+            if (existing != null) {
+                interned[0] = existing;
+                return current;
+            }
+            interned[0] = new Atom(key, ids.incrementAndGet());
+            return new AtomReference(interned[0]);
+        });
+        return interned[0];
+    }
+
+    /**
+     * Returns the atom of a component without interning it.
+     *
+     * @param component the component
+     * @return the atom of the component, or null if it is not interned
+     */
+    public static Atom find(String component) {
+        AtomReference reference = atoms.get(component);
+        return reference != null ? reference.get() : null;
+    }
+
+    /**
+     * @return the number of interned components, including those released but not yet removed
+     */
+    public static int size() {
+        expunge();
+        return atoms.size();
+    }
+
+    /**
+     * Removes the components whose atoms have been released.
+     */
+    private static void expunge() {
+        AtomReference reference;
+        while ((reference = (AtomReference) released.poll()) != null) {
+            atoms.remove(reference.component, reference);
+        }
+    }
+
+    /**
+     * An interned component. Two atoms are the same component if and only if they are the same
+     * object.
+     */
+    public static final class Atom {
+
+        private final String component;
+        private final int hash;
+
+        private Atom(String component, int id) {
+            this.component = component;
+            this.hash = id * 0x9E3779B9;
+        }
+
+        /**
+         * @return the canonical string of the component
+         */
+        public String component() {
+            return component;
+        }
+
+        /**
+         * @return a hash of the atom, spread from the order in which atoms are interned
+         */
+        public int hash() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return component;
+        }
+    }
+
+    private static final class AtomReference extends WeakReference<Atom> {
+
+        private final String component;
+
+        AtomReference(Atom atom) {
+            super(atom, released);
+            this.component = atom.component;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.util;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.naming.InvalidNameException;
+
+/**
+ * A bounded cache of parsed composite names, keyed by the string they were parsed from and shared
+ * by all contexts. Looking up a cached name does not parse the string again or allocate.
+ * <p>
+ * When the cache is full a quarter of it is evicted to make room for new names. Each cached name
+ * is marked when it is found, and the eviction passes over marked names once, clearing their mark,
+ * so names still in use are kept while names looked up once are dropped first.
+ */
+public final class NameCache {
+
+    /**
+     * Maximum number of names kept in the cache.
+     */
+    public static final int MAX_SIZE = 4096;
+
+    /**
+     * Number of names evicted when the cache is full.
+     */
+    private static final int EVICTION_SIZE = MAX_SIZE / 4;
+
+    private static final ConcurrentHashMap<String, Entry> names = new ConcurrentHashMap<>();
+
+    private static final Object evictionLock = new Object();
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    private NameCache() {
+    }
+
+    /**
+     * Returns the parsed form of the given composite name string.
+     *
+     * @param name the non-null string to parse
+     * @return an immutable composite name
+     * @throws InvalidNameException if name has invalid composite name syntax
+     */
+    public static ImmutableCompositeName get(String name) throws InvalidNameException {
+        Entry entry = names.get(name);
+        if (entry != null) {
+            hits.increment();
+            if (!entry.used) {
+                entry.used = true;
+            }
+            return entry.name;
+        }
+
+        misses.increment();
+        ImmutableCompositeName parsed = new ImmutableCompositeName(name);
+        if (names.size() >= MAX_SIZE) {
+            evict();
+        }
+        names.put(name, new Entry(parsed));
+        return parsed;
+    }
+
+    /**
+     * Evicts {@link #EVICTION_SIZE} names, preferring those which were not found since the last
+     * eviction. A thread which finds the cache full while another thread is evicting waits for
+     * it and then finds room.
+     */
+    private static void evict() {
+        synchronized (evictionLock) {
+            if (names.size() < MAX_SIZE) {
+                return;
+            }
+            int evicted = 0;
+            for (int pass = 0; pass < 2 && evicted < EVICTION_SIZE; pass++) {
+                Iterator<Entry> entries = names.values().iterator();
+                while (entries.hasNext() && evicted < EVICTION_SIZE) {
+                    Entry entry = entries.next();
+                    if (entry.used) {
+                        entry.used = false;
+                    } else {
+                        entries.remove();
+                        evicted++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of names which were found in the cache
+     */
+    public static long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of names which had to be parsed
+     */
+    public static long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of names currently cached
+     */
+    public static int size() {
+        return names.size();
+    }
+
+    /**
+     * Removes all names from the cache and resets the hit and miss counts.
+     */
+    public static void clear() {
+        names.clear();
+        hits.reset();
+        misses.reset();
+    }
+
+    /**
+     * A cached name, marked when it is found.
+     */
+    private static final class Entry {
+
+        private final ImmutableCompositeName name;
+
+        private volatile boolean used;
+
+        private Entry(ImmutableCompositeName name) {
+            this.name = name;
+        }
+    }
+}
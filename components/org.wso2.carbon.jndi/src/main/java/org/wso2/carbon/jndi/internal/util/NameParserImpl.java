@@ -16,7 +16,6 @@
 
 package org.wso2.carbon.jndi.internal.util;
 
-import javax.naming.CompositeName;
 import javax.naming.Name;
 import javax.naming.NameParser;
 import javax.naming.NamingException;
@@ -27,7 +26,8 @@ import javax.naming.NamingException;
 public class NameParserImpl implements NameParser {
 
     /**
-     * Parses a name into its components.
+     * Parses a name into its components. Names are parsed once and then served from the shared
+     * {@link NameCache}; callers receive their own modifiable copy.
      *
      * @param name The non-null string name to parse
      * @return A non-null parsed form of the name using the jndi convention
@@ -36,7 +36,7 @@ public class NameParserImpl implements NameParser {
     @Override
     public Name parse(String name)
             throws NamingException {
-        return new CompositeName(name);
+        return (Name) NameCache.get(name).clone();
     }
 
 
@@ -0,0 +1,269 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * An environment which cannot be modified, so one instance can be shared by any number of
+ * contexts: a context, its views and its subcontexts all hold the same instance. A context which
+ * changes its environment replaces its instance with a modified copy, made by
+ * {@link #with(String, Object)} or {@link #without(String)}, and the other contexts keep the
+ * original.
+ * <p>
+ * The properties are held in a map which is never modified after construction, so reads do not
+ * lock. All mutators throw {@code UnsupportedOperationException}. {@code clone()} returns an
+ * ordinary, modifiable Hashtable, as {@link javax.naming.InitialContext} expects of the environment
+ * it is given, and the environment is serialized as an ordinary Hashtable.
+ */
+public final class SharedEnvironment extends Hashtable<String, Object> {
+
+    private static final long serialVersionUID = 2474624364906718186L;
+
+    /**
+     * The environment without properties.
+     */
+    public static final SharedEnvironment EMPTY = new SharedEnvironment(new HashMap<>());
+
+    private final transient Map<String, Object> properties;
+
+    private SharedEnvironment(Map<String, Object> properties) {
+        super(1);
+        this.properties = properties;
+    }
+
+    /**
+     * Returns a shared environment holding the given properties. A shared environment is returned
+     * as it is, any other is copied.
+     *
+     * @param environment the properties, possibly null
+     * @return the shared environment
+     */
+    @SuppressWarnings("unchecked")
+    public static SharedEnvironment of(Hashtable<?, ?> environment) {
+        if (environment instanceof SharedEnvironment) {
+            return (SharedEnvironment) environment;
+        }
+        if (environment == null || environment.isEmpty()) {
+            return EMPTY;
+        }
+        return new SharedEnvironment(new HashMap<>((Map<String, Object>) environment));
+    }
+
+    /**
+     * @param name  the name of the property
+     * @param value the value of the property
+     * @return a copy of this environment with the property set
+     */
+    public SharedEnvironment with(String name, Object value) {
+        if (name == null || value == null) {
+            throw new NullPointerException();
+        }
+        if (value.equals(properties.get(name))) {
+            return this;
+        }
+        Map<String, Object> copy = new HashMap<>(properties);
+        copy.put(name, value);
+        return new SharedEnvironment(copy);
+    }
+
+    /**
+     * @param name the name of the property
+     * @return a copy of this environment without the property, or this environment if the
+     * property is not set
+     */
+    public SharedEnvironment without(String name) {
+        if (!properties.containsKey(name)) {
+            return this;
+        }
+        Map<String, Object> copy = new HashMap<>(properties);
+        copy.remove(name);
+        return copy.isEmpty() ? EMPTY : new SharedEnvironment(copy);
+    }
+
+    @Override
+    public int size() {
+        return properties.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return properties.isEmpty();
+    }
+
+    @Override
+    public Object get(Object key) {
+        return properties.get(key);
+    }
+
+    @Override
+    public Object getOrDefault(Object key, Object defaultValue) {
+        return properties.getOrDefault(key, defaultValue);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return properties.containsKey(key);
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return properties.containsValue(value);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return properties.containsValue(value);
+    }
+
+    @Override
+    public Enumeration<String> keys() {
+        return Collections.enumeration(properties.keySet());
+    }
+
+    @Override
+    public Enumeration<Object> elements() {
+        return Collections.enumeration(properties.values());
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(properties.keySet());
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return Collections.unmodifiableCollection(properties.values());
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return Collections.unmodifiableMap(properties).entrySet();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        properties.forEach(action);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || (o instanceof Map && properties.equals(o));
+    }
+
+    @Override
+    public int hashCode() {
+        return properties.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return properties.toString();
+    }
+
+    /**
+     * @return a modifiable copy of this environment
+     */
+    @Override
+    public Object clone() {
+        return new Hashtable<>(properties);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object remove(Object key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ?> t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object putIfAbsent(String key, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean replace(String key, Object oldValue, Object newValue) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object replace(String key, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super Object, ?> function) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object computeIfAbsent(String key, Function<? super String, ?> mappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object compute(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object merge(String key, Object value,
+                        BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Serializes the environment as an ordinary Hashtable.
+     */
+    private Object writeReplace() {
+        return new Hashtable<>(properties);
+    }
+}
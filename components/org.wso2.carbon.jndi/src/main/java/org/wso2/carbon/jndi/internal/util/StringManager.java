@@ -17,10 +17,13 @@
 package org.wso2.carbon.jndi.internal.util;
 
 import java.text.MessageFormat;
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An internationalization / localization helper class which reduces
@@ -35,6 +38,9 @@ import java.util.ResourceBundle;
  * practice, this means that the localized information will be contained
  * in a LocalStrings.properties file located in the package
  * directory of the classpath.
+ * <p>Message patterns are compiled once per key and the compiled
+ * templates are shared by all threads, so formatting a message does
+ * not parse its pattern again.
  * <p>Please see the documentation for java.util.ResourceBundle for
  * more information.
  *
@@ -48,6 +54,11 @@ public class StringManager {
     private final ResourceBundle bundle;
     private final Locale locale;
 
+    /**
+     * The compiled message templates, by key.
+     */
+    private final ConcurrentHashMap<String, Template> templates = new ConcurrentHashMap<>();
+
     /**
      * Creates a new StringManager for a given package. This is a
      * private method and all access to it is arbitrated by the
@@ -132,22 +143,27 @@ public class StringManager {
      * @return String formatted with the given arguments
      */
     public String getString(final String key, final Object... args) {
-        String value = getString(key);
-        if (value == null) {
-            value = key;
+        Template template = templates.get(key);
+        if (template == null) {
+            String value = getString(key);
+            if (value == null) {
+                value = key;
+            }
+            template = new Template(value, locale);
+            Template existing = templates.putIfAbsent(key, template);
+            if (existing != null) {
+                template = existing;
+            }
         }
-
-        MessageFormat mf = new MessageFormat(value);
-        mf.setLocale(locale);
-        return mf.format(args, new StringBuffer(), null).toString();
+        return template.format(args);
     }
 
     // --------------------------------------------------------------
     // STATIC SUPPORT METHODS
     // --------------------------------------------------------------
 
-    private static final Hashtable<String, StringManager> managers =
-            new Hashtable<>();
+    private static final ConcurrentHashMap<String, StringManager> managers =
+            new ConcurrentHashMap<>();
 
     /**
      * Get the StringManager for a particular package. If a manager for
@@ -158,13 +174,111 @@ public class StringManager {
      *
      * @return StringManager relate to packageName
      */
-    public static final synchronized StringManager getManager(String packageName) {
+    public static final StringManager getManager(String packageName) {
         StringManager mgr = managers.get(packageName);
         if (mgr == null) {
-            mgr = new StringManager(packageName);
-            managers.put(packageName, mgr);
+            mgr = managers.computeIfAbsent(packageName, StringManager::new);
         }
         return mgr;
     }
 
+    /**
+     * A compiled message pattern. Patterns whose arguments are all plain
+     * <code>{n}</code> elements are split into literal text and argument
+     * indexes, and formatted by appending them. Other patterns, and
+     * numbers and dates, which are formatted for the locale, go through a
+     * copy of the compiled MessageFormat, since a MessageFormat must not
+     * be used by several threads at once.
+     */
+    private static final class Template {
+
+        private final MessageFormat format;
+
+        /**
+         * The literal text before each argument and after the last one,
+         * or null if the pattern is not made of plain arguments only.
+         */
+        private final String[] literals;
+        private final int[] arguments;
+
+        Template(String pattern, Locale locale) {
+            format = new MessageFormat(pattern);
+            format.setLocale(locale);
+
+            List<String> text = new ArrayList<>();
+            List<Integer> indexes = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+            boolean quoted = false;
+            boolean plain = true;
+            for (int i = 0; i < pattern.length() && plain; i++) {
+                char c = pattern.charAt(i);
+                if (c == '\'') {
+                    if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                        literal.append(c);
+                        i++;
+                    } else {
+                        quoted = !quoted;
+                    }
+                } else if (c == '{' && !quoted) {
+                    int end = pattern.indexOf('}', i);
+                    plain = end > i + 1 && isDigits(pattern, i + 1, end);
+                    if (plain) {
+                        text.add(literal.toString());
+                        literal.setLength(0);
+                        indexes.add(Integer.parseInt(pattern.substring(i + 1, end)));
+                        i = end;
+                    }
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (plain) {
+                text.add(literal.toString());
+                literals = text.toArray(new String[0]);
+                arguments = new int[indexes.size()];
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = indexes.get(i);
+                }
+            } else {
+                literals = null;
+                arguments = null;
+            }
+        }
+
+        String format(Object[] args) {
+            if (literals == null) {
+                return formatLocalized(args);
+            }
+            StringBuilder message = new StringBuilder(literals[0]);
+            for (int i = 0; i < arguments.length; i++) {
+                int index = arguments[i];
+                if (args == null || index >= args.length) {
+                    message.append('{').append(index).append('}');
+                } else {
+                    Object arg = args[index];
+                    if (arg instanceof Number || arg instanceof Date) {
+                        return formatLocalized(args);
+                    }
+                    message.append(arg);
+                }
+                message.append(literals[i + 1]);
+            }
+            return message.toString();
+        }
+
+        private String formatLocalized(Object[] args) {
+            MessageFormat mf = (MessageFormat) format.clone();
+            return mf.format(args, new StringBuffer(), null).toString();
+        }
+
+        private static boolean isDigits(String pattern, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (!Character.isDigit(pattern.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
 }
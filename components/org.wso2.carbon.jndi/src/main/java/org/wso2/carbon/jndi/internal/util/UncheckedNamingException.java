@@ -0,0 +1,49 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.wso2.carbon.jndi.internal.util;
+
+import java.util.Objects;
+import javax.naming.NamingException;
+
+/**
+ * Wraps a NamingException thrown where only unchecked exceptions may be, as
+ * {@link java.io.UncheckedIOException} does for IOExceptions. It is thrown by
+ * {@link java.util.Enumeration#nextElement()} of binding enumerations and by
+ * {@link javax.naming.Binding#getObject()} of bindings whose object is resolved lazily, when
+ * resolving the object fails. The cause is always the NamingException which resolving failed with.
+ */
+public class UncheckedNamingException extends RuntimeException {
+
+    private static final long serialVersionUID = -6307417906262372154L;
+
+    /**
+     * @param cause the NamingException to wrap
+     */
+    public UncheckedNamingException(NamingException cause) {
+        super(Objects.requireNonNull(cause).getMessage(), cause);
+    }
+
+    /**
+     * @return the wrapped NamingException
+     */
+    @Override
+    public synchronized NamingException getCause() {
+        return (NamingException) super.getCause();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.jndi.internal.impl.NamespaceSnapshot;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Hashtable;
+
+import javax.naming.Context;
+
+import static org.testng.Assert.assertEquals;
+
+public class JNDIActivatorTest {
+
+    /**
+     * A namespace opened with a snapshot file is written to it when the bundle stops, and restored
+     * from it when it is opened again.
+     */
+    @Test
+    public void testNamespaceRestoredAfterRestart() throws Exception {
+        Path directory = Files.createTempDirectory("activator");
+        Path file = directory.resolve("snapshot");
+        try {
+            Hashtable<String, Object> env = new Hashtable<>();
+            env.put(Constants.SNAPSHOT_FILE, file.toString());
+            Context context = NamespaceSnapshot.open(env, "root");
+            context.createSubcontext("app");
+            context.bind("app/name", "value");
+
+            new JNDIActivator().stop(null);
+
+            Context restored = NamespaceSnapshot.open(env, "root");
+            assertEquals(restored.lookup("app/name"), "value");
+
+            // The restored namespace replaces the first one, and is written by the next stop
+            restored.rebind("app/name", "changed");
+            context.rebind("app/name", "stale");
+            new JNDIActivator().stop(null);
+            assertEquals(NamespaceSnapshot.open(env, "root").lookup("app/name"), "changed");
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.jndi.internal.util.NameAtoms;
+import org.wso2.carbon.jndi.internal.util.NameCache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.naming.InvalidNameException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class AtomBindingsTest {
+
+    private static NamingEntry entry(String name) {
+        return new NamingEntry(name, name, NamingEntry.ENTRY);
+    }
+
+    @Test
+    public void testMapOperations() {
+        AtomBindings bindings = new AtomBindings();
+        NamingEntry a = entry("a");
+        NamingEntry b = entry("b");
+
+        assertNull(bindings.put("a", a));
+        assertSame(bindings.putIfAbsent("a", b), a);
+        assertSame(bindings.get("a"), a);
+        assertEquals(bindings.size(), 1);
+
+        assertFalse(bindings.replace("a", b, b));
+        assertTrue(bindings.replace("a", a, b));
+        assertSame(bindings.replace("a", a), b);
+        assertNull(bindings.replace("missing", a));
+
+        assertFalse(bindings.remove("a", b));
+        assertSame(bindings.remove("a"), a);
+        assertNull(bindings.get("a"));
+        assertTrue(bindings.isEmpty());
+
+        // A removed key leaves its slot behind, and binding it again reuses the slot
+        assertNull(bindings.putIfAbsent("a", b));
+        assertSame(bindings.get("a"), b);
+        assertEquals(bindings.size(), 1);
+    }
+
+    @Test
+    public void testGrowthAndIteration() throws InvalidNameException {
+        AtomBindings bindings = new AtomBindings();
+        Map<String, NamingEntry> expected = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            NamingEntry entry = entry("name" + i);
+            bindings.put(entry.name, entry);
+            expected.put(entry.name, entry);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            bindings.remove("name" + i);
+            expected.remove("name" + i);
+        }
+        assertEquals(bindings.size(), expected.size());
+        assertEquals(new HashMap<>(bindings), expected);
+
+        // Lookups through cached names probe with the remembered atom
+        for (int i = 1; i < 1000; i += 2) {
+            assertSame(bindings.get(NameCache.get("name" + i), 0), expected.get("name" + i));
+        }
+        assertNull(bindings.get(NameCache.get("name0"), 0));
+
+        bindings.entrySet().removeIf(binding -> binding.getKey().endsWith("1"));
+        expected.keySet().removeIf(name -> name.endsWith("1"));
+        assertEquals(new HashMap<>(bindings), expected);
+    }
+
+    @Test
+    public void testAtomsAreReleased() throws InterruptedException {
+        AtomBindings bindings = new AtomBindings();
+        for (int i = 0; i < 100; i++) {
+            bindings.put("released" + i, entry("released" + i));
+        }
+        assertNotNull(NameAtoms.find("released0"));
+
+        // Once no store refers to them, the atoms of the unbound names are released
+        bindings.clear();
+        for (int attempt = 0; attempt < 10 && NameAtoms.find("released0") != null; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertNull(NameAtoms.find("released" + i));
+        }
+
+        // and interned again when they are bound again
+        bindings.put("released0", entry("released0"));
+        assertSame(bindings.get("released0").name, "released0");
+        assertNotNull(NameAtoms.find("released0"));
+    }
+
+    /**
+     * Readers look up keys which were bound before they started while a writer keeps adding keys,
+     * which makes the table grow and fills the probe chains of the earlier keys.
+     */
+    @Test
+    public void testLookupsDuringInserts() throws Exception {
+        AtomBindings bindings = new AtomBindings();
+        int published = 64;
+        for (int i = 0; i < published; i++) {
+            bindings.put("stable" + i, entry("stable" + i));
+        }
+
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        AtomicInteger inserted = new AtomicInteger();
+        Thread[] readers = new Thread[2];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                while (!stop.get() && failure.get() == null) {
+                    for (int i = 0; i < published; i++) {
+                        if (bindings.get("stable" + i) == null) {
+                            failure.set("stable" + i + " missed");
+                        }
+                    }
+                    // The writer removes earlier keys as it goes, but never those of index 2 mod 3
+                    int last = inserted.get() - 1;
+                    last -= (last + 1) % 3;
+                    if (last >= 0 && bindings.get("added" + last) == null) {
+                        failure.set("added" + last + " missed");
+                    }
+                }
+            });
+            readers[r].start();
+        }
+        try {
+            for (int i = 0; i < 50000 && failure.get() == null; i++) {
+                bindings.put("added" + i, entry("added" + i));
+                inserted.set(i + 1);
+                if (i % 3 == 0) {
+                    bindings.remove("added" + (i / 2));
+                }
+            }
+        } finally {
+            stop.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.Reporter;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Compares the heap taken by the bindings of a context with that of the layout they replaced: a
+ * {@link ConcurrentHashMap} per context, holding entries with an int type and a resolved object
+ * field. Sizes are estimated from the fields of the classes, as laid out by a 64 bit JVM with
+ * compressed references: a 12 byte header, 4 byte references and 8 byte alignment. The names and
+ * the bound values are shared by both layouts and are not counted.
+ */
+public class CompactBindingsTest {
+
+    private static final int HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    /**
+     * A previous entry: header, int type, name, value, boolean cacheResolved and the resolved object.
+     */
+    private static final long OLD_ENTRY = align(HEADER + 4 + REFERENCE + REFERENCE + 1 + REFERENCE);
+
+    @Test
+    public void testSmallContextFootprint() throws Exception {
+        for (int count = 1; count <= CompactBindings.THRESHOLD; count++) {
+            CompactBindings bindings = bind(count);
+            long current = footprint(bindings);
+            long previous = chmFootprint(count, 16);
+            Reporter.log(count + " bindings: " + current + " bytes, " + previous + " before");
+            assertTrue(current < previous, count + " bindings take " + current + " bytes, against " + previous);
+        }
+
+        // The per tenant case of four bindings saves more than a third
+        long current = footprint(bind(4));
+        long previous = chmFootprint(4, 16);
+        assertTrue(current * 3 < previous * 2, "4 bindings take " + current + " bytes, against " + previous);
+    }
+
+    @Test
+    public void testLargeContextFootprint() throws Exception {
+        int count = 1000;
+        CompactBindings bindings = bind(count);
+        Object store = field(CompactBindings.class, "store").get(bindings);
+        assertTrue(store instanceof ConcurrentHashMap);
+
+        // Both layouts hold the same map, with smaller entries
+        long entries = 0;
+        for (NamingEntry entry : bindings.values()) {
+            entries += shallowSize(entry.getClass());
+        }
+        assertEquals(entries, count * align(HEADER + 3 + 2 * REFERENCE));
+        long wrapper = shallowSize(CompactBindings.class) + shallowSize(bindings.entrySet().getClass());
+        assertTrue(entries + wrapper < count * OLD_ENTRY);
+    }
+
+    private static CompactBindings bind(int count) {
+        CompactBindings bindings = new CompactBindings();
+        for (int i = 0; i < count; i++) {
+            NamingEntry entry = new NamingEntry("name" + i, Boolean.TRUE, NamingEntry.ENTRY);
+            bindings.put(entry.name, entry);
+        }
+        assertEquals(bindings.size(), count);
+        return bindings;
+    }
+
+    /**
+     * @return the bytes taken by a store holding its bindings in a packed array
+     */
+    private static long footprint(CompactBindings bindings) throws Exception {
+        NamingEntry[] slots = (NamingEntry[]) field(CompactBindings.class, "store").get(bindings);
+        long size = shallowSize(CompactBindings.class) + shallowSize(bindings.entrySet().getClass())
+                + align(ARRAY_HEADER + (long) slots.length * REFERENCE);
+        for (NamingEntry entry : slots) {
+            if (entry != null) {
+                size += shallowSize(entry.getClass());
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the bytes taken by a ConcurrentHashMap of previous entries, with a table of the given size
+     */
+    private static long chmFootprint(int count, int table) throws Exception {
+        Class<?> node = Class.forName(ConcurrentHashMap.class.getName() + "$Node");
+        return shallowSize(ConcurrentHashMap.class) + align(ARRAY_HEADER + (long) table * REFERENCE)
+                + count * (shallowSize(node) + OLD_ENTRY);
+    }
+
+    private static long shallowSize(Class<?> type) {
+        long size = HEADER;
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    size += fieldSize(field.getType());
+                }
+            }
+        }
+        return align(size);
+    }
+
+    private static int fieldSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static Field field(Class<?> type, String name) throws NoSuchFieldException {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NamingException;
+import javax.naming.Reference;
+import javax.naming.spi.ObjectFactory;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class EnvironmentTest {
+
+    @Test
+    public void testChangesAreCopiedOnWrite() throws NamingException {
+        Hashtable<String, Object> env = new Hashtable<>();
+        env.put("shared", "root");
+        NamingContext root = new NamingContext(env, "root");
+        Context view = (Context) root.lookup("");
+        Context sub = root.createSubcontext("sub");
+        Context subView = (Context) sub.lookup("");
+
+        // Until one of them changes it, the contexts hold the same environment
+        Hashtable<?, ?> original = root.getEnvironment();
+        assertSame(view.getEnvironment(), original);
+        assertSame(sub.getEnvironment(), original);
+        assertSame(subView.getEnvironment(), original);
+
+        // The environment given to the root is not shared with it
+        env.put("later", "later");
+        assertNull(original.get("later"));
+
+        assertNull(view.addToEnvironment("view", "view"));
+        assertEquals(sub.addToEnvironment("shared", "sub"), "root");
+        assertEquals(subView.removeFromEnvironment("shared"), "root");
+
+        assertEquals(view.getEnvironment().get("view"), "view");
+        assertEquals(view.getEnvironment().get("shared"), "root");
+        assertEquals(sub.getEnvironment().get("shared"), "sub");
+        assertFalse(subView.getEnvironment().containsKey("shared"));
+
+        // The root and the environment handed out earlier are left as they were
+        assertSame(root.getEnvironment(), original);
+        assertEquals(original.size(), 1);
+        assertEquals(original.get("shared"), "root");
+
+        // Views and subcontexts taken afterwards start from the environment of their context
+        assertEquals(((Context) sub.lookup("")).getEnvironment().get("shared"), "sub");
+        assertEquals(view.createSubcontext("other").getEnvironment().get("view"), "view");
+    }
+
+    @Test
+    public void testViewChangesDoNotLeakToTheRoot() throws Exception {
+        Hashtable<String, Object> env = new Hashtable<>();
+        env.put("shared", "root");
+        NamingContext root = new NamingContext(env, "root");
+
+        // Views taken and changed concurrently keep their changes to themselves
+        int threads = 8;
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String value = "view" + t;
+            Thread worker = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 100; i++) {
+                        Context view = (Context) root.lookup("");
+                        view.addToEnvironment("shared", value);
+                        view.addToEnvironment(value, value);
+                        Context nested = (Context) view.lookup("");
+                        nested.removeFromEnvironment(value);
+                        assertEquals(view.getEnvironment().get("shared"), value);
+                        assertEquals(view.getEnvironment().get(value), value);
+                        assertEquals(nested.getEnvironment().get("shared"), value);
+                        assertFalse(nested.getEnvironment().containsKey(value));
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertTrue(failures.isEmpty(), failures.toString());
+        assertEquals(root.getEnvironment().size(), 1);
+        assertEquals(root.getEnvironment().get("shared"), "root");
+        assertEquals(((Context) root.lookup("")).getEnvironment().get("shared"), "root");
+    }
+
+    @Test
+    public void testReturnedEnvironmentCannotBeModified() throws NamingException {
+        NamingContext root = new NamingContext(new Hashtable<>(), "root");
+        @SuppressWarnings("unchecked")
+        Hashtable<String, Object> environment = (Hashtable<String, Object>) root.getEnvironment();
+        try {
+            environment.put("name", "value");
+            fail("Shared environment modified");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        // A copy is an ordinary Hashtable, as InitialContext expects
+        @SuppressWarnings("unchecked")
+        Hashtable<String, Object> copy = (Hashtable<String, Object>) environment.clone();
+        copy.put("name", "value");
+        assertFalse(root.getEnvironment().containsKey("name"));
+    }
+
+    @Test
+    public void testObjectFactoryMayModifyEnvironment() throws NamingException {
+        Hashtable<String, Object> env = new Hashtable<>();
+        env.put("shared", "root");
+        NamingContext root = new NamingContext(env, "root");
+        root.bind("reference", new Reference(String.class.getName(), ModifyingFactory.class.getName(), null));
+
+        assertEquals(root.lookup("reference"), "root");
+        assertNull(root.getEnvironment().get(ModifyingFactory.MARKER));
+    }
+
+    /**
+     * Marks the environment it is given, as object factories are free to do.
+     */
+    public static class ModifyingFactory implements ObjectFactory {
+
+        static final String MARKER = "factory.marker";
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Object getObjectInstance(Object obj, Name name, Context nameCtx, Hashtable<?, ?> environment) {
+            ((Hashtable<String, Object>) environment).put(MARKER, MARKER);
+            return environment.get("shared");
+        }
+    }
+}
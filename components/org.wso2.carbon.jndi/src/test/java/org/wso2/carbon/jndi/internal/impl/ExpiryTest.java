@@ -0,0 +1,117 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.jndi.ExtendedContext;
+import org.wso2.carbon.jndi.internal.Constants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.naming.Binding;
+import javax.naming.NameClassPair;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class ExpiryTest {
+
+    /**
+     * Expired bindings which the expiry wheel has not removed yet are put in the bindings store and
+     * the search index directly, so that nothing removes them while the test runs.
+     */
+    @Test
+    public void testExpiredBindingsAreNotListed() throws NamingException {
+        Hashtable<String, Object> env = new Hashtable<>();
+        env.put(Constants.SEARCH_INDEX, "true");
+        NamingContext root = new NamingContext(env, "root");
+        NamingContext sub = (NamingContext) root.createSubcontext("sub");
+        root.bind("kept", "kept");
+        sub.bind("kept", "kept");
+        addExpired(root, "gone");
+        addExpired(sub, "gone");
+        assertTrue(root.bindings.get("gone").isExpired());
+
+        try {
+            root.lookup("gone");
+            fail("Expired binding found");
+        } catch (NameNotFoundException e) {
+            // expected
+        }
+        assertEquals(names(root.list("")), sorted("kept", "sub"));
+        assertEquals(names(root.listBindings("")), sorted("kept", "sub"));
+        assertEquals(names(root.list("sub")), sorted("kept"));
+
+        assertEquals(root.subtree(Integer.MAX_VALUE, "", false).map(Binding::getName).sorted()
+                .collect(Collectors.toList()), sorted("kept", "sub", "sub/kept"));
+        assertEquals(root.subtree(Integer.MAX_VALUE, "", true).count(), 3);
+
+        assertEquals(root.searchPrefix("").map(Binding::getName).collect(Collectors.toList()),
+                sorted("kept", "sub", "sub/kept"));
+        assertEquals(root.searchRange("a", "z").count(), 3);
+        assertEquals(root.searchGlob("**/gone").count(), 0);
+        assertEquals(sub.searchGlob("*").map(Binding::getName).collect(Collectors.toList()), sorted("kept"));
+    }
+
+    @Test
+    public void testExpiredBindingIsRemoved() throws Exception {
+        NamingContext context = new NamingContext(new Hashtable<>(), "root");
+        ExtendedContext exported = context;
+        exported.bind("short", "short", 50, TimeUnit.MILLISECONDS);
+        assertEquals(context.lookup("short"), "short");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (context.bindings.containsKey("short")) {
+            if (System.nanoTime() - deadline > 0) {
+                fail("Expired binding was not removed");
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(names(context.list("")), Collections.emptyList());
+    }
+
+    private static void addExpired(NamingContext context, String atom) {
+        context.bindings.put(atom, NamingEntry.create(atom, atom, NamingEntry.ENTRY, false, 1, context));
+        context.namespace.searchIndex().update(context, atom, null);
+    }
+
+    private static List<String> names(NamingEnumeration<? extends NameClassPair> enumeration)
+            throws NamingException {
+        List<String> names = new ArrayList<>();
+        while (enumeration.hasMore()) {
+            names.add(enumeration.next().getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static List<String> sorted(String... names) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, names);
+        Collections.sort(list);
+        return list;
+    }
+}
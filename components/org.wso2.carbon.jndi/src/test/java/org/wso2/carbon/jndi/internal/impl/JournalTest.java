@@ -0,0 +1,159 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.jndi.internal.Constants;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class JournalTest {
+
+    private Path directory;
+    private Path journal;
+    private Path snapshot;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("journal");
+        journal = directory.resolve("namespace.journal");
+        snapshot = directory.resolve("namespace.snapshot");
+    }
+
+    @AfterMethod
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testReplayOnTopOfSnapshot() throws NamingException {
+        NamingContext root = open();
+        root.bind("changed", "before");
+        root.bind("removed", "before");
+        root.createSubcontext("sub");
+        NamespaceSnapshot.write(root, snapshot);
+
+        root.rebind("changed", "after");
+        root.unbind("removed");
+        root.bind("sub/added", "after");
+        root.createSubcontext("created");
+        root.rename("sub", "renamed");
+        root.batch().bind("first", 1).bind("second", 2).commit();
+
+        NamingContext restored = open();
+        assertEquals(restored.lookup("changed"), "after");
+        assertUnbound(restored, "removed");
+        assertUnbound(restored, "sub");
+        assertEquals(restored.lookup("renamed/added"), "after");
+        assertEquals(((NamingContext) restored.lookup("created")).location.path(), "created");
+        assertEquals(restored.lookup("first"), 1);
+        assertEquals(restored.lookup("second"), 2);
+    }
+
+    @Test
+    public void testTornTailIsCutOff() throws Exception {
+        NamingContext root = open();
+        root.bind("kept", "kept");
+        long length = Files.size(journal);
+
+        // A frame header promising more bytes than a crash left behind
+        Files.write(journal, new byte[] {0, 0, 0, 50, 1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        NamingContext restored = open();
+        assertEquals(Files.size(journal), length);
+        assertEquals(restored.lookup("kept"), "kept");
+
+        // Records appended after the cut are replayed in turn
+        restored.bind("appended", "appended");
+        NamingContext reopened = open();
+        assertEquals(reopened.lookup("kept"), "kept");
+        assertEquals(reopened.lookup("appended"), "appended");
+    }
+
+    @Test
+    public void testGroupCommitUnderConcurrentBinds() throws Exception {
+        NamingContext root = open();
+        int threads = 8;
+        int binds = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String prefix = "t" + t + "-";
+                results.add(executor.submit((Callable<Void>) () -> {
+                    for (int i = 0; i < binds; i++) {
+                        root.bind(prefix + i, i);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        NamingContext restored = open();
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < binds; i++) {
+                assertEquals(restored.lookup("t" + t + "-" + i), i);
+            }
+        }
+        assertEquals(restored.bindings.size(), threads * binds);
+    }
+
+    private NamingContext open() throws NamingException {
+        Hashtable<String, Object> env = new Hashtable<>();
+        env.put(Constants.JOURNAL_FILE, journal.toString());
+        env.put(Constants.SNAPSHOT_FILE, snapshot.toString());
+        return NamespaceSnapshot.open(env, "root");
+    }
+
+    private static void assertUnbound(NamingContext context, String name) throws NamingException {
+        try {
+            context.lookup(name);
+            fail(name + " is bound");
+        } catch (NameNotFoundException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.annotations.Test;
+
+import java.util.Hashtable;
+
+import javax.naming.LinkRef;
+import javax.naming.NamingException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class LinkResolutionTest {
+
+    @Test
+    public void testTargetIsKeptAcrossUnrelatedChanges() throws NamingException {
+        NamingContext root = new NamingContext(new Hashtable<>(), "root");
+        root.createSubcontext("a").bind("target", "t");
+        root.bind("next", new LinkRef("./a/target"));
+        root.bind("link", new LinkRef("./next"));
+        assertEquals(root.lookup("link"), "t");
+        Object target = root.bindings.get("link").getResolved();
+        assertTrue(target instanceof LinkResolution.Target);
+
+        root.bind("other", "o");
+        root.createSubcontext("b").bind("target", "b");
+        root.rebind("a/sibling", "s");
+        assertEquals(root.lookup("link"), "t");
+        assertSame(root.bindings.get("link").getResolved(), target);
+    }
+
+    @Test
+    public void testTargetIsDroppedWhenTheChainChanges() throws NamingException {
+        NamingContext root = new NamingContext(new Hashtable<>(), "root");
+        root.createSubcontext("a").bind("target", "t");
+        root.bind("next", new LinkRef("./a/target"));
+        root.bind("link", new LinkRef("./next"));
+        assertEquals(root.lookup("link"), "t");
+        Object target = root.bindings.get("link").getResolved();
+
+        // An inner link of the chain
+        root.rebind("next", new LinkRef("./a/other"));
+        root.bind("a/other", "o");
+        assertEquals(root.lookup("link"), "o");
+        assertNotSame(root.bindings.get("link").getResolved(), target);
+
+        // A context the chain passes through
+        root.unbind("a/other");
+        root.unbind("a/target");
+        root.destroySubcontext("a");
+        root.createSubcontext("a").bind("other", "again");
+        assertEquals(root.lookup("link"), "again");
+
+        // The final target
+        root.rebind("a/other", "changed");
+        assertEquals(root.lookup("link"), "changed");
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.naming.BinaryRefAddr;
+import javax.naming.LinkRef;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.Reference;
+import javax.naming.StringRefAddr;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class NamespaceSnapshotTest {
+
+    private Path directory;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("namespace-snapshot");
+    }
+
+    @AfterMethod
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        NamingContext root = new NamingContext(new Hashtable<>(), "root");
+        NamingContext sub = (NamingContext) root.createSubcontext("sub");
+        root.createSubcontext("sub/deeper").bind("leaf", "leaf");
+        root.bind("alias", sub);
+        root.bind("string", "value");
+        root.bind("link", new LinkRef("sub/deeper/leaf"));
+        Reference reference = new Reference("java.lang.String", "factory.Class", null);
+        reference.add(new StringRefAddr("url", "jdbc:test"));
+        reference.add(new BinaryRefAddr("bytes", new byte[] {1, 2, 3}));
+        root.bind("reference", reference);
+        sub.bind("list", new ArrayList<>(Arrays.asList("a", "b")));
+        root.bind("shortLived", "gone", 1, TimeUnit.HOURS);
+
+        Path file = directory.resolve("snapshot");
+        NamespaceSnapshot.write(root, file);
+        NamingContext restored = NamespaceSnapshot.restore(new Hashtable<>(), "root", file);
+
+        assertEquals(restored.lookup("string"), "value");
+        assertEquals(restored.lookup("sub/deeper/leaf"), "leaf");
+        assertEquals(((LinkRef) restored.bindings.get("link").value).getLinkName(), "sub/deeper/leaf");
+        assertEquals(restored.bindings.get("reference").value, reference);
+        try {
+            restored.lookup("shortLived");
+            fail("Binding with a time to live restored");
+        } catch (NameNotFoundException e) {
+            // expected
+        }
+
+        // An alias is restored as the same context, located at its original name
+        NamingContext restoredSub = (NamingContext) restored.lookup("sub");
+        assertSame(((NamingContext) restored.lookup("alias")).bindings, restoredSub.bindings);
+        assertEquals(restoredSub.location.path(), "sub");
+        restored.bind("alias/added", "added");
+        assertEquals(restored.lookup("sub/added"), "added");
+
+        // Serialized objects are only deserialized when they are looked up
+        NamingEntry list = restoredSub.bindings.get("list");
+        assertEquals(list.type, NamingEntry.SERIALIZED);
+        assertTrue(list.value instanceof SerializedValue);
+        assertEquals(restored.lookup("sub/list"), Arrays.asList("a", "b"));
+    }
+
+    @Test
+    public void testCorruptRecordIsSkipped() throws Exception {
+        NamingContext root = new NamingContext(new Hashtable<>(), "root");
+        root.bind("before", "before");
+        Reference reference = new Reference("java.lang.String");
+        reference.add(new BinaryRefAddr("bytes", new byte[] {1, 2, 3}));
+        reference.add(new StringRefAddr("url", "jdbc:test"));
+        root.bind("reference", reference);
+        root.bind("after", "after");
+        Path file = directory.resolve("snapshot");
+        NamespaceSnapshot.write(root, file);
+
+        // Break the stream header of the serialized address, the only serialized object written, so
+        // that decoding the reference fails before its last address
+        byte[] bytes = Files.readAllBytes(file);
+        int header = indexOf(bytes, new byte[] {(byte) 0xAC, (byte) 0xED});
+        assertTrue(header > 0);
+        assertEquals(indexOf(Arrays.copyOfRange(bytes, header + 2, bytes.length),
+                new byte[] {(byte) 0xAC, (byte) 0xED}), -1);
+        bytes[header] = 0;
+        Files.write(file, bytes);
+
+        NamingContext restored = NamespaceSnapshot.restore(new Hashtable<>(), "root", file);
+        assertEquals(restored.lookup("before"), "before");
+        assertEquals(restored.lookup("after"), "after");
+        assertFalse(restored.bindings.containsKey("reference"));
+    }
+
+    @Test
+    public void testTruncatedSnapshotIsRejected() throws Exception {
+        NamingContext root = new NamingContext(new Hashtable<>(), "root");
+        for (int i = 0; i < 10; i++) {
+            root.bind("name" + i, "value" + i);
+        }
+        Path file = directory.resolve("snapshot");
+        NamespaceSnapshot.write(root, file);
+
+        // Claim more bindings than the root context has, so that the last ones run past the file
+        byte[] bytes = Files.readAllBytes(file);
+        int rootPosition = ((bytes[bytes.length - 4] & 0xFF) << 24) | ((bytes[bytes.length - 3] & 0xFF) << 16)
+                | ((bytes[bytes.length - 2] & 0xFF) << 8) | (bytes[bytes.length - 1] & 0xFF);
+        bytes[rootPosition + 3] = 20;
+        Files.write(file, bytes);
+
+        try {
+            NamespaceSnapshot.restore(new Hashtable<>(), "root", file);
+            fail("Truncated snapshot restored");
+        } catch (NamingException e) {
+            // expected
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= bytes.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + pattern.length), pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.jndi.ExtendedContext;
+import org.wso2.carbon.jndi.NamingBatch;
+import org.wso2.carbon.jndi.internal.Constants;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.naming.Binding;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.Reference;
+import javax.naming.Referenceable;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class NamingBatchTest {
+
+    private static final String[] STORES = {null, Constants.SNAPSHOT_BINDINGS, Constants.ATOM_BINDINGS};
+
+    private static NamingContext newContext(String store) throws NamingException {
+        Hashtable<String, Object> env = new Hashtable<>();
+        if (store != null) {
+            env.put(store, "true");
+        }
+        return new NamingContext(env, "root");
+    }
+
+    @Test
+    public void testBindAndUnbindSameName() throws NamingException {
+        for (String store : STORES) {
+            NamingContext context = newContext(store);
+            for (int i = 0; i < 20; i++) {
+                context.bind("name" + i, i);
+            }
+
+            context.batch().bind("X", "X").unbind("X").commit();
+
+            for (int i = 0; i < 20; i++) {
+                assertEquals(context.lookup("name" + i), i, "Binding changed in store " + store);
+            }
+            assertEquals(count(context.list("")), 20, "Bindings listed in store " + store);
+            try {
+                context.lookup("X");
+                fail("Name bound and unbound by a batch is bound in store " + store);
+            } catch (NameNotFoundException e) {
+                // expected
+            }
+
+            context.batch().bind("X", "X").unbind("X").bind("X", "Y").commit();
+            assertEquals(context.lookup("X"), "Y");
+            assertEquals(count(context.list("")), 21);
+        }
+    }
+
+    @Test
+    public void testRollbackOnValidationFailure() throws NamingException {
+        for (String store : STORES) {
+            NamingContext context = newContext(store);
+            context.createSubcontext("a");
+            context.bind("a/b", "b");
+            context.bind("c", "c");
+
+            NamingBatch batch = context.batch().rebind("a/b", "changed").unbind("c").bind("a/b", "duplicate");
+            try {
+                batch.commit();
+                fail("Bind of a bound name committed in store " + store);
+            } catch (NameAlreadyBoundException e) {
+                // expected
+            }
+            assertEquals(batch.size(), 0);
+            assertEquals(context.lookup("a/b"), "b", "Partial batch applied in store " + store);
+            assertEquals(context.lookup("c"), "c", "Partial batch applied in store " + store);
+
+            try {
+                context.batch().bind("d", "d").unbind("a/missing").commit();
+                fail("Unbind of an unbound name committed in store " + store);
+            } catch (NameNotFoundException e) {
+                // expected
+            }
+            try {
+                context.lookup("d");
+                fail("Partial batch applied in store " + store);
+            } catch (NameNotFoundException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testAllOrNothingVisibility() throws Exception {
+        for (String store : STORES) {
+            NamingContext context = newContext(store);
+            context.createSubcontext("x");
+            context.createSubcontext("y");
+            context.batch().bind("x/a", 0).bind("y/b", 0).commit();
+
+            AtomicBoolean stop = new AtomicBoolean();
+            AtomicReference<String> failure = new AtomicReference<>();
+            Thread reader = new Thread(() -> {
+                try {
+                    while (!stop.get()) {
+                        int a = (Integer) context.lookup("x/a");
+                        int b = (Integer) context.lookup("y/b");
+                        if (b < a) {
+                            failure.set("Saw x/a = " + a + " after y/b = " + b);
+                            return;
+                        }
+                    }
+                } catch (NamingException e) {
+                    failure.set(e.toString());
+                }
+            });
+            reader.start();
+            try {
+                for (int i = 1; i < 20000; i++) {
+                    context.batch().rebind("y/b", i).rebind("x/a", i).commit();
+                }
+            } finally {
+                stop.set(true);
+                reader.join();
+            }
+            assertNull(failure.get(), "Partially applied batch observed in store " + store);
+        }
+    }
+
+    /**
+     * A lookup made while a batch is being published does not wait for it, and reads the bindings
+     * as they were before the batch until the publication ends.
+     */
+    @Test(timeOut = 10000)
+    public void testLookupsDuringPublication() throws NamingException {
+        for (String store : STORES) {
+            NamingContext context = newContext(store);
+            context.createSubcontext("sub");
+            context.bind("sub/a", "old");
+            context.bind("b", "old");
+            NamingContext sub = (NamingContext) context.lookup("sub");
+            NamingEntry a = sub.bindings.get("a");
+            NamingEntry b = context.bindings.get("b");
+
+            Map<ConcurrentMap<String, NamingEntry>, Map<String, NamingEntry>> previous = new IdentityHashMap<>();
+            previous.put(sub.bindings, new HashMap<>(Collections.singletonMap("a", a)));
+            previous.put(context.bindings, new HashMap<>(Collections.singletonMap("c", null)));
+            previous.get(context.bindings).put("b", b);
+            context.namespace.beginPublication(previous);
+            try {
+                sub.bindings.put("a", new NamingEntry("a", "new", NamingEntry.ENTRY));
+                context.bindings.remove("b");
+                context.bindings.put("c", new NamingEntry("c", "new", NamingEntry.ENTRY));
+
+                assertEquals(context.lookup("sub/a"), "old", "Lookup during publication in store " + store);
+                assertEquals(context.lookup("b"), "old", "Lookup during publication in store " + store);
+                try {
+                    context.lookup("c");
+                    fail("Name bound by the batch being published is bound in store " + store);
+                } catch (NameNotFoundException e) {
+                    // expected
+                }
+            } finally {
+                context.namespace.endPublication();
+            }
+            assertEquals(context.lookup("sub/a"), "new");
+            assertEquals(context.lookup("c"), "new");
+            try {
+                context.lookup("b");
+                fail("Name unbound by the batch is bound in store " + store);
+            } catch (NameNotFoundException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Subcontexts returned by lookups expose batches through the exported interface.
+     */
+    @Test
+    public void testBatchThroughLookedUpContext() throws NamingException {
+        NamingContext context = newContext(null);
+        context.createSubcontext("sub");
+
+        ExtendedContext sub = (ExtendedContext) context.lookup("sub");
+        sub.batch().bind("a", "a").bind("b", "b").commit();
+
+        assertEquals(context.lookup("sub/a"), "a");
+        assertEquals(context.lookup("sub/b"), "b");
+    }
+
+    /**
+     * Referenceables are turned into references before the batch locks out other updates.
+     */
+    @Test
+    public void testReferencesObtainedOutsideTheLock() throws NamingException {
+        for (String store : STORES) {
+            NamingContext context = newContext(store);
+            ReentrantReadWriteLock.WriteLock lock = (ReentrantReadWriteLock.WriteLock) context.namespace.batchLock();
+            AtomicBoolean locked = new AtomicBoolean();
+            Referenceable referenceable = () -> {
+                locked.set(lock.isHeldByCurrentThread());
+                return new Reference(String.class.getName());
+            };
+
+            context.batch().bind("a", referenceable).commit();
+
+            assertFalse(locked.get(), "Reference obtained under the batch lock in store " + store);
+            assertTrue(context.lookup("a") instanceof Reference);
+        }
+    }
+
+    /**
+     * A listing of a context backed by a snapshot store sees either none or all of a batch.
+     */
+    @Test(timeOut = 30000)
+    public void testSnapshotListingsSeeWholeBatches() throws Exception {
+        NamingContext context = newContext(Constants.SNAPSHOT_BINDINGS);
+        for (int i = 0; i < 10; i++) {
+            context.bind("k" + i, 0);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int version = 1; version <= 2000; version++) {
+                    NamingBatch batch = context.batch();
+                    for (int i = 0; i < 10; i++) {
+                        batch.rebind("k" + i, version);
+                    }
+                    batch.commit();
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            } finally {
+                done.set(true);
+            }
+        });
+        writer.start();
+        while (!done.get()) {
+            NamingEnumeration<Binding> bindings = context.listBindings("");
+            Object version = null;
+            int count = 0;
+            while (bindings.hasMore()) {
+                Object value = bindings.next().getObject();
+                if (version == null) {
+                    version = value;
+                }
+                assertEquals(value, version, "Listing saw part of a batch");
+                count++;
+            }
+            assertEquals(count, 10);
+        }
+        writer.join();
+        assertNull(failure.get());
+    }
+
+    private static int count(NamingEnumeration<?> enumeration) throws NamingException {
+        int count = 0;
+        while (enumeration.hasMore()) {
+            enumeration.next();
+            count++;
+        }
+        return count;
+    }
+}
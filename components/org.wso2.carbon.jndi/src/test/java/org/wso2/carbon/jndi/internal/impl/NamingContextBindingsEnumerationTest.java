@@ -0,0 +1,197 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.jndi.internal.Constants;
+import org.wso2.carbon.jndi.internal.util.UncheckedNamingException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+
+import javax.naming.Binding;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.Reference;
+import javax.naming.StringRefAddr;
+import javax.naming.spi.ObjectFactory;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class NamingContextBindingsEnumerationTest {
+
+    @Test
+    public void testEagerResolutionFailsInNext() throws NamingException {
+        assertFailsInNext(context("eager"));
+
+        NamingEnumeration<Binding> bindings = context("eager").listBindings("");
+        int failed = 0;
+        while (bindings.hasMoreElements()) {
+            try {
+                assertEquals(bindings.nextElement().getObject(), "ok");
+            } catch (UncheckedNamingException e) {
+                assertEquals(e.getCause().getMessage(), "broken");
+                failed++;
+            }
+        }
+        assertEquals(failed, 1);
+    }
+
+    @Test
+    public void testLazyResolutionFailsInGetObject() throws NamingException {
+        NamingEnumeration<Binding> bindings = context("lazy").listBindings("");
+        Binding first = bindings.next();
+        Binding second = bindings.next();
+        assertFalse(bindings.hasMore());
+        Binding ok = first.getName().equals("ok") ? first : second;
+        Binding broken = ok == first ? second : first;
+        assertEquals(broken.getName(), "broken");
+        assertEquals(ok.getObject(), "ok");
+        for (int i = 0; i < 2; i++) {
+            try {
+                broken.getObject();
+                fail("Failed reference resolved");
+            } catch (UncheckedNamingException e) {
+                assertEquals(e.getCause().getMessage(), "broken");
+            }
+        }
+    }
+
+    @Test
+    public void testParallelResolutionOnResolverThreads() throws NamingException {
+        Hashtable<String, Object> env = new Hashtable<>();
+        env.put(Constants.LIST_BINDINGS_RESOLUTION, "parallel");
+        NamingContext context = new NamingContext(env, "root");
+        int count = NamingContextBindingsEnumeration.RESOLVER_THREADS * 40;
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String name = String.format("name%05d", i);
+            context.bind(name, reference("thread"));
+            names.add(name);
+        }
+        context.bind("plain", "plain");
+        names.add("plain");
+
+        List<String> listed = new ArrayList<>();
+        NamingEnumeration<Binding> bindings = context.listBindings("");
+        int resolved = 0;
+        while (bindings.hasMore()) {
+            Binding binding = bindings.next();
+            listed.add(binding.getName());
+            if (!binding.getName().equals("plain")) {
+                String thread = (String) binding.getObject();
+                assertTrue(thread.equals("carbon-jndi-resolver") || thread.equals(Thread.currentThread().getName()),
+                        "Resolved on " + thread);
+                resolved++;
+            } else {
+                assertEquals(binding.getObject(), "plain");
+            }
+        }
+        assertEquals(resolved, count);
+        listed.sort(null);
+        names.sort(null);
+        assertEquals(listed, names);
+
+        // A failure is thrown by next() for its own binding only
+        context.rebind("name00000", reference("fail"));
+        bindings = context.listBindings("");
+        int failed = 0;
+        int returned = 0;
+        while (bindings.hasMore()) {
+            try {
+                bindings.next();
+                returned++;
+            } catch (NamingException e) {
+                assertEquals(e.getMessage(), "broken");
+                failed++;
+            }
+        }
+        assertEquals(failed, 1);
+        assertEquals(returned, count);
+        bindings.close();
+    }
+
+    @Test
+    public void testParallelResolutionAfterShutdown() throws NamingException {
+        NamingContextBindingsEnumeration.shutdownResolver();
+        assertFailsInNext(context("parallel"));
+        NamingContextBindingsEnumeration.shutdownResolver();
+        assertFailsInNext(context("parallel"));
+    }
+
+    /**
+     * Enumerates a context made by {@link #context(String)}, checking that next() throws for the
+     * broken binding and returns the other.
+     */
+    private static void assertFailsInNext(NamingContext context) throws NamingException {
+        NamingEnumeration<Binding> bindings = context.listBindings("");
+        int failed = 0;
+        List<Object> objects = new ArrayList<>();
+        while (bindings.hasMore()) {
+            try {
+                objects.add(bindings.next().getObject());
+            } catch (NamingException e) {
+                assertEquals(e.getMessage(), "broken");
+                failed++;
+            }
+        }
+        assertEquals(failed, 1);
+        assertEquals(objects, Collections.singletonList("ok"));
+    }
+
+    private static NamingContext context(String resolution) throws NamingException {
+        Hashtable<String, Object> env = new Hashtable<>();
+        env.put(Constants.LIST_BINDINGS_RESOLUTION, resolution);
+        NamingContext context = new NamingContext(env, "root");
+        context.bind("ok", reference("ok"));
+        context.bind("broken", reference("fail"));
+        return context;
+    }
+
+    private static Reference reference(String mode) {
+        Reference reference = new Reference(String.class.getName(), TestFactory.class.getName(), null);
+        reference.add(new StringRefAddr("mode", mode));
+        return reference;
+    }
+
+    /**
+     * Returns "ok" or the name of the resolving thread, or fails, as the reference asks.
+     */
+    public static class TestFactory implements ObjectFactory {
+
+        @Override
+        public Object getObjectInstance(Object obj, Name name, Context nameCtx, Hashtable<?, ?> environment)
+                throws NamingException {
+            String mode = (String) ((Reference) obj).get("mode").getContent();
+            switch (mode) {
+                case "thread":
+                    return Thread.currentThread().getName();
+                case "fail":
+                    throw new NamingException("broken");
+                default:
+                    return mode;
+            }
+        }
+    }
+}
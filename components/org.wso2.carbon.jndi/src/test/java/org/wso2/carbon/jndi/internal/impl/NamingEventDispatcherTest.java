@@ -0,0 +1,105 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.event.EventContext;
+import javax.naming.event.NamespaceChangeListener;
+import javax.naming.event.NamingEvent;
+import javax.naming.event.NamingExceptionEvent;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+public class NamingEventDispatcherTest {
+
+    private static final String DISPATCHER_THREAD = "carbon-jndi-events";
+
+    @Test
+    public void testCloseRemovesListeners() throws Exception {
+        NamingContext root = new NamingContext(new Hashtable<>(), "root");
+        EventContext view = (EventContext) root.lookup("");
+        BlockingQueue<NamingEvent> events = new LinkedBlockingQueue<>();
+
+        Set<Thread> before = dispatcherThreads();
+        view.addNamingListener("", EventContext.ONELEVEL_SCOPE, new Listener(events));
+        Set<Thread> started = dispatcherThreads();
+        started.removeAll(before);
+        assertEquals(started.size(), 1, "Dispatcher threads started");
+        Thread dispatcher = started.iterator().next();
+
+        root.bind("first", "first");
+        NamingEvent event = events.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals(event.getNewBinding().getName(), "first");
+
+        view.close();
+        dispatcher.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(dispatcher.isAlive(), "Dispatcher thread still running after its last listener was removed");
+
+        root.bind("second", "second");
+        assertNull(events.poll(200, TimeUnit.MILLISECONDS), "Listener notified after its context was closed");
+    }
+
+    private static Set<Thread> dispatcherThreads() {
+        Set<Thread> threads = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (DISPATCHER_THREAD.equals(thread.getName())) {
+                threads.add(thread);
+            }
+        }
+        return threads;
+    }
+
+    private static final class Listener implements NamespaceChangeListener {
+
+        private final BlockingQueue<NamingEvent> events;
+
+        private Listener(BlockingQueue<NamingEvent> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void objectAdded(NamingEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void objectRemoved(NamingEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void objectRenamed(NamingEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void namingExceptionThrown(NamingExceptionEvent event) {
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.jndi.ExtendedContext;
+import org.wso2.carbon.jndi.PagedNamingEnumeration;
+import org.wso2.carbon.jndi.internal.Constants;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.naming.Binding;
+import javax.naming.NameClassPair;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class PagingTest {
+
+    private static final String[] STORES = {null, Constants.SNAPSHOT_BINDINGS, Constants.ATOM_BINDINGS};
+
+    private static final int BINDINGS = 25;
+
+    @Test
+    public void testStandardEnumerationsAreNotPaged() throws NamingException {
+        for (String store : STORES) {
+            NamingContext root = context(store);
+            assertEquals(names(root.list("sub")).size(), BINDINGS, "list of " + store);
+            assertEquals(names(root.listBindings("sub")).size(), BINDINGS, "listBindings of " + store);
+        }
+    }
+
+    @Test
+    public void testPagesCoverTheContext() throws NamingException {
+        for (String store : STORES) {
+            // Paging is reached through the exported interface
+            ExtendedContext root = context(store);
+
+            Set<String> listed = new TreeSet<>();
+            int pages = 0;
+            PagedNamingEnumeration<NameClassPair> page = root.listPage("sub", 10);
+            while (true) {
+                List<String> names = names(page);
+                assertTrue(names.size() <= 10, "Page of " + names.size() + " bindings");
+                for (String name : names) {
+                    assertTrue(listed.add(name), name + " listed twice");
+                }
+                pages++;
+                if (!page.hasNextPage()) {
+                    break;
+                }
+                page = page.nextPage();
+            }
+            assertEquals(pages, 3, "Pages of " + store);
+            assertEquals(listed, expected());
+
+            listed.clear();
+            PagedNamingEnumeration<Binding> bindings = root.listBindingsPage("sub", 7);
+            while (true) {
+                while (bindings.hasMore()) {
+                    Binding binding = bindings.next();
+                    assertEquals(binding.getObject(), binding.getName());
+                    assertTrue(listed.add(binding.getName()));
+                }
+                if (!bindings.hasNextPage()) {
+                    break;
+                }
+                bindings = bindings.nextPage();
+            }
+            assertEquals(listed, expected());
+        }
+    }
+
+    @Test
+    public void testLastPageEndsTheIteration() throws NamingException {
+        NamingContext root = context(null);
+        NamingContextEnumeration page = root.listPage("sub", BINDINGS);
+        assertEquals(names(page).size(), BINDINGS);
+        assertFalse(page.hasNextPage());
+        assertFalse(page.nextPage().hasMore());
+    }
+
+    @Test
+    public void testInvalidPageSize() throws NamingException {
+        NamingContext root = context(null);
+        try {
+            root.listPage("sub", 0);
+            fail("Empty pages accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static NamingContext context(String store) throws NamingException {
+        Hashtable<String, Object> env = new Hashtable<>();
+        if (store != null) {
+            env.put(store, "true");
+        }
+        NamingContext root = new NamingContext(env, "root");
+        root.createSubcontext("sub");
+        for (String name : expected()) {
+            root.bind("sub/" + name, name);
+        }
+        return root;
+    }
+
+    private static Set<String> expected() {
+        Set<String> names = new TreeSet<>();
+        for (int i = 0; i < BINDINGS; i++) {
+            names.add("name" + i);
+        }
+        return names;
+    }
+
+    private static List<String> names(NamingEnumeration<? extends NameClassPair> enumeration)
+            throws NamingException {
+        List<String> names = new ArrayList<>();
+        while (enumeration.hasMore()) {
+            names.add(enumeration.next().getName());
+        }
+        return names;
+    }
+}
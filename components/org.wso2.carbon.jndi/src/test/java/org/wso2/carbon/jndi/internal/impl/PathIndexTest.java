@@ -0,0 +1,154 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.jndi.internal.Constants;
+
+import java.util.Hashtable;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+public class PathIndexTest {
+
+    @Test
+    public void testChangesKeepUnrelatedNames() throws NamingException {
+        NamingContext root = root();
+        root.lookup("a/b/x");
+        root.lookup("c/d/y");
+        assertUnbound(root, "c/d/missing");
+        assertEquals(root.pathIndex.size(), 3);
+
+        // Changes elsewhere in the namespace leave the indexed names in place
+        root.bind("c/d/z", "z");
+        root.bind("e", "e");
+        root.unbind("e");
+        assertNotNull(root.pathIndex.get("a/b/x"));
+        assertNotNull(root.pathIndex.get("c/d/y"));
+        assertNotNull(root.pathIndex.get("c/d/missing"));
+        assertEquals(root.lookup("a/b/x"), "x");
+
+        root.bind("c/d/missing", "found");
+        assertNull(root.pathIndex.get("c/d/missing"));
+        assertNotNull(root.pathIndex.get("c/d/y"));
+    }
+
+    @Test
+    public void testUnrelatedChangesKeepLookupsInFlight() throws NamingException {
+        NamingContext root = root();
+        root.lookup("a/b/x");
+        PathIndex.Resolved x = root.pathIndex.get("a/b/x");
+
+        // A lookup which was overtaken by a change elsewhere still stores its result
+        long stamp = root.pathIndex.stamp("a/b/x");
+        root.bind("c/d/z", "z");
+        root.pathIndex.put("a/b/x", new PathIndex.Resolved(x.context, x.entry, stamp));
+        assertNotNull(root.pathIndex.get("a/b/x"));
+
+        // but never returns one which was overtaken by a change to the name itself
+        stamp = root.pathIndex.stamp("a/b/x");
+        root.rebind("a/b/x", "changed");
+        root.pathIndex.put("a/b/x", new PathIndex.Resolved(x.context, x.entry, stamp));
+        assertNull(root.pathIndex.get("a/b/x"));
+        assertEquals(root.lookup("a/b/x"), "changed");
+    }
+
+    @Test
+    public void testChangedNamesAreLookedUpAgain() throws NamingException {
+        NamingContext root = root();
+        assertEquals(root.lookup("a/b/x"), "x");
+        root.rebind("a/b/x", "changed");
+        assertEquals(root.lookup("a/b/x"), "changed");
+
+        // A miss is dropped once the name is bound
+        assertUnbound(root, "a/b/later");
+        root.bind("a/b/later", "later");
+        assertEquals(root.lookup("a/b/later"), "later");
+
+        // and a hit once a context it passes through is removed
+        root.lookup("c/d/y");
+        root.unbind("c/d/y");
+        root.destroySubcontext("c/d");
+        assertUnbound(root, "c/d/y");
+        root.createSubcontext("c/d").bind("y", "again");
+        assertEquals(root.lookup("c/d/y"), "again");
+    }
+
+    @Test
+    public void testRenameMovesNames() throws NamingException {
+        NamingContext root = root();
+        assertEquals(root.lookup("a/b/x"), "x");
+        root.rename("a", "moved");
+        assertUnbound(root, "a/b/x");
+        assertEquals(root.lookup("moved/b/x"), "x");
+
+        root.rename("moved/b", "a");
+        assertUnbound(root, "moved/b/x");
+        assertEquals(root.lookup("a/x"), "x");
+    }
+
+    @Test
+    public void testIndexesOfSubcontexts() throws NamingException {
+        NamingContext root = root();
+        NamingContext a = (NamingContext) root.lookup("a");
+        assertEquals(a.lookup("b/x"), "x");
+        assertNotNull(a.pathIndex.get("b/x"));
+
+        // A change below a subcontext reaches the index of each context above it
+        root.rebind("a/b/x", "changed");
+        assertNull(a.pathIndex.get("b/x"));
+        assertEquals(a.lookup("b/x"), "changed");
+        assertEquals(root.lookup("a/b/x"), "changed");
+    }
+
+    @Test
+    public void testNamesThroughAliasesAreNotIndexed() throws NamingException {
+        NamingContext root = root();
+        root.bind("alias", root.lookup("a/b"));
+        assertEquals(root.lookup("alias/x"), "x");
+        assertNull(root.pathIndex.get("alias/x"));
+
+        root.rebind("a/b/x", "changed");
+        assertEquals(root.lookup("alias/x"), "changed");
+    }
+
+    private static NamingContext root() throws NamingException {
+        Hashtable<String, Object> env = new Hashtable<>();
+        env.put(Constants.PATH_INDEX, "true");
+        NamingContext root = new NamingContext(env, "root");
+        root.createSubcontext("a");
+        root.createSubcontext("a/b").bind("x", "x");
+        root.createSubcontext("c");
+        root.createSubcontext("c/d").bind("y", "y");
+        return root;
+    }
+
+    private static void assertUnbound(NamingContext context, String name) throws NamingException {
+        try {
+            context.lookup(name);
+            fail(name + " is bound");
+        } catch (NameNotFoundException e) {
+            // expected
+        }
+    }
+}
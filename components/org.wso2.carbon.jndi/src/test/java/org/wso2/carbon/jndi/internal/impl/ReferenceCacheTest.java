@@ -0,0 +1,151 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.jndi.internal.Constants;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NamingException;
+import javax.naming.Reference;
+import javax.naming.StringRefAddr;
+import javax.naming.spi.ObjectFactory;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class ReferenceCacheTest {
+
+    @Test
+    public void testCachedReferenceIsCreatedOnce() throws Exception {
+        NamingContext context = context(true);
+        context.bind("cached", reference("counted"));
+        CountingFactory.CREATED.set(0);
+
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Object> results = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    Object result = context.lookup("cached");
+                    synchronized (results) {
+                        results.add(result);
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertTrue(failures.isEmpty(), failures.toString());
+        assertEquals(CountingFactory.CREATED.get(), 1);
+        assertEquals(results.size(), threads);
+        for (Object result : results) {
+            assertSame(result, results.get(0));
+        }
+
+        // A rebind drops the cached object with its binding
+        context.rebind("cached", reference("counted"));
+        assertNotSame(context.lookup("cached"), results.get(0));
+        assertSame(context.lookup("cached"), context.lookup("cached"));
+        assertEquals(CountingFactory.CREATED.get(), 2);
+    }
+
+    @Test
+    public void testUncachedReferenceIsCreatedOnEachLookup() throws NamingException {
+        NamingContext context = context(false);
+        context.bind("uncached", reference("counted"));
+        CountingFactory.CREATED.set(0);
+        assertNotSame(context.lookup("uncached"), context.lookup("uncached"));
+        assertEquals(CountingFactory.CREATED.get(), 2);
+
+        // unless the reference asks for it
+        Reference reference = reference("counted");
+        reference.add(new StringRefAddr(Constants.CACHE_REFERENCE_ADDRESS, "true"));
+        context.bind("asked", reference);
+        assertSame(context.lookup("asked"), context.lookup("asked"));
+        assertEquals(CountingFactory.CREATED.get(), 3);
+    }
+
+    @Test
+    public void testFailureIsNotCached() throws NamingException {
+        NamingContext context = context(true);
+        context.bind("broken", reference("fail"));
+        for (int i = 0; i < 2; i++) {
+            try {
+                context.lookup("broken");
+                fail("Failed reference resolved");
+            } catch (NamingException e) {
+                assertEquals(e.getMessage(), "broken");
+            }
+        }
+    }
+
+    private static NamingContext context(boolean cache) throws NamingException {
+        Hashtable<String, Object> env = new Hashtable<>();
+        if (cache) {
+            env.put(Constants.CACHE_REFERENCES, "true");
+        }
+        return new NamingContext(env, "root");
+    }
+
+    private static Reference reference(String mode) {
+        Reference reference = new Reference(Object.class.getName(), CountingFactory.class.getName(), null);
+        reference.add(new StringRefAddr("mode", mode));
+        return reference;
+    }
+
+    /**
+     * Creates a new object for each call, slowly enough for concurrent lookups to overlap, or fails.
+     */
+    public static class CountingFactory implements ObjectFactory {
+
+        static final AtomicInteger CREATED = new AtomicInteger();
+
+        @Override
+        public Object getObjectInstance(Object obj, Name name, Context nameCtx, Hashtable<?, ?> environment)
+                throws Exception {
+            if ("fail".equals(((Reference) obj).get("mode").getContent())) {
+                throw new NamingException("broken");
+            }
+            CREATED.incrementAndGet();
+            Thread.sleep(50);
+            return new Object();
+        }
+    }
+}
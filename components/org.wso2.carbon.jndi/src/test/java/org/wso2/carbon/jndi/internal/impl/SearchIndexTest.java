@@ -0,0 +1,247 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.jndi.ExtendedContext;
+import org.wso2.carbon.jndi.internal.Constants;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.naming.Binding;
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class SearchIndexTest {
+
+    @Test
+    public void testSearches() throws NamingException {
+        NamingContext root = root();
+        assertEquals(names(root.searchPrefix("app")), Arrays.asList("app", "app/db", "app/db/main",
+                "app/db/test", "app/queue", "apple"));
+        assertEquals(names(root.searchPrefix("app/")), Arrays.asList("app/db", "app/db/main", "app/db/test",
+                "app/queue"));
+        assertEquals(names(root.searchRange("app/db", "app/db/test")), Arrays.asList("app/db", "app/db/main"));
+        assertEquals(names(root.searchRange("b", "a")), Arrays.asList());
+        assertEquals(names(root.searchGlob("app/*")), Arrays.asList("app/db", "app/queue"));
+        assertEquals(names(root.searchGlob("app/**")), Arrays.asList("app/db", "app/db/main", "app/db/test",
+                "app/queue"));
+        assertEquals(names(root.searchGlob("app/db/?ain")), Arrays.asList("app/db/main"));
+
+        // Names are relative to the searched context, reached through the exported interface
+        ExtendedContext app = (ExtendedContext) root.lookup("app");
+        assertEquals(names(app.searchPrefix("db/")), Arrays.asList("db/main", "db/test"));
+        assertEquals(names(app.searchGlob("*")), Arrays.asList("db", "queue"));
+        assertEquals(app.searchPrefix("db/main").findFirst().get().getObject(), "main");
+    }
+
+    @Test
+    public void testSearchesNeedTheIndex() throws NamingException {
+        NamingContext root = new NamingContext(new Hashtable<>(), "root");
+        try {
+            root.searchPrefix("");
+            fail("Searched without an index");
+        } catch (OperationNotSupportedException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testIndexFollowsChanges() throws NamingException {
+        NamingContext root = root();
+        assertIndexed(root);
+
+        root.bind("app/db/new", "new");
+        root.rebind("app/db/main", "changed");
+        root.unbind("apple");
+        assertIndexed(root);
+        assertEquals(root.searchPrefix("app/db/main").findFirst().get().getObject(), "changed");
+
+        // Aliases of a subcontext are indexed, but not walked
+        root.bind("alias", root.lookup("app/db"));
+        assertIndexed(root);
+        assertEquals(names(root.searchPrefix("alias")), Arrays.asList("alias"));
+
+        // A renamed subcontext takes its subtree along
+        root.rename("app/db", "db");
+        assertIndexed(root);
+        assertEquals(names(root.searchPrefix("db")), Arrays.asList("db", "db/main", "db/new", "db/test"));
+        assertEquals(names(root.searchPrefix("app/")), Arrays.asList("app/queue"));
+
+        // and so does a destroyed one
+        root.unbind("db/main");
+        root.unbind("db/new");
+        root.unbind("db/test");
+        root.unbind("alias");
+        root.destroySubcontext("db");
+        assertIndexed(root);
+        assertEquals(names(root.searchPrefix("db")), Arrays.asList());
+
+        root.createSubcontext("db").bind("again", "again");
+        assertIndexed(root);
+        assertEquals(names(root.searchPrefix("db")), Arrays.asList("db", "db/again"));
+    }
+
+    @Test
+    public void testIndexOfRestoredSnapshot() throws NamingException, IOException {
+        Path directory = Files.createTempDirectory("search-index");
+        Path file = directory.resolve("snapshot");
+        try {
+            NamespaceSnapshot.write(root(), file);
+            NamingContext restored = NamespaceSnapshot.restore(environment(), "root", file);
+            assertIndexed(restored);
+            assertEquals(names(restored.searchPrefix("app/db/")), Arrays.asList("app/db/main", "app/db/test"));
+
+            restored.rename("app/db", "db");
+            restored.bind("db/new", "new");
+            assertIndexed(restored);
+            assertEquals(names(restored.searchPrefix("db/")), Arrays.asList("db/main", "db/new", "db/test"));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testRestoredContextsDecodedWhenSearched() throws NamingException, IOException {
+        Path directory = Files.createTempDirectory("search-index");
+        Path file = directory.resolve("snapshot");
+        try {
+            NamespaceSnapshot.write(root(), file);
+            NamingContext restored = NamespaceSnapshot.restore(environment(), "root", file);
+            MappedBindings app = (MappedBindings) ((NamingContext) restored.bindings.get("app").value).bindings;
+            assertFalse(app.isDecoded(), "Subcontext decoded by the restore");
+
+            assertEquals(names(restored.searchPrefix("apple")), Arrays.asList("apple"));
+            assertFalse(app.isDecoded(), "Subcontext decoded by a search which cannot match it");
+
+            assertEquals(names(restored.searchRange("app/db/", "app/db/t")), Arrays.asList("app/db/main"));
+            assertTrue(app.isDecoded());
+            assertIndexed(restored);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testConcurrentChanges() throws Exception {
+        NamingContext root = root();
+        int threads = 4;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String name = "t" + t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 200; i++) {
+                        root.createSubcontext(name).bind("leaf", i);
+                        root.rename(name, name + "-moved");
+                        root.unbind(name + "-moved/leaf");
+                        root.destroySubcontext(name + "-moved");
+                    }
+                    root.createSubcontext(name).bind("leaf", "last");
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertTrue(failures.isEmpty(), failures.toString());
+        assertIndexed(root);
+        assertEquals(names(root.searchGlob("t?/leaf")), Arrays.asList("t0/leaf", "t1/leaf", "t2/leaf", "t3/leaf"));
+    }
+
+    /**
+     * Checks that the search index holds exactly the bindings found by walking the namespace.
+     */
+    private static void assertIndexed(NamingContext root) throws NamingException {
+        Map<String, Object> walked = new TreeMap<>();
+        walk(root, "", walked);
+        Map<String, Object> indexed = new TreeMap<>();
+        root.searchPrefix("").forEach(entry -> indexed.put(entry.getName(), entry.getObject()));
+        assertEquals(indexed, walked);
+        assertEquals(root.namespace.searchIndex().size(), walked.size());
+    }
+
+    /**
+     * Collects the bindings below a context, walking subcontexts only below the name they are
+     * located at.
+     */
+    private static void walk(NamingContext context, String fullName, Map<String, Object> walked) {
+        Iterator<NamingEntry> entries = context.entries();
+        while (entries.hasNext()) {
+            NamingEntry entry = entries.next();
+            String name = ContextLocation.join(fullName, entry.name);
+            walked.put(name, entry.value);
+            if (entry.value instanceof NamingContext
+                    && ((NamingContext) entry.value).location.isAt(context.location, entry.name)) {
+                walk((NamingContext) entry.value, name, walked);
+            }
+        }
+    }
+
+    /**
+     * Binds app/db/main, app/db/test, app/queue and apple.
+     */
+    private static NamingContext root() throws NamingException {
+        NamingContext root = new NamingContext(environment(), "root");
+        root.createSubcontext("app");
+        root.createSubcontext("app/db");
+        root.bind("app/db/main", "main");
+        root.bind("app/db/test", "test");
+        root.bind("app/queue", "queue");
+        root.bind("apple", "apple");
+        return root;
+    }
+
+    private static Hashtable<String, Object> environment() {
+        Hashtable<String, Object> env = new Hashtable<>();
+        env.put(Constants.SEARCH_INDEX, "true");
+        return env;
+    }
+
+    private static List<String> names(Stream<Binding> results) {
+        return results.map(Binding::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class SnapshotBindingsTest {
+
+    private static NamingEntry entry(String name) {
+        return new NamingEntry(name, name, NamingEntry.ENTRY);
+    }
+
+    @Test
+    public void testMapOperations() {
+        SnapshotBindings bindings = new SnapshotBindings();
+        NamingEntry a = entry("a");
+        NamingEntry b = entry("b");
+
+        assertNull(bindings.put("a", a));
+        assertSame(bindings.putIfAbsent("a", b), a);
+        assertSame(bindings.get("a"), a);
+        assertTrue(bindings.containsKey("a"));
+        assertEquals(bindings.size(), 1);
+
+        assertFalse(bindings.replace("a", b, b));
+        assertTrue(bindings.replace("a", a, b));
+        assertSame(bindings.replace("a", a), b);
+        assertNull(bindings.replace("missing", a));
+        assertFalse(bindings.containsKey("missing"));
+
+        assertFalse(bindings.remove("a", b));
+        assertSame(bindings.remove("a"), a);
+        assertNull(bindings.remove("a"));
+        assertNull(bindings.get("a"));
+        assertTrue(bindings.isEmpty());
+
+        try {
+            bindings.put("a", null);
+            fail("Null entry accepted");
+        } catch (NullPointerException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testIteration() {
+        SnapshotBindings bindings = new SnapshotBindings();
+        Map<String, NamingEntry> expected = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            NamingEntry entry = entry("name" + i);
+            bindings.put(entry.name, entry);
+            expected.put(entry.name, entry);
+        }
+        for (int i = 0; i < 2000; i += 3) {
+            bindings.remove("name" + i);
+            expected.remove("name" + i);
+        }
+        assertEquals(bindings.size(), expected.size());
+        assertEquals(new HashMap<>(bindings), expected);
+
+        // An iterator walks the snapshot it started from, whatever is changed meanwhile
+        Iterator<Map.Entry<String, NamingEntry>> iterator = bindings.entrySet().iterator();
+        bindings.clear();
+        Map<String, NamingEntry> iterated = new HashMap<>();
+        while (iterator.hasNext()) {
+            Map.Entry<String, NamingEntry> binding = iterator.next();
+            iterated.put(binding.getKey(), binding.getValue());
+        }
+        assertEquals(iterated, expected);
+        assertTrue(bindings.isEmpty());
+
+        bindings.putAll(expected);
+        bindings.entrySet().removeIf(binding -> binding.getKey().endsWith("1"));
+        expected.keySet().removeIf(name -> name.endsWith("1"));
+        assertEquals(new HashMap<>(bindings), expected);
+    }
+
+    @Test
+    public void testUpdate() {
+        SnapshotBindings bindings = new SnapshotBindings();
+        bindings.put("kept", entry("kept"));
+        bindings.put("removed", entry("removed"));
+        Map<String, NamingEntry> changes = new LinkedHashMap<>();
+        changes.put("removed", null);
+        changes.put("added", entry("added"));
+        bindings.update(changes);
+        assertEquals(bindings.size(), 2);
+        assertEquals(bindings.get("kept").name, "kept");
+        assertEquals(bindings.get("added").name, "added");
+        assertNull(bindings.get("removed"));
+    }
+
+    /**
+     * Keys made of "Aa" and "BB" all have the same hash code, so they share their path through
+     * every level of the trie and end up in the flat collision nodes past MAX_SHIFT.
+     */
+    @Test
+    public void testHashCollisions() {
+        List<String> keys = colliding(6);
+        assertEquals(keys.size(), 64);
+        for (String key : keys) {
+            assertEquals(key.hashCode(), keys.get(0).hashCode());
+        }
+
+        SnapshotBindings bindings = new SnapshotBindings();
+        bindings.put("other", entry("other"));
+        for (String key : keys) {
+            assertNull(bindings.put(key, entry(key)));
+        }
+        assertEquals(bindings.size(), keys.size() + 1);
+        for (String key : keys) {
+            assertEquals(bindings.get(key).name, key);
+        }
+
+        NamingEntry replacement = entry("replacement");
+        assertEquals(bindings.put(keys.get(4), replacement).name, keys.get(4));
+        assertSame(bindings.get(keys.get(4)), replacement);
+        assertEquals(bindings.size(), keys.size() + 1);
+
+        Map<String, NamingEntry> expected = new HashMap<>(bindings);
+        for (int i = 0; i < keys.size(); i += 2) {
+            assertEquals(bindings.remove(keys.get(i)).name, i == 4 ? "replacement" : keys.get(i));
+            expected.remove(keys.get(i));
+            assertNull(bindings.get(keys.get(i)));
+        }
+        assertEquals(new HashMap<>(bindings), expected);
+
+        // Emptying the collision nodes leaves the rest of the trie intact
+        for (String key : keys) {
+            bindings.remove(key);
+        }
+        assertEquals(bindings.size(), 1);
+        assertEquals(bindings.get("other").name, "other");
+        assertNull(bindings.get(keys.get(1)));
+    }
+
+    /**
+     * @return the 2^n strings made of n blocks of "Aa" or "BB"
+     */
+    private static List<String> colliding(int n) {
+        List<String> keys = new ArrayList<>();
+        keys.add("");
+        for (int i = 0; i < n; i++) {
+            List<String> longer = new ArrayList<>();
+            for (String key : keys) {
+                longer.add(key + "Aa");
+                longer.add(key + "BB");
+            }
+            keys = longer;
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.impl;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.jndi.internal.Constants;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import javax.naming.Binding;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NamingException;
+import javax.naming.Reference;
+import javax.naming.spi.ObjectFactory;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class SubtreeSpliteratorTest {
+
+    private static final String[] STORES = {null, Constants.SNAPSHOT_BINDINGS, Constants.ATOM_BINDINGS};
+
+    @Test
+    public void testDepthLimits() throws NamingException {
+        for (String store : STORES) {
+            NamingContext root = root(store);
+            assertEquals(names(root, 1, ""), set("a", "ab", "x"), "Depth 1 of " + store);
+            assertEquals(names(root, 2, ""), set("a", "a/b", "a/bc", "ab", "ab/y", "x"), "Depth 2 of " + store);
+            assertEquals(names(root, Integer.MAX_VALUE, ""),
+                    set("a", "a/b", "a/b/z", "a/bc", "a/bc/w", "ab", "ab/y", "x"), "All of " + store);
+        }
+        try {
+            root(null).subtreeSpliterator(0, "");
+            fail("Depth 0 accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testPrefixMatchesWholeComponents() throws NamingException {
+        for (String store : STORES) {
+            NamingContext root = root(store);
+            assertEquals(names(root, Integer.MAX_VALUE, "a/b"), set("a/b", "a/b/z"), "a/b of " + store);
+            assertEquals(names(root, Integer.MAX_VALUE, "a"),
+                    set("a", "a/b", "a/b/z", "a/bc", "a/bc/w"), "a of " + store);
+            assertEquals(names(root, 2, "a/b"), set("a/b"), "a/b to depth 2 of " + store);
+            assertEquals(names(root, Integer.MAX_VALUE, "a/b/z"), set("a/b/z"), "a/b/z of " + store);
+            assertEquals(names(root, Integer.MAX_VALUE, "a/"), set(), "a/ of " + store);
+        }
+    }
+
+    @Test
+    public void testParallelStreamMatchesSequential() throws NamingException {
+        for (String store : STORES) {
+            NamingContext root = root(store);
+            for (int i = 0; i < 20; i++) {
+                NamingContext sub = (NamingContext) root.createSubcontext("p" + i);
+                for (int j = 0; j < 20; j++) {
+                    sub.createSubcontext("q" + j).bind("leaf", i * 20 + j);
+                }
+            }
+            Set<String> sequential = root.subtree(Integer.MAX_VALUE, "", false)
+                    .map(Binding::getName).collect(Collectors.toCollection(TreeSet::new));
+            Set<String> parallel = root.subtree(Integer.MAX_VALUE, "", true)
+                    .map(Binding::getName).collect(Collectors.toCollection(TreeSet::new));
+            assertEquals(sequential.size(), 8 + 20 + 20 * 20 * 2);
+            assertEquals(parallel, sequential, "Parallel walk of " + store);
+            assertEquals(root.subtree(Integer.MAX_VALUE, "", true).count(), sequential.size(),
+                    "Bindings returned twice by " + store);
+        }
+    }
+
+    @Test
+    public void testEstimateSizeShrinks() throws NamingException {
+        for (String store : STORES) {
+            NamingContext root = root(store);
+            Spliterator<Map.Entry<String, NamingEntry>> spliterator =
+                    root.subtreeSpliterator(Integer.MAX_VALUE, "");
+            assertEquals(spliterator.estimateSize(), 3, "Bindings of the root of " + store);
+
+            long previous = spliterator.estimateSize();
+            int returned = 0;
+            while (spliterator.tryAdvance(entry -> assertNotNull(entry.getValue()))) {
+                returned++;
+                assertTrue(spliterator.estimateSize() < Long.MAX_VALUE);
+                if (returned == 3) {
+                    // The subcontexts of the root have been found
+                    assertTrue(spliterator.estimateSize() > 0, "Estimate of " + store);
+                }
+                previous = spliterator.estimateSize();
+            }
+            assertEquals(returned, 8);
+            assertEquals(previous, 0);
+            assertEquals(spliterator.estimateSize(), 0);
+
+            // A split hands over the estimate of the subcontexts it takes
+            spliterator = root.subtreeSpliterator(Integer.MAX_VALUE, "");
+            for (int i = 0; i < 3; i++) {
+                spliterator.tryAdvance(entry -> { });
+            }
+            long before = spliterator.estimateSize();
+            Spliterator<Map.Entry<String, NamingEntry>> split = spliterator.trySplit();
+            assertNotNull(split, "Split of " + store);
+            assertTrue(split.estimateSize() > 0);
+            assertTrue(spliterator.estimateSize() < before);
+            assertEquals(split.estimateSize() + spliterator.estimateSize(), before);
+        }
+    }
+
+    @Test
+    public void testBindingsResolveReferencesByFullName() throws NamingException {
+        for (String store : STORES) {
+            NamingContext root = root(store);
+            root.bind("a/b/ref", new Reference(String.class.getName(), NameFactory.class.getName(), null));
+            root.bind("a/with\\/slash", "slash");
+
+            Map<String, Object> objects = new HashMap<>();
+            root.subtree(Integer.MAX_VALUE, "a", false).forEach(binding ->
+                    objects.put(binding.getName(), binding.getObject()));
+
+            assertEquals(objects.get("a/b/ref"), "ref", "Reference resolved in " + store);
+            assertEquals(objects.get("a/with\\/slash"), "slash", "Escaped name in " + store);
+            assertTrue(objects.get("a/b") instanceof NamingContext);
+        }
+    }
+
+    /**
+     * Binds x, ab/y, a/b/z and a/bc/w.
+     */
+    private static NamingContext root(String store) throws NamingException {
+        Hashtable<String, Object> env = new Hashtable<>();
+        if (store != null) {
+            env.put(store, "true");
+        }
+        NamingContext root = new NamingContext(env, "root");
+        root.bind("x", "x");
+        root.createSubcontext("ab").bind("y", "y");
+        root.createSubcontext("a");
+        root.createSubcontext("a/b").bind("z", "z");
+        root.createSubcontext("a/bc").bind("w", "w");
+        return root;
+    }
+
+    private static Set<String> names(NamingContext context, int maxDepth, String prefix) {
+        return context.subtree(maxDepth, prefix, false).map(Binding::getName)
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    /**
+     * Creates the last component of the name of a reference.
+     */
+    public static class NameFactory implements ObjectFactory {
+
+        @Override
+        public Object getObjectInstance(Object obj, Name name, Context nameCtx, Hashtable<?, ?> environment) {
+            return name.get(name.size() - 1);
+        }
+    }
+
+    private static Set<String> set(String... names) {
+        return new TreeSet<>(Arrays.asList(names));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.util;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.naming.CompositeName;
+import javax.naming.InvalidNameException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class NameCacheTest {
+
+    @BeforeMethod
+    public void clearCache() {
+        NameCache.clear();
+    }
+
+    @Test
+    public void testHitAndMissCounts() throws InvalidNameException {
+        ImmutableCompositeName name = NameCache.get("a/b/c");
+        assertEquals(NameCache.getMissCount(), 1);
+        assertEquals(NameCache.getHitCount(), 0);
+
+        assertSame(NameCache.get("a/b/c"), name);
+        assertSame(NameCache.get("a/b/c"), name);
+        NameCache.get("a/b");
+        assertEquals(NameCache.getHitCount(), 2);
+        assertEquals(NameCache.getMissCount(), 2);
+        assertEquals(NameCache.size(), 2);
+
+        assertEquals(name, new CompositeName("a/b/c"));
+        assertEquals(name.toString(), "a/b/c");
+
+        NameCache.clear();
+        assertEquals(NameCache.getHitCount(), 0);
+        assertEquals(NameCache.getMissCount(), 0);
+        assertEquals(NameCache.size(), 0);
+    }
+
+    @Test
+    public void testEvictionKeepsNamesInUse() throws InvalidNameException {
+        ImmutableCompositeName hot = NameCache.get("hot");
+        for (int i = 0; i < NameCache.MAX_SIZE * 3; i++) {
+            NameCache.get("cold" + i);
+            if (i % 100 == 0) {
+                NameCache.get("hot");
+            }
+            assertTrue(NameCache.size() <= NameCache.MAX_SIZE, "Cache grew past its bound");
+        }
+
+        // Only part of the cache is evicted at a time, and the name in use is never parsed again
+        assertTrue(NameCache.size() > NameCache.MAX_SIZE / 2, "Cache emptied on eviction");
+        long misses = NameCache.getMissCount();
+        assertSame(NameCache.get("hot"), hot);
+        assertEquals(NameCache.getMissCount(), misses);
+        assertEquals(misses, NameCache.MAX_SIZE * 3 + 1);
+    }
+}
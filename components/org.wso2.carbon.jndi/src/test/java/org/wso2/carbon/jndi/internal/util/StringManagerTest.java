@@ -0,0 +1,108 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.jndi.internal.util;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.jndi.internal.Constants;
+
+import java.text.MessageFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Compares the messages of {@link StringManager#getString(String, Object...)} with those of a
+ * MessageFormat set up as StringManager used to before it compiled its templates. A key which is
+ * not in the bundle is used as the pattern itself.
+ */
+public class StringManagerTest {
+
+    private static final StringManager SM = StringManager.getManager(Constants.PACKAGE);
+
+    private static final Locale LOCALE =
+            ResourceBundle.getBundle(Constants.PACKAGE + ".LocalStrings").getLocale();
+
+    @Test
+    public void testPlainPatterns() {
+        assertFormat("no arguments");
+        assertFormat("{0}", "only");
+        assertFormat("a {0} b {1} c", "x", "y");
+        assertFormat("{1} before {0}", "x", "y");
+        assertFormat("{0} twice {0}", "x");
+        assertFormat("{0} of {1}", null, new Object() {
+            @Override
+            public String toString() {
+                return "object";
+            }
+        });
+        assertFormat("{10}", "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10");
+    }
+
+    @Test
+    public void testQuotedPatterns() {
+        assertFormat("It''s {0}", "x");
+        assertFormat("'{0}' is {0}", "x");
+        assertFormat("'quoted '' text' {0}", "x");
+        assertFormat("{0}''{1}", "x", "y");
+        assertFormat("unterminated '{0}", "x");
+    }
+
+    @Test
+    public void testTypedPatterns() {
+        assertFormat("{0,number}", 1234567.891);
+        assertFormat("{0,number,integer} items", 42);
+        assertFormat("{0} of {1,number,#.##}", "x", 3.14159);
+        assertFormat("{0,choice,0#none|1#one|1<many}", 2);
+    }
+
+    @Test
+    public void testLocalizedArguments() {
+        // Plain patterns still format numbers and dates for the locale
+        assertFormat("{0} bindings", 1234567);
+        assertFormat("{0} and {1}", "x", 0.5);
+        assertFormat("at {0}", new Date(0));
+    }
+
+    @Test
+    public void testMissingArguments() {
+        assertFormat("{0} and {1}", "x");
+        assertFormat("{0}");
+        assertFormat("{2} {0}", "x", "y");
+        assertEquals(SM.getString("{0} and {1}", (Object[]) null), format("{0} and {1}", (Object[]) null));
+    }
+
+    @Test
+    public void testBundlePatterns() {
+        String pattern = SM.getString("namingContext.invalidPageSize");
+        assertEquals(SM.getString("namingContext.invalidPageSize", 0), format(pattern, 0));
+        assertEquals(SM.getString("namingContext.invalidPageSize", "x"), format(pattern, "x"));
+    }
+
+    private static void assertFormat(String pattern, Object... args) {
+        // The first call compiles the template and the second one reuses it
+        assertEquals(SM.getString(pattern, args), format(pattern, args), pattern);
+        assertEquals(SM.getString(pattern, args), format(pattern, args), pattern);
+    }
+
+    private static String format(String pattern, Object... args) {
+        MessageFormat format = new MessageFormat(pattern);
+        format.setLocale(LOCALE);
+        return format.format(args, new StringBuffer(), null).toString();
+    }
+}
@@ -26,6 +26,8 @@ import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.jndi.JNDIContextManager;
+import org.testng.Reporter;
+import org.testng.SkipException;
 import org.testng.annotations.Listeners;
 import org.testng.annotations.Test;
 import org.wso2.carbon.container.CarbonContainerFactory;
@@ -43,22 +45,42 @@ import org.wso2.carbon.jndi.osgi.services.impl.FooServiceImpl2;
 import org.wso2.carbon.jndi.osgi.util.DummyBundleClassLoader;
 import org.wso2.carbon.kernel.CarbonServerInfo;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import javax.inject.Inject;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.naming.Binding;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.InvalidNameException;
+import javax.naming.LinkRef;
 import javax.naming.NameClassPair;
 import javax.naming.NameNotFoundException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.OperationNotSupportedException;
+import javax.naming.event.EventContext;
+import javax.naming.event.NamespaceChangeListener;
+import javax.naming.event.NamingEvent;
+import javax.naming.event.NamingExceptionEvent;
 import javax.naming.spi.InitialContextFactory;
 import javax.naming.spi.InitialContextFactoryBuilder;
 
@@ -734,4 +756,309 @@ public class JNDITest {
 
         context.lookup("osgi:servicelist/"); //services is an invalid sub-context
     }
+
+    /**
+     * In this test lookups are performed from 1 to N threads while another thread keeps rebinding the same names.
+     * Every lookup must see a fully bound value and the measured throughput is reported per thread count.
+     */
+    @Test(dependsOnMethods = "testJNDITraditionalClient")
+    public void testConcurrentLookups() throws Exception {
+        int nameCount = 64;
+        int lookupsPerThread = 20000;
+        int maxThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        InitialContext initialContext = new InitialContext();
+        initialContext.createSubcontext("java:comp/concurrent");
+        for (int i = 0; i < nameCount; i++) {
+            initialContext.bind("java:comp/concurrent/name" + i, "value" + i);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executorService = Executors.newFixedThreadPool(maxThreads + 1);
+        try {
+            Future<?> writer = executorService.submit((Callable<Void>) () -> {
+                Context context = new InitialContext();
+                int i = 0;
+                while (running.get()) {
+                    context.rebind("java:comp/concurrent/name" + (i % nameCount), "value" + (i % nameCount));
+                    i++;
+                }
+                return null;
+            });
+
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                List<Callable<Void>> readers = new ArrayList<>(threads);
+                for (int t = 0; t < threads; t++) {
+                    readers.add(() -> {
+                        Context context = new InitialContext();
+                        for (int i = 0; i < lookupsPerThread; i++) {
+                            int index = i % nameCount;
+                            assertEquals(context.lookup("java:comp/concurrent/name" + index), "value" + index,
+                                    "Value not found in JNDI");
+                        }
+                        return null;
+                    });
+                }
+
+                long start = System.nanoTime();
+                for (Future<Void> reader : executorService.invokeAll(readers)) {
+                    reader.get();
+                }
+                long elapsed = Math.max(1, System.nanoTime() - start);
+                Reporter.log(threads + " thread(s): " +
+                        (threads * (long) lookupsPerThread * TimeUnit.SECONDS.toNanos(1) / elapsed) + " lookups/sec");
+            }
+
+            running.set(false);
+            writer.get();
+        } finally {
+            running.set(false);
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * In this test a multi-component name is looked up repeatedly relative to a context obtained from the
+     * initial context. Once the name has been parsed and the lookup has warmed up, walking the name must not
+     * allocate an object per lookup. The allocation is measured over several rounds and the smallest figure is
+     * kept, so that allocations made by the JVM itself during a round are not held against the lookup.
+     */
+    @Test(dependsOnMethods = "testJNDITraditionalClient")
+    public void testLookupAllocation() throws Exception {
+        int lookups = 100000;
+        int rounds = 3;
+        // Less than the smallest object, so that a lookup which allocates anything at all fails
+        long maxBytesPerLookup = 16;
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName threading = new ObjectName(ManagementFactory.THREAD_MXBEAN_NAME);
+        if (!Boolean.TRUE.equals(mBeanServer.getAttribute(threading, "ThreadAllocatedMemoryEnabled"))) {
+            throw new SkipException("Thread allocation measurement is not available in this JVM");
+        }
+
+        InitialContext initialContext = new InitialContext();
+        initialContext.createSubcontext("java:comp/allocation");
+        initialContext.createSubcontext("java:comp/allocation/nested");
+        initialContext.bind("java:comp/allocation/nested/name", "value");
+        Context context = (Context) initialContext.lookup("java:comp");
+
+        for (int i = 0; i < lookups; i++) {
+            context.lookup("allocation/nested/name");
+        }
+
+        Object[] params = {Thread.currentThread().getId()};
+        String[] signature = {long.class.getName()};
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            long start = (Long) mBeanServer.invoke(threading, "getThreadAllocatedBytes", params, signature);
+            for (int i = 0; i < lookups; i++) {
+                context.lookup("allocation/nested/name");
+            }
+            long end = (Long) mBeanServer.invoke(threading, "getThreadAllocatedBytes", params, signature);
+            allocated = Math.min(allocated, end - start);
+        }
+
+        Reporter.log("Allocated " + allocated + " bytes for " + lookups + " lookups");
+        assertTrue(allocated < maxBytesPerLookup * lookups, "Lookup allocates " + (allocated / lookups)
+                + " bytes per call");
+    }
+
+    /**
+     * In this test the same names are rebound repeatedly to plain values, as feature flags are, and the measured
+     * rebind throughput is reported. Every rebind must be visible to the next lookup.
+     */
+    @Test(dependsOnMethods = "testJNDITraditionalClient")
+    public void testRebindThroughput() throws Exception {
+        int nameCount = 64;
+        int rebinds = 200000;
+
+        InitialContext initialContext = new InitialContext();
+        initialContext.createSubcontext("java:comp/flags");
+        Context context = (Context) initialContext.lookup("java:comp/flags");
+
+        for (int i = 0; i < rebinds; i++) {
+            context.rebind("flag" + (i % nameCount), (i & 1) == 0);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rebinds; i++) {
+            context.rebind("flag" + (i % nameCount), (i & 1) == 0);
+        }
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        Reporter.log((rebinds * TimeUnit.SECONDS.toNanos(1) / elapsed) + " rebinds/sec");
+
+        context.rebind("flag0", Boolean.FALSE);
+        assertEquals(context.lookup("flag0"), Boolean.FALSE, "Rebound value not found in JNDI");
+    }
+
+    /**
+     * In this test a listener registered for the one level scope of a context receives the events of the
+     * bindings, renames and unbindings made in the context, instead of polling it.
+     */
+    @Test(dependsOnMethods = "testJNDITraditionalClient")
+    public void testNamingListener() throws Exception {
+        InitialContext initialContext = new InitialContext();
+        initialContext.createSubcontext("java:comp/events");
+        EventContext context = (EventContext) initialContext.lookup("java:comp/events");
+
+        BlockingQueue<NamingEvent> events = new LinkedBlockingQueue<>();
+        NamespaceChangeListener listener = new NamespaceChangeListener() {
+            @Override
+            public void objectAdded(NamingEvent event) {
+                events.add(event);
+            }
+
+            @Override
+            public void objectRemoved(NamingEvent event) {
+                events.add(event);
+            }
+
+            @Override
+            public void objectRenamed(NamingEvent event) {
+                events.add(event);
+            }
+
+            @Override
+            public void namingExceptionThrown(NamingExceptionEvent event) {
+            }
+        };
+        context.addNamingListener("", EventContext.ONELEVEL_SCOPE, listener);
+
+        context.bind("name1", "value1");
+        context.rename("name1", "name2");
+        context.unbind("name2");
+
+        NamingEvent event = events.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event, "Bind event not delivered");
+        assertEquals(event.getType(), NamingEvent.OBJECT_ADDED);
+        assertEquals(event.getNewBinding().getName(), "name1");
+        assertEquals(event.getNewBinding().getObject(), "value1");
+
+        event = events.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event, "Rename event not delivered");
+        assertEquals(event.getType(), NamingEvent.OBJECT_RENAMED);
+        assertEquals(event.getOldBinding().getName(), "name1");
+        assertEquals(event.getNewBinding().getName(), "name2");
+
+        event = events.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event, "Unbind event not delivered");
+        assertEquals(event.getType(), NamingEvent.OBJECT_REMOVED);
+        assertEquals(event.getOldBinding().getName(), "name2");
+
+        context.removeNamingListener(listener);
+    }
+
+    /**
+     * In this test an object is bound through a context whose environment gives bindings a time to live, and it
+     * must be unbound once the time to live has run out.
+     */
+    @Test(dependsOnMethods = "testJNDITraditionalClient", expectedExceptions = {NameNotFoundException.class})
+    public void testBindingTimeToLive() throws Exception {
+        InitialContext initialContext = new InitialContext();
+        initialContext.createSubcontext("java:comp/sessions");
+        Context context = (Context) initialContext.lookup("java:comp/sessions");
+        context.addToEnvironment("org.wso2.carbon.jndi.bindingTimeToLive", "200");
+
+        context.bind("session1", "handle1");
+        assertEquals(initialContext.lookup("java:comp/sessions/session1"), "handle1");
+
+        Thread.sleep(500);
+        assertTrue(!initialContext.list("java:comp/sessions").hasMore(), "Expired binding not removed");
+        initialContext.lookup("java:comp/sessions/session1");
+    }
+
+    /**
+     * In this test a Supplier is bound through a context whose environment enables deferred values, and the object
+     * it supplies must be created by the first lookup only.
+     */
+    @Test(dependsOnMethods = "testJNDITraditionalClient")
+    public void testLazySupplier() throws Exception {
+        InitialContext initialContext = new InitialContext();
+        initialContext.createSubcontext("java:comp/lazy");
+        Context context = (Context) initialContext.lookup("java:comp/lazy");
+        context.addToEnvironment("org.wso2.carbon.jndi.lazySuppliers", "true");
+
+        AtomicInteger created = new AtomicInteger();
+        context.bind("resource", (Supplier<Object>) () -> "resource" + created.incrementAndGet());
+        assertEquals(created.get(), 0, "Deferred value created on bind");
+
+        assertEquals(initialContext.lookup("java:comp/lazy/resource"), "resource1");
+        assertEquals(initialContext.lookup("java:comp/lazy/resource"), "resource1");
+        assertEquals(created.get(), 1, "Deferred value created more than once");
+    }
+
+    /**
+     * In this test a name is looked up before and after it is bound, through a context which asks for name not
+     * found exceptions without stack traces.
+     */
+    @Test(dependsOnMethods = "testJNDITraditionalClient")
+    public void testStacklessNameNotFound() throws Exception {
+        InitialContext initialContext = new InitialContext();
+        initialContext.createSubcontext("java:comp/optional");
+        Context context = (Context) initialContext.lookup("java:comp/optional");
+        context.addToEnvironment("org.wso2.carbon.jndi.stacklessNameNotFound", "true");
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                context.lookup("resource");
+                throw new AssertionError("Unbound name found in JNDI");
+            } catch (NameNotFoundException e) {
+                assertEquals(e.getStackTrace().length, 0, "Stack trace recorded");
+                assertTrue(e.getMessage().contains("[resource]"), "Unexpected message " + e.getMessage());
+            }
+        }
+
+        context.bind("resource", "value");
+        assertEquals(context.lookup("resource"), "value", "Value not found in JNDI");
+    }
+
+    /**
+     * In this test a subcontext is renamed into another context, and its bindings must be found under the new
+     * name only, with links still unresolved.
+     */
+    @Test(dependsOnMethods = "testJNDITraditionalClient")
+    public void testRenameSubcontext() throws NamingException {
+        InitialContext initialContext = new InitialContext();
+        initialContext.createSubcontext("java:comp/renaming");
+        initialContext.createSubcontext("java:comp/renaming/source");
+        initialContext.createSubcontext("java:comp/renaming/target");
+        initialContext.bind("java:comp/renaming/source/value", "value");
+        initialContext.bind("java:comp/renaming/source/link", new LinkRef("java:comp/renaming/missing"));
+
+        initialContext.rename("java:comp/renaming/source", "java:comp/renaming/target/moved");
+
+        assertEquals(initialContext.lookup("java:comp/renaming/target/moved/value"), "value",
+                "Value not found in JNDI");
+        assertEquals(((LinkRef) initialContext.lookupLink("java:comp/renaming/target/moved/link")).getLinkName(),
+                "java:comp/renaming/missing", "Link resolved by the rename");
+        try {
+            initialContext.lookup("java:comp/renaming/source");
+            throw new AssertionError("Renamed context found under its old name");
+        } catch (NameNotFoundException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * In this test a chain of links is looked up before and after a binding on the chain changes, and a cycle of
+     * links must be reported as a NamingException.
+     */
+    @Test(dependsOnMethods = "testJNDITraditionalClient", expectedExceptions = {NamingException.class},
+            expectedExceptionsMessageRegExp = "Link \\[java:comp/links/.*\\] is part of a cycle of links")
+    public void testLinkChains() throws NamingException {
+        InitialContext initialContext = new InitialContext();
+        initialContext.createSubcontext("java:comp/links");
+        initialContext.bind("java:comp/links/target", "value1");
+        initialContext.bind("java:comp/links/second", new LinkRef("java:comp/links/target"));
+        initialContext.bind("java:comp/links/first", new LinkRef("java:comp/links/second"));
+
+        assertEquals(initialContext.lookup("java:comp/links/first"), "value1", "Value not found in JNDI");
+        assertEquals(initialContext.lookup("java:comp/links/first"), "value1", "Value not found in JNDI");
+
+        initialContext.rebind("java:comp/links/target", "value2");
+        assertEquals(initialContext.lookup("java:comp/links/first"), "value2", "Rebound value not found in JNDI");
+
+        initialContext.bind("java:comp/links/cycle1", new LinkRef("java:comp/links/cycle2"));
+        initialContext.bind("java:comp/links/cycle2", new LinkRef("java:comp/links/cycle1"));
+        initialContext.lookup("java:comp/links/cycle1");
+    }
 }